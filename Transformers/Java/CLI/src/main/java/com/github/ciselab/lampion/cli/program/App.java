@@ -2,6 +2,7 @@ package com.github.ciselab.lampion.cli.program;
 
 import com.github.ciselab.lampion.core.program.Engine;
 import com.github.ciselab.lampion.core.program.EngineResult;
+import com.github.ciselab.lampion.core.transformations.CompilationCache;
 import com.github.ciselab.lampion.core.transformations.EmptyTransformationResult;
 import com.github.ciselab.lampion.core.transformations.TransformationResult;
 import com.github.ciselab.lampion.core.transformations.transformers.AddNeutralElementTransformer;
@@ -15,24 +16,42 @@ import com.github.ciselab.lampion.core.transformations.transformers.RandomInline
 import com.github.ciselab.lampion.core.transformations.transformers.RandomParameterNameTransformer;
 import com.github.ciselab.lampion.core.transformations.transformers.RenameVariableTransformer;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Optional;
 import java.util.Properties;
+import java.util.Set;
 
 import com.github.ciselab.lampion.core.transformations.TransformerRegistry;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import spoon.Launcher;
+import spoon.OutputType;
+import spoon.compiler.Environment;
 import spoon.reflect.CtModel;
+import spoon.reflect.declaration.CtCompilationUnit;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.visitor.Filter;
+import spoon.support.modelobs.SourceFragmentCreator;
+import spoon.support.sniper.SniperJavaPrettyPrinter;
 
 /**
  * Entrypoint for this program.
@@ -57,11 +76,65 @@ public class App {
     // For further info, see DesignNotes.md "Registration of Transformations"
     public static TransformerRegistry globalRegistry = createDefaultRegistry();
 
+    // What happens to the files of types that no transformation touched when writing the output
+    public enum UntouchedFiles {
+        print,      // "Pretty-print them like the altered ones"
+        skip,       // "Only write the altered types, the untouched ones are left out of the output"
+        copy,       // "Copy the source files without any altered type verbatim to the output"
+        link        // "Hard link the source files without any altered type into the output, copying if that fails"
+    }
+
+    public static UntouchedFiles untouchedFiles = UntouchedFiles.print;
+
+    // The number of threads the java files are printed with, see ParallelPrinter
+    public static int printThreads = 1;
+
+    // Whether only the changed parts of the java files are printed anew, see preparePrinting
+    public static boolean sniperPrinting = false;
+
+    // How the transformed types are written to the output directory
+    public enum OutputFormat {
+        java,       // "One java file per top-level type, in the directory of its package"
+        jsonl,      // "One CodeSearchNet record per top-level type in a single jsonl file, see JsonlWriter"
+        zip,        // "The java files of the java format in a single zip archive, see ArchiveWriter"
+        tgz         // "The java files of the java format in a single tar.gz archive, see ArchiveWriter"
+    }
+
+    public static OutputFormat outputFormat = OutputFormat.java;
+
+    // The name of the jsonl file in the output directory
+    public static String jsonlFile = "lampion-output.jsonl";
+
+    // The name of the archive in the output directory, by default lampion-output.zip or lampion-output.tar.gz
+    public static String archiveFile = null;
+
+    // The deflate level of the archive, from 0 (none) to 9 (best)
+    public static int archiveCompression = 6;
+
+    // Given as input or output directory, the sources are read from stdin or written to stdout, see StreamInput
+    public static final String STREAM = "-";
+
     public static long globalRandomSeed = Engine.globalRandomSeed;
 
+    // Compiles the transformed types with javac after every engine run, null to not verify the output
+    public static JavacVerification javacVerification = null;
+
     public static void main(String[] args) throws IOException {
+        // With the output on stdout, the logs go to stderr instead (the console appender follows System.out)
+        OutputStream stdout = null;
+        if (args.length == 3 && STREAM.equals(args[2])) {
+            stdout = new FileOutputStream(FileDescriptor.out);
+            System.setOut(System.err);
+        }
         logger.info("Starting Lampion Java Transformer");
 
+        if (args.length >= 3 && args[0].equalsIgnoreCase("merge")) {
+            logger.info("Received merge action - merging " + (args.length - 2) + " shards into " + args[1]);
+            List<Path> shardDirectories = Arrays.stream(args, 2, args.length).map(Path::of).collect(Collectors.toList());
+            Shard.merge(Path.of(args[1]), shardDirectories);
+            return;
+        }
+
         if (args.length == 0) {
             logger.info("Found no argument for config path - looking at default locations");
             setPropertiesFromFile("./src/main/resources/config.properties");
@@ -92,23 +165,391 @@ public class App {
             return;
         }
 
+        // Start from the defaults, a previous run must not leave its output settings behind
+        untouchedFiles = UntouchedFiles.print;
+        printThreads = 1;
+        sniperPrinting = false;
+        outputFormat = OutputFormat.java;
+        jsonlFile = "lampion-output.jsonl";
+        archiveFile = null;
+        archiveCompression = 6;
+        if (App.configuration.get("untouchedFiles") != null) {
+            untouchedFiles = UntouchedFiles.valueOf(App.configuration.getProperty("untouchedFiles"));
+            logger.info("Files of untouched types are handled with " + untouchedFiles);
+        }
+        if (App.configuration.get("printThreads") != null) {
+            printThreads = Integer.parseInt(App.configuration.getProperty("printThreads"));
+            if (printThreads < 1) {
+                throw new UnsupportedOperationException("printThreads has to be at least 1, got " + printThreads);
+            }
+            logger.info("Printing java files with " + printThreads + " threads");
+        }
+        if (App.configuration.get("sniperPrinting") != null) {
+            sniperPrinting = Boolean.parseBoolean(App.configuration.getProperty("sniperPrinting"));
+            logger.info("Sniper printing is " + (sniperPrinting ? "enabled" : "disabled"));
+        }
+        if (App.configuration.get("outputFormat") != null) {
+            outputFormat = OutputFormat.valueOf(App.configuration.getProperty("outputFormat"));
+            jsonlFile = App.configuration.getProperty("jsonlFile", jsonlFile);
+            if (App.configuration.get("archiveFile") != null && !App.configuration.getProperty("archiveFile").isBlank()) {
+                archiveFile = App.configuration.getProperty("archiveFile");
+            }
+            if (App.configuration.get("archiveCompression") != null) {
+                archiveCompression = Integer.parseInt(App.configuration.getProperty("archiveCompression"));
+                if (archiveCompression < 0 || archiveCompression > 9) {
+                    throw new UnsupportedOperationException("archiveCompression has to be between 0 and 9, got " + archiveCompression);
+                }
+            }
+            if (outputFormat != OutputFormat.java && isIncremental(App.configuration)) {
+                throw new UnsupportedOperationException("The " + outputFormat + " output is written anew every run and cannot be incremental");
+            }
+            logger.info("Writing the output as " + outputFormat);
+        }
+
+        javacVerification = null;
+        if (Boolean.parseBoolean(App.configuration.getProperty("verifyOutput", "false"))) {
+            int verifyThreads = Integer.parseInt(App.configuration.getProperty("verifyThreads",
+                    String.valueOf(Runtime.getRuntime().availableProcessors())));
+            int verifyBatchSize = Integer.parseInt(App.configuration.getProperty("verifyBatchSize", "50"));
+            List<File> verifyClasspath = App.configuration.getProperty("verifyClasspath", "").isBlank()
+                    ? List.of()
+                    : Arrays.stream(App.configuration.getProperty("verifyClasspath").split(File.pathSeparator))
+                            .map(File::new)
+                            .collect(Collectors.toList());
+            javacVerification = new JavacVerification(verifyThreads, verifyBatchSize, verifyClasspath);
+            logger.info("Verifying the transformed types with javac on " + verifyThreads + " threads");
+        }
+
+        // One cache for all engines of the run, so that e.g. the variants share their compilations
+        CompilationCache compilationCache = buildCompilationCacheFromProperties(App.configuration);
         Engine engine = buildEngineFromProperties(App.configuration);
+        engine.setCompilationCache(compilationCache);
+        Optional<Shard> shard = buildShardFromProperties(App.configuration);
+        ModelCache modelCache = buildModelCacheFromProperties(App.configuration);
+        ErrorReport errorReport = isIsolatingFailures(App.configuration) ? new ErrorReport() : null;
+
+        if (sniperPrinting && (isJsonlInput(engine) || isArchiveInput(engine) || isStreamInput(engine)
+                || App.configuration.get("variants") != null)) {
+            // In-memory sources have no file to copy from, the forks of variants are made before recording the changes
+            throw new UnsupportedOperationException("Sniper printing is not available for jsonl, archive or stream input and variants");
+        }
+        if (sniperPrinting && engine.getParallelism() > 1) {
+            // The sniper records the changes of the model with listeners, which are not safe for concurrent partitions
+            throw new UnsupportedOperationException("Sniper printing is not available with a parallelism above 1");
+        }
+        if (errorReport != null && (isJsonlInput(engine) || isArchiveInput(engine) || isStreamInput(engine)
+                || App.configuration.get("variants") != null || isIncremental(App.configuration))) {
+            // These modes do not process the input as files or partitions that could be retried and quarantined
+            throw new UnsupportedOperationException("Isolating failures is not available for jsonl, archive or stream input, variants and incremental runs");
+        }
+        if (errorReport != null && outputFormat != OutputFormat.java) {
+            // A failed unit may have written part of its output already, only java files are replaced by the retries
+            throw new UnsupportedOperationException("Isolating failures is not available for the " + outputFormat + " output");
+        }
+        if (shard.isPresent() && (isStreamInput(engine) || outputFormat != OutputFormat.java)) {
+            // A stream cannot be read twice to count the shard, and the shards are merged as directories of java files
+            throw new UnsupportedOperationException("Shards are not available for stream input and the " + outputFormat + " output");
+        }
+        if (stdout != null && (!isStreamInput(engine) || outputFormat != OutputFormat.java)) {
+            throw new UnsupportedOperationException("Only a stream input can be written to stdout, in the format of streamFormat");
+        }
+        if (isStreamInput(engine)) {
+            // Read the sources from stdin as they arrive, writing each batch to stdout or the output directory
+            StreamInput.Format format = StreamInput.Format.valueOf(App.configuration.getProperty("streamFormat", "jsonl"));
+            // By default, every source is written as soon as it is transformed
+            int batchSize = App.configuration.get("partitionSize") != null ? readBatchSize(App.configuration) : 1;
+            new StreamInput(engine, System.in, stdout, format, batchSize).run();
+        } else if (isJsonlInput(engine)) {
+            // Read the records of the dataset directly, wrapping each in a class in memory
+            JsonlInput jsonlInput = new JsonlInput(engine, Path.of(engine.getCodeDirectory()), readBatchSize(App.configuration));
+            jsonlInput.setShard(shard.orElse(null));
+            jsonlInput.run();
+        } else if (isArchiveInput(engine)) {
+            // Read the java files of the archive directly, without extracting them
+            String glob = App.configuration.getProperty("inputGlob", "**.java");
+            ArchiveInput archiveInput = new ArchiveInput(engine, Path.of(engine.getCodeDirectory()), glob,
+                    readBatchSize(App.configuration));
+            archiveInput.setShard(shard.orElse(null));
+            archiveInput.run();
+        } else if (App.configuration.get("variants") != null) {
+            // Parse once, then transform a fork of the model for every variant
+            List<Engine> variants = buildVariantsFromProperties(App.configuration);
+            variants.forEach(variant -> variant.setCompilationCache(compilationCache));
+            Launcher launcher = modelCache.buildModel(collectInputFiles(engine, shard));
+            Engine.runVariants(launcher.getModel(), variants,
+                    result -> WriteAST(result, new Launcher(result.getCodeRoot().getRootPackage().getFactory())));
+        } else if (isIncremental(App.configuration)) {
+            // Only parse and transform the files that changed since the last run into the output directory
+            IncrementalRun incrementalRun = new IncrementalRun(engine, App.configuration);
+            incrementalRun.setModelCache(modelCache);
+            incrementalRun.run(collectInputFiles(engine, shard));
+        } else if (isPipelined(App.configuration)) {
+            // Parse, transform and print every file on its own, overlapping the stages
+            Pipeline pipeline = new Pipeline(engine, readPipelineQueueDepth(App.configuration));
+            pipeline.setModelCache(modelCache);
+            pipeline.setErrorReport(errorReport);
+            pipeline.run(collectInputFiles(engine, shard));
+        } else if (App.configuration.get("partitionBy") != null || readLaunchers(App.configuration) > 1
+                || errorReport != null) {
+            // Parse, transform and print the partitions with own launchers, releasing each when it is done
+            int launchers = readLaunchers(App.configuration);
+            List<Path> files = collectInputFiles(engine, shard);
+            PartitionedRun.PartitionBy partitionBy = PartitionedRun.PartitionBy.files;
+            // Without partitionBy, the input is split among the launchers - for a single one, it is one partition
+            long partitionSize = Math.max(1, (files.size() + launchers - 1) / launchers);
+            if (App.configuration.get("partitionBy") != null) {
+                partitionBy = PartitionedRun.PartitionBy.valueOf(App.configuration.getProperty("partitionBy"));
+                partitionSize = App.configuration.get("partitionSize") != null
+                        ? Long.parseLong(App.configuration.getProperty("partitionSize"))
+                        : 1000;
+            }
+            List<List<Path>> partitions = PartitionedRun.partition(Path.of(engine.getCodeDirectory()),
+                    files, partitionBy, partitionSize);
+            logger.info("Processing the input in " + partitions.size() + " partitions by " + partitionBy
+                    + " with " + launchers + " concurrent launchers");
+            // Engines and transformers are not thread-safe, with several launchers every partition gets its own
+            PartitionedRun partitionedRun = launchers > 1
+                    ? new PartitionedRun(() -> {
+                        Engine partitionEngine = buildEngineFromProperties(App.configuration);
+                        partitionEngine.setCompilationCache(compilationCache);
+                        return partitionEngine;
+                    }, partitions, launchers)
+                    : new PartitionedRun(engine, partitions);
+            partitionedRun.setModelCache(modelCache);
+            partitionedRun.setErrorReport(errorReport);
+            partitionedRun.run();
+        } else {
+            // Step 1 for the engine run.
+            // Read the Code in
+            Launcher launcher;
+            if (modelCache.isEnabled()) {
+                launcher = modelCache.buildModel(collectInputFiles(engine, shard));
+            } else {
+                launcher = new spoon.Launcher();
+                if (shard.isPresent()) {
+                    List<Path> shardFiles = shard.get().selectInputFiles(Path.of(engine.getCodeDirectory()));
+                    logger.info("Shard " + shard.get() + " selected " + shardFiles.size() + " files");
+                    for (Path file : shardFiles) {
+                        launcher.addInputResource(file.toString());
+                    }
+                } else {
+                    launcher.addInputResource(engine.getCodeDirectory());
+                }
+                launcher.buildModel();
+                // With the imports set to true, on second application the import will disappear, making Lambdas uncompilable.
+                launcher.getFactory().getEnvironment().setAutoImports(false);
+                preparePrinting(launcher);
+            }
+            // The CodeRoot is the highest level of available information regarding the AST
+            CtModel codeRoot = launcher.getModel();
+            //Further steps are in the method below.
+            EngineResult result = engine.run(codeRoot);
+            WriteAST(result, launcher);
+        }
 
-        // Step 1 for the engine run.
-        // Read the Code in
-        Launcher launcher = new spoon.Launcher();
-        launcher.addInputResource(engine.getCodeDirectory());
-        // The CodeRoot is the highest level of available information regarding the AST
-        CtModel codeRoot = launcher.buildModel();
-        // With the imports set to true, on second application the import will disappear, making Lambdas uncompilable.
-        launcher.getFactory().getEnvironment().setAutoImports(false);
-        //Further steps are in the method below.
-        EngineResult result = engine.run(codeRoot);
-        WriteAST(result, launcher);
+        JsonlWriter.closeAll();
+        if (errorReport != null && isArchiveOutput() && !errorReport.isEmpty()) {
+            errorReport.write(archiveFor(engine.getOutputDirectory()));
+        } else if (errorReport != null) {
+            errorReport.write(Path.of(engine.getOutputDirectory()));
+        }
+        if (javacVerification != null && isArchiveOutput()) {
+            javacVerification.write(archiveFor(engine.getOutputDirectory()));
+        } else if (javacVerification != null && !STREAM.equals(engine.getOutputDirectory())) {
+            javacVerification.write(Path.of(engine.getOutputDirectory()));
+        }
+        ArchiveWriter.closeAll();
+        if (shard.isPresent() && engine.getWriteJavaOutput()) {
+            shard.get().writeManifest(Path.of(engine.getOutputDirectory()), App.configuration);
+        }
 
         logger.info("Everything done - closing Lampion Java Transformer");
     }
 
+    /**
+     * Prepares the environment of a freshly built or loaded model for printing, before it is transformed.
+     *
+     * With sniper printing, Spoon's SniperJavaPrettyPrinter is used and the changes of the transformations
+     * are recorded from here on. On printing, only the changed elements are printed anew, all other parts of a file
+     * are copied from its original source, keeping the formatting of the input. Spoon attaches the same recorder
+     * when building a model with a sniper printer already set.
+     *
+     * @param launcher the launcher holding the model
+     */
+    static void preparePrinting(Launcher launcher) {
+        if (!sniperPrinting) {
+            return;
+        }
+        Environment environment = launcher.getEnvironment();
+        environment.setPrettyPrinterCreator(() -> {
+            SniperJavaPrettyPrinter printer = new SniperJavaPrettyPrinter(environment);
+            // The sniper printer switches to printing compilation units, which fails for files not named like their type
+            environment.setOutputType(OutputType.CLASSES);
+            return printer;
+        });
+        new SourceFragmentCreator().attachTo(environment);
+    }
+
+    /**
+     * Prints the java files of the model to the output directory of the result,
+     * leaving out the untouched types if configured so (see "untouchedFiles").
+     *
+     * @param engineResult the result of the engine run on the launchers model
+     * @param launcher the launcher holding the model
+     */
+    static void printJavaFiles(EngineResult engineResult, Launcher launcher) {
+        launcher.setSourceOutputDirectory(engineResult.getOutputDirectory());
+        if (outputFormat == OutputFormat.jsonl) {
+            writeJsonl(engineResult, launcher);
+        } else if (isArchiveOutput()) {
+            writeArchive(engineResult, launcher);
+        } else if (untouchedFiles == UntouchedFiles.skip) {
+            // Printing is the expensive part of writing, and most types are untouched in runs with few transformations
+            Set<CtType<?>> modified = engineResult.getModifiedTypes();
+            logger.debug("Printing only the " + modified.size() + " modified types");
+            prettyprint(launcher, modified::contains);
+        } else if (untouchedFiles == UntouchedFiles.copy || untouchedFiles == UntouchedFiles.link) {
+            passUntouchedFilesThrough(engineResult, launcher, null);
+        } else {
+            prettyprint(launcher, null);
+        }
+    }
+
+    /**
+     * Appends a record for every top-level type of the model to the jsonl file of the output directory.
+     * With skipped untouched files, only the modified types get a record - copying files has no meaning for jsonl.
+     */
+    private static void writeJsonl(EngineResult engineResult, Launcher launcher) {
+        List<CtType<?>> types = launcher.getModel().getAllTypes().stream()
+                .filter(t -> untouchedFiles != UntouchedFiles.skip || engineResult.getModifiedTypes().contains(t))
+                .collect(Collectors.toList());
+        int written = JsonlWriter.forFile(Path.of(engineResult.getOutputDirectory(), jsonlFile))
+                .write(types, launcher.getEnvironment().createPrettyPrinter());
+        logger.debug("Wrote " + written + " jsonl records");
+    }
+
+    /**
+     * Prints the types into the archive of the output directory, handling the untouched types like for java files.
+     * The other files of the input directories are added as well, as the launcher would copy them.
+     */
+    private static void writeArchive(EngineResult engineResult, Launcher launcher) {
+        ArchiveWriter archive = archiveFor(engineResult.getOutputDirectory());
+        if (untouchedFiles == UntouchedFiles.skip) {
+            new ParallelPrinter(printThreads).print(launcher.getFactory(), engineResult.getModifiedTypes()::contains, archive);
+        } else if (untouchedFiles == UntouchedFiles.copy || untouchedFiles == UntouchedFiles.link) {
+            passUntouchedFilesThrough(engineResult, launcher, archive);
+        } else {
+            new ParallelPrinter(printThreads).print(launcher.getFactory(), null, archive);
+        }
+        if (!launcher.getEnvironment().isCopyResources()) {
+            return;
+        }
+        for (File source : launcher.getModelBuilder().getInputSources()) {
+            if (!source.isDirectory()) {
+                continue;
+            }
+            Path directory = source.toPath();
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.filter(Files::isRegularFile)
+                        .filter(f -> !f.toString().endsWith(".java"))
+                        .forEach(f -> archive.add(directory.relativize(f).toString().replace(File.separatorChar, '/'),
+                                () -> Files.readAllBytes(f)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * @param outputDirectory the output directory of a run
+     * @return the archive of the output directory, opened on first use
+     */
+    static ArchiveWriter archiveFor(String outputDirectory) {
+        ArchiveWriter.Format format = ArchiveWriter.Format.valueOf(outputFormat.name());
+        String name = archiveFile != null
+                ? archiveFile
+                : format == ArchiveWriter.Format.zip ? "lampion-output.zip" : "lampion-output.tar.gz";
+        return ArchiveWriter.forFile(Path.of(outputDirectory, name), format, archiveCompression);
+    }
+
+    /**
+     * Prints the types matching the filter (all for null) with the launcher, or with "printThreads" threads.
+     * Their previous outputs are removed first, as they may be hard links to the input (see Passthrough).
+     * Besides printing, the launcher copies the other files of the input directories, hence it is run
+     * after printing in parallel as well, just without any type to print.
+     */
+    private static void prettyprint(Launcher launcher, Filter<CtType<?>> filter) {
+        List<CtType<?>> types = launcher.getModel().getAllTypes().stream()
+                .filter(t -> filter == null || filter.matches(t))
+                .collect(Collectors.toList());
+        try {
+            Passthrough.unlink(launcher.getEnvironment().getSourceOutputDirectory().toPath(), types);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (printThreads > 1) {
+            new ParallelPrinter(printThreads).print(launcher.getFactory(), filter);
+            launcher.setOutputFilter(type -> false);
+        } else if (filter != null) {
+            launcher.setOutputFilter(filter);
+        }
+        launcher.prettyprint();
+    }
+
+    /**
+     * Prints the source files holding a modified type, and copies or links all others verbatim (see Passthrough).
+     * A file with several top-level types is only passed through if none of them was modified,
+     * it ends up under the name of its first type. Types without a file on disk are always printed.
+     * With an archive, both the printed types and the untouched files go into the archive instead.
+     */
+    private static void passUntouchedFilesThrough(EngineResult engineResult, Launcher launcher, ArchiveWriter archive) {
+        Set<CtType<?>> modified = engineResult.getModifiedTypes();
+        Set<CtCompilationUnit> touched = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<CtCompilationUnit> units = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<CtType<?>> printed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (CtType<?> type : launcher.getModel().getAllTypes()) {
+            CtCompilationUnit unit = type.getPosition().getCompilationUnit();
+            if (unit == null || unit.getFile() == null || !unit.getFile().isFile()) {
+                printed.add(type);
+            } else if (modified.contains(type)) {
+                touched.add(unit);
+            } else {
+                units.add(unit);
+            }
+        }
+        units.removeAll(touched);
+        for (CtType<?> type : launcher.getModel().getAllTypes()) {
+            CtCompilationUnit unit = type.getPosition().getCompilationUnit();
+            if (touched.contains(unit)) {
+                printed.add(type);
+            }
+        }
+
+        if (archive != null) {
+            new ParallelPrinter(printThreads).print(launcher.getFactory(), printed::contains, archive);
+        } else {
+            prettyprint(launcher, printed::contains);
+        }
+
+        Path output = Path.of(engineResult.getOutputDirectory());
+        boolean link = untouchedFiles == UntouchedFiles.link;
+        for (CtCompilationUnit unit : units) {
+            // Unlike getMainType, this does not fail for files named differently from their type
+            CtType<?> mainType = unit.getDeclaredTypes().get(0);
+            if (archive != null) {
+                Path source = unit.getFile().toPath();
+                archive.add(Passthrough.relativeOutputPath(mainType), () -> Files.readAllBytes(source));
+                continue;
+            }
+            try {
+                Passthrough.transfer(unit.getFile().toPath(), output.resolve(Passthrough.relativeOutputPath(mainType)), link);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        logger.debug("Printed " + printed.size() + " types and passed " + units.size() + " untouched files through");
+    }
+
     /**
      * Write the transformations to file so that they can be used by a neural network.
      * @param engineResult The result of the run function in the Engine class.
@@ -120,11 +561,13 @@ public class App {
         Instant beginOfWriting = Instant.now();
         if (engineResult.getWriteJavaOutput()) {
             logger.debug("Starting to pretty-print  altered files to " + engineResult.getOutputDirectory());
-            launcher.setSourceOutputDirectory(engineResult.getOutputDirectory());
-            launcher.prettyprint();
+            printJavaFiles(engineResult, launcher);
         } else {
             logger.info("Writing the java files has been disabled for this run.");
         }
+        if (javacVerification != null) {
+            javacVerification.verify(engineResult, launcher);
+        }
 
         List<TransformationResult> finishedResults = engineResult.getTransformationResults().stream()
                 // Filter out Empty Results
@@ -257,6 +700,58 @@ public class App {
             t.setSeed(seed);
         }
 
+        if(properties.get("deriveSeedsPerElement")!=null){
+            boolean deriveSeedsPerElement = Boolean.parseBoolean((String) properties.get("deriveSeedsPerElement"));
+            engine.setDeriveSeedsPerElement(deriveSeedsPerElement);
+        } else {
+            logger.debug("There was no entry found for deriveSeedsPerElement - defaulting to false");
+        }
+
+        if(readLaunchers(properties) > 1){
+            // Every group of files gets its own engine, which is only reproducible with streams per file
+            engine.setDeriveSeedsPerElement(true);
+        }
+
+        if(isPipelined(properties)){
+            // Every file is transformed on its own, which is only reproducible with streams per file
+            logger.info("Running pipelined - files are parsed, transformed and printed one by one");
+            engine.setDeriveSeedsPerElement(true);
+            if(transformationScope != Engine.TransformationScope.perClassEach
+                    && transformationScope != Engine.TransformationScope.perMethodEach){
+                logger.warn("The pipelined mode applies the scope " + transformationScope + " per file - "
+                        + "use perClassEach or perMethodEach to get the same output as a run over all files.");
+            }
+        }
+        if(isIncremental(properties)){
+            // Unchanged files are not transformed again, which is only reproducible with streams per file
+            logger.info("Running incrementally - only changed files are processed");
+            engine.setDeriveSeedsPerElement(true);
+            if(transformationScope != Engine.TransformationScope.perClassEach
+                    && transformationScope != Engine.TransformationScope.perMethodEach){
+                logger.warn("The incremental mode applies the scope " + transformationScope + " to the changed files only - "
+                        + "use perClassEach or perMethodEach to get the same output as a full run.");
+            }
+        }
+        if(isIsolatingFailures(properties)){
+            // A failing partition is retried file by file, which only gives the same output with streams per file
+            engine.setDeriveSeedsPerElement(true);
+            if(transformationScope != Engine.TransformationScope.perClassEach
+                    && transformationScope != Engine.TransformationScope.perMethodEach){
+                logger.warn("Isolating failures retries a failing partition with the scope " + transformationScope
+                        + " per file - use perClassEach or perMethodEach to get the same output as without failures.");
+            }
+        }
+        if(properties.get("shard")!=null){
+            // Shards are only reproducible if every file gets its own random streams
+            logger.info("Running as shard " + properties.get("shard") + " - deriving seeds per element");
+            engine.setDeriveSeedsPerElement(true);
+            if(transformationScope != Engine.TransformationScope.perClassEach
+                    && transformationScope != Engine.TransformationScope.perMethodEach){
+                logger.warn("Sharding with scope " + transformationScope + " distributes the transformations per shard - "
+                        + "use perClassEach or perMethodEach to get the same output as a single-node run.");
+            }
+        }
+
         // Set compiling/non-compiling transformers
         if(properties.get("compilingTransformers")!=null){
             boolean compilingTransformers = Boolean.parseBoolean((String) properties.get("compilingTransformers"));
@@ -270,6 +765,24 @@ public class App {
         } else {
             logger.debug("There was no entry found for compilingTransformers - defaulting to true");
         }
+        if(properties.get("deferCompilation")!=null){
+            boolean deferCompilation = Boolean.parseBoolean((String) properties.get("deferCompilation"));
+            engine.setDeferCompilation(deferCompilation);
+            if(deferCompilation){
+                logger.info("The transformed classes are compiled once at the end instead of after every transformation");
+            }
+        } else {
+            logger.debug("There was no entry found for deferCompilation - defaulting to false");
+        }
+        if(properties.get("compileSampleRate")!=null){
+            double compileSampleRate = Double.parseDouble((String) properties.get("compileSampleRate"));
+            engine.setCompileSampleRate(compileSampleRate);
+            if(compileSampleRate < 1){
+                logger.info("Only " + compileSampleRate + " of the transformed classes are verified by compiling them");
+            }
+        } else {
+            logger.debug("There was no entry found for compileSampleRate - defaulting to 1 (every class)");
+        }
         // Set compiling/non-compiling transformers
         if(properties.get("setAutoImports")!=null){
             boolean autoimports = Boolean.parseBoolean((String) properties.get("setAutoImports"));
@@ -295,6 +808,19 @@ public class App {
             logger.debug("There was no entry found for removeAllComments - defaulting to false");
         }
 
+        // Set the number of threads applying transformations
+        if(properties.get("parallelism")!=null){
+            int parallelism = Integer.parseInt((String) properties.get("parallelism"));
+            logger.info("Applying transformations with a parallelism of " + parallelism);
+            engine.setParallelism(parallelism);
+            if(parallelism > 1){
+                // Partitions are only reproducible with streams per class, and compile at the end of the run
+                logger.info("Deriving seeds per element and deferring compilation for the parallel partitions");
+            }
+        } else {
+            logger.debug("There was no entry found for parallelism - defaulting to 1 (sequential)");
+        }
+
         // Alter / Change Distributions
         // Currently skipped
 
@@ -302,6 +828,155 @@ public class App {
         return engine;
     }
 
+    /**
+     * Collects all java files below the directory, sorted by path.
+     * If the path points to a single file, only this file is returned.
+     *
+     * @param directory the input directory
+     * @return the java files to process
+     * @throws IOException if the directory cannot be walked
+     */
+    static List<Path> collectJavaFiles(Path directory) throws IOException {
+        try (var files = Files.walk(directory)) {
+            return files
+                    .filter(Files::isRegularFile)
+                    .filter(f -> f.toString().endsWith(".java"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Collects the java files of this run, that is all files of the input directory or the files of the shard.
+     */
+    private static List<Path> collectInputFiles(Engine engine, Optional<Shard> shard) throws IOException {
+        Path input = Path.of(engine.getCodeDirectory());
+        return shard.isPresent() ? shard.get().selectInputFiles(input) : collectJavaFiles(input);
+    }
+
+    private static ModelCache buildModelCacheFromProperties(Properties properties) throws IOException {
+        if (properties.get("modelCache") == null) {
+            return ModelCache.disabled();
+        }
+        Path directory = Path.of((String) properties.get("modelCache"));
+        logger.info("Using the model cache at " + directory);
+        return ModelCache.in(directory);
+    }
+
+    private static CompilationCache buildCompilationCacheFromProperties(Properties properties) throws IOException {
+        if (properties.get("compileCacheSize") == null && properties.get("compileCache") == null) {
+            return CompilationCache.disabled();
+        }
+        int entries = properties.get("compileCacheSize") != null
+                ? Integer.parseInt((String) properties.get("compileCacheSize"))
+                : CompilationCache.DEFAULT_ENTRIES;
+        CompilationCache compilationCache = CompilationCache.inMemory(entries);
+        if (properties.get("compileCache") != null) {
+            Path directory = Path.of((String) properties.get("compileCache"));
+            logger.info("Using the compilation cache at " + directory);
+            compilationCache = compilationCache.withDirectory(directory);
+        }
+        return compilationCache;
+    }
+
+    private static int readLaunchers(Properties properties) {
+        return properties.get("launchers") != null ? Integer.parseInt((String) properties.get("launchers")) : 1;
+    }
+
+    /**
+     * Builds one engine per variant listed in "variants" (comma separated names).
+     * A variant starts from the given properties and overrides every key given as "variant.[name].[key]",
+     * e.g. "variant.small.transformations=1" or "variant.noLambdas.LambdaIdentityTransformer=false".
+     * Unless overridden, every variant writes to a directory named like the variant within the output directory.
+     *
+     * @param properties the properties of the run, including the variants
+     * @return the engines of all variants, in the order they were listed
+     * @throws UnsupportedOperationException if no variant is listed or a variant is invalid
+     */
+    private static List<Engine> buildVariantsFromProperties(Properties properties) {
+        List<String> names = Arrays.stream(((String) properties.get("variants")).split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .collect(Collectors.toList());
+        if (names.isEmpty()) {
+            throw new UnsupportedOperationException("Variants were requested, but none was named");
+        }
+        List<Engine> variants = new ArrayList<>();
+        for (String name : names) {
+            Properties variant = new Properties();
+            variant.putAll(properties);
+            variant.remove("variants");
+            variant.put("outputDirectory", Path.of((String) properties.get("outputDirectory"), name).toString());
+            String prefix = "variant." + name + ".";
+            for (String key : properties.stringPropertyNames()) {
+                if (key.startsWith(prefix)) {
+                    variant.put(key.substring(prefix.length()), properties.getProperty(key));
+                }
+            }
+            logger.info("Building variant " + name + " writing to " + variant.get("outputDirectory"));
+            variants.add(buildEngineFromProperties(variant));
+        }
+        return variants;
+    }
+
+    private static boolean isStreamInput(Engine engine) {
+        return STREAM.equals(engine.getCodeDirectory());
+    }
+
+    private static boolean isJsonlInput(Engine engine) {
+        Path input = Path.of(engine.getCodeDirectory());
+        return Files.isRegularFile(input) && input.getFileName().toString().endsWith(".jsonl");
+    }
+
+    private static boolean isArchiveInput(Engine engine) {
+        Path input = Path.of(engine.getCodeDirectory());
+        return Files.isRegularFile(input) && ArchiveInput.formatOf(input).isPresent();
+    }
+
+    private static int readBatchSize(Properties properties) {
+        return properties.get("partitionSize") != null ? Integer.parseInt((String) properties.get("partitionSize")) : 1000;
+    }
+
+    private static boolean isArchiveOutput() {
+        return outputFormat == OutputFormat.zip || outputFormat == OutputFormat.tgz;
+    }
+
+    private static boolean isIsolatingFailures(Properties properties) {
+        return properties.get("isolateFailures") != null && Boolean.parseBoolean((String) properties.get("isolateFailures"));
+    }
+
+    private static boolean isIncremental(Properties properties) {
+        return properties.get("incremental") != null && Boolean.parseBoolean((String) properties.get("incremental"));
+    }
+
+    private static boolean isPipelined(Properties properties) {
+        return properties.get("pipelined") != null && Boolean.parseBoolean((String) properties.get("pipelined"));
+    }
+
+    private static int readPipelineQueueDepth(Properties properties) {
+        int queueDepth = 16;
+        if (properties.get("pipelineQueueDepth") != null) {
+            queueDepth = Integer.parseInt((String) properties.get("pipelineQueueDepth"));
+        } else {
+            logger.debug("There was no entry found for pipelineQueueDepth - defaulting to " + queueDepth);
+        }
+        return queueDepth;
+    }
+
+    /**
+     * Reads the optional shard ("i/N") of this run from the properties.
+     *
+     * @param properties The key-value pairs read at system startup.
+     * @return the shard to run, empty if the whole input is processed
+     * @throws UnsupportedOperationException for malformed shards
+     */
+    private static Optional<Shard> buildShardFromProperties(Properties properties) {
+        if(properties.get("shard") == null || ((String) properties.get("shard")).isBlank()){
+            return Optional.empty();
+        }
+        return Optional.of(Shard.parse((String) properties.get("shard")));
+    }
+
     /**
     The Code below covers an issue found with the runtime an reading the packages.
     See "AppTests::testDefaultRegistry_ShouldNotBeEmpty" for a broader explanation
@@ -0,0 +1,241 @@
+package com.github.ciselab.lampion.cli.program;
+
+import com.github.ciselab.lampion.core.program.Engine;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.Enumeration;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import spoon.support.compiler.VirtualFile;
+
+/**
+ * Transforms the java files of a zip or tar.gz archive directly, without extracting it first.
+ *
+ * The entries are read one after another and given to Spoon as in-memory VirtualFiles (see VirtualInput),
+ * nothing is written to disk besides the output. Only the java files whose path in the archive matches the glob
+ * are read, e.g. "**.java" for all of them or "repo/src/main/**.java" for the main sources of a single project.
+ *
+ * Zip archives are read through their central directory, tar.gz archives are streamed twice:
+ * once to count the matching entries and once to read them. The tar reader understands ustar archives
+ * with pax or GNU headers for long names, which covers the archives made by GNU tar and python.
+ */
+public class ArchiveInput extends VirtualInput {
+
+    private static final int TAR_BLOCK = 512;
+
+    private final Path archive;
+    private final ArchiveWriter.Format format;
+    private final PathMatcher glob;
+
+    /**
+     * @param engine the engine to run on every batch
+     * @param archive the zip or tar.gz archive to read
+     * @param glob the java files to read, matched against their path in the archive
+     * @param batchSize the number of java files per launcher
+     * @throws UnsupportedOperationException for a batch size smaller than 1 or a file that is no known archive
+     */
+    public ArchiveInput(Engine engine, Path archive, String glob, int batchSize) {
+        super(engine, batchSize);
+        this.archive = archive;
+        this.format = formatOf(archive).orElseThrow(
+                () -> new UnsupportedOperationException(archive + " is neither a zip nor a tar.gz archive"));
+        this.glob = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+    }
+
+    /**
+     * @param file a file given as input
+     * @return the format of the archive by the file name, empty for other files
+     */
+    public static Optional<ArchiveWriter.Format> formatOf(Path file) {
+        String name = file.getFileName() == null ? "" : file.getFileName().toString().toLowerCase();
+        if (name.endsWith(".zip")) {
+            return Optional.of(ArchiveWriter.Format.zip);
+        }
+        if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+            return Optional.of(ArchiveWriter.Format.tgz);
+        }
+        return Optional.empty();
+    }
+
+    boolean matches(String entryName) {
+        return entryName.endsWith(".java") && glob.matches(Path.of(entryName));
+    }
+
+    @Override
+    protected long countSources() throws IOException {
+        long count = 0;
+        if (format == ArchiveWriter.Format.zip) {
+            try (ZipFile zip = new ZipFile(archive.toFile(), StandardCharsets.UTF_8)) {
+                count = zip.stream().filter(e -> !e.isDirectory() && matches(e.getName())).count();
+            }
+        } else {
+            try (TarSources sources = new TarSources(true)) {
+                while (sources.next() != null) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    protected Sources openSources() throws IOException {
+        return format == ArchiveWriter.Format.zip ? new ZipSources() : new TarSources(false);
+    }
+
+    private class ZipSources implements Sources {
+        private final ZipFile zip = new ZipFile(archive.toFile(), StandardCharsets.UTF_8);
+        private final Enumeration<? extends ZipEntry> entries = zip.entries();
+
+        ZipSources() throws IOException {
+        }
+
+        @Override
+        public VirtualFile next() throws IOException {
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory() && matches(entry.getName())) {
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        return new VirtualFile(new String(in.readAllBytes(), StandardCharsets.UTF_8), entry.getName());
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            zip.close();
+        }
+    }
+
+    /**
+     * Streams the regular files of a tar.gz, skipping the content of the entries that do not match.
+     */
+    private class TarSources implements Sources {
+        private final InputStream in = new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(archive), 1 << 16), 1 << 16);
+        // Counting only needs the names, the content is skipped
+        private final boolean namesOnly;
+        private final byte[] header = new byte[TAR_BLOCK];
+
+        TarSources(boolean namesOnly) throws IOException {
+            this.namesOnly = namesOnly;
+        }
+
+        @Override
+        public VirtualFile next() throws IOException {
+            String longName = null;
+            while (in.readNBytes(header, 0, TAR_BLOCK) == TAR_BLOCK && header[0] != 0) {
+                long size = readSize();
+                char type = (char) header[156];
+                String name = longName != null ? longName : readName();
+                longName = null;
+                if (type == 'x' || type == 'L') {
+                    // The pax or GNU header holds the name of the following entry
+                    byte[] extended = readContent(size);
+                    longName = type == 'L'
+                            ? new String(extended, StandardCharsets.UTF_8).replace("\0", "")
+                            : readPaxPath(extended);
+                } else if ((type == '0' || type == '\0') && matches(stripCurrentDirectory(name))) {
+                    if (namesOnly) {
+                        skipContent(size);
+                        return new VirtualFile("", stripCurrentDirectory(name));
+                    }
+                    return new VirtualFile(new String(readContent(size), StandardCharsets.UTF_8), stripCurrentDirectory(name));
+                } else {
+                    skipContent(size);
+                }
+            }
+            return null;
+        }
+
+        private String readName() {
+            String name = field(0, 100);
+            // ustar splits long names into a prefix and a name, old GNU archives keep other values in its place
+            String prefix = new String(header, 257, 6, StandardCharsets.US_ASCII).equals("ustar\0") ? field(345, 155) : "";
+            return prefix.isEmpty() ? name : prefix + "/" + name;
+        }
+
+        private long readSize() {
+            if ((header[124] & 0x80) != 0) {
+                // Sizes of 8 GB and more are stored as big-endian binary
+                long size = 0;
+                for (int i = 125; i < 136; i++) {
+                    size = (size << 8) | (header[i] & 0xff);
+                }
+                return size;
+            }
+            String octal = field(124, 12).trim();
+            return octal.isEmpty() ? 0 : Long.parseLong(octal, 8);
+        }
+
+        private String field(int offset, int length) {
+            int end = offset;
+            while (end < offset + length && header[end] != 0) {
+                end++;
+            }
+            return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+        }
+
+        private byte[] readContent(long size) throws IOException {
+            byte[] content = in.readNBytes((int) size);
+            if (content.length != size) {
+                throw new EOFException("Unexpected end of " + archive);
+            }
+            in.skipNBytes(padding(size));
+            return content;
+        }
+
+        private void skipContent(long size) throws IOException {
+            in.skipNBytes(size + padding(size));
+        }
+
+        private long padding(long size) {
+            return (TAR_BLOCK - size % TAR_BLOCK) % TAR_BLOCK;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * @param records the records of a pax header, each "<length> <key>=<value>\n" with the length in bytes
+     * @return the value of the path record, null if there is none
+     */
+    static String readPaxPath(byte[] records) {
+        int index = 0;
+        while (index < records.length) {
+            int space = index;
+            while (space < records.length && records[space] != ' ') {
+                space++;
+            }
+            if (space == records.length) {
+                break;
+            }
+            int length = Integer.parseInt(new String(records, index, space - index, StandardCharsets.US_ASCII));
+            // Without the length, the space and the line break
+            String record = new String(records, space + 1, index + length - space - 2, StandardCharsets.UTF_8);
+            if (record.startsWith("path=")) {
+                return record.substring("path=".length());
+            }
+            index += length;
+        }
+        return null;
+    }
+
+    private static String stripCurrentDirectory(String name) {
+        return name.startsWith("./") ? name.substring(2) : name;
+    }
+}
@@ -0,0 +1,318 @@
+package com.github.ciselab.lampion.cli.program;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams the output of a run into a single zip or tar.gz archive instead of one file per type.
+ *
+ * Hundreds of thousands of small java files per run exhaust the inodes of cluster filesystems and make
+ * copying the results slow. Here, the entries are compressed and written by a thread of their own,
+ * in the order they were added, while the printing threads continue (see ParallelPrinter).
+ * An entry is handed over as a Callable that is called by the writing thread, e.g. waiting for a printed type
+ * or reading a file to pass through. At most QUEUE_CAPACITY entries wait for writing, adding more blocks.
+ *
+ * The tar archive is written in the ustar format, names longer than 100 bytes get a pax header.
+ * An entry name that was already written is skipped - an archive cannot overwrite like a directory can.
+ * An entry whose content fails (e.g. a type that does not print) is left out, the others are still written.
+ * The failure reaches the adding thread through its own task (see ParallelPrinter), and the name can be added again.
+ * Only failing to write the archive itself fails all later entries and "close".
+ *
+ * An archive is opened once per file and shared by all threads of a run, like the JsonlWriter.
+ */
+public class ArchiveWriter implements Closeable {
+
+    private static Logger logger = LoggerFactory.getLogger(ArchiveWriter.class);
+
+    private static final Map<Path, ArchiveWriter> openWriters = new ConcurrentHashMap<>();
+
+    private static final int QUEUE_CAPACITY = 256;
+    private static final int TAR_BLOCK = 512;
+
+    // The kinds of archives
+    public enum Format {
+        zip,        // "A zip archive with deflated entries"
+        tgz         // "A gzipped tar archive"
+    }
+
+    private record Entry(String name, Callable<byte[]> content) {}
+
+    // Marks the end of the entries for the writing thread
+    private static final Entry END = new Entry(null, null);
+
+    private final Path file;
+    private final Format format;
+    private final OutputStream out;
+    private final long modificationTime = System.currentTimeMillis();
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writingThread;
+    private final Set<String> writtenNames = new HashSet<>();
+    private final Set<String> failedEntries = ConcurrentHashMap.newKeySet();
+
+    private volatile Exception failure;
+    // Only counted by the writing thread
+    private volatile int entries = 0;
+    private boolean closed = false;
+
+    private ArchiveWriter(Path file, Format format, int compressionLevel) throws IOException {
+        if (compressionLevel < 0 || compressionLevel > 9) {
+            throw new UnsupportedOperationException("The compression level has to be between 0 and 9, got " + compressionLevel);
+        }
+        this.file = file;
+        this.format = format;
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        OutputStream fileStream = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16);
+        if (format == Format.zip) {
+            ZipOutputStream zip = new ZipOutputStream(fileStream, StandardCharsets.UTF_8);
+            zip.setLevel(compressionLevel);
+            this.out = zip;
+        } else {
+            this.out = new GZIPOutputStream(fileStream, 1 << 16) {
+                {
+                    def.setLevel(compressionLevel);
+                }
+            };
+        }
+        this.writingThread = new Thread(this::writeEntries, "archive-writer-" + file.getFileName());
+        // A failed run must not hang on the thread waiting for entries
+        writingThread.setDaemon(true);
+        writingThread.start();
+    }
+
+    /**
+     * Returns the archive of the file, opening it on first use. An existing file is replaced on opening.
+     *
+     * @param file the archive to write to
+     * @param format the kind of archive, only used when opening it
+     * @param compressionLevel the level of deflate compression from 0 (none) to 9 (best), only used when opening it
+     * @return the archive of the file, the same for every call until it is closed
+     * @throws UnsupportedOperationException for a compression level outside 0 to 9
+     */
+    public static ArchiveWriter forFile(Path file, Format format, int compressionLevel) {
+        return openWriters.computeIfAbsent(file.toAbsolutePath().normalize(), f -> {
+            try {
+                return new ArchiveWriter(f, format, compressionLevel);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Closes all archives opened with forFile, to be called at the end of a run.
+     *
+     * @throws IOException if an entry could not be written
+     */
+    public static void closeAll() throws IOException {
+        for (ArchiveWriter writer : openWriters.values()) {
+            writer.close();
+        }
+    }
+
+    /**
+     * Queues an entry for writing, blocking while the queue is full.
+     *
+     * @param name the path of the entry in the archive, separated by '/'
+     * @param content provides the content of the entry, called by the writing thread
+     * @throws UncheckedIOException if an earlier entry could not be written
+     */
+    public void add(String name, Callable<byte[]> content) {
+        throwOnFailure();
+        try {
+            queue.put(new Entry(name, content));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException("Interrupted while adding " + name + " to " + file));
+        }
+    }
+
+    private void writeEntries() {
+        while (true) {
+            Entry entry;
+            try {
+                entry = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (entry == END) {
+                return;
+            }
+            // After a failure, the entries are still taken so that no adding thread blocks forever
+            if (failure != null) {
+                continue;
+            }
+            if (writtenNames.contains(entry.name())) {
+                logger.warn("Skipped the second entry named " + entry.name() + " in " + file);
+                continue;
+            }
+            byte[] content;
+            try {
+                content = entry.content().call();
+            } catch (Exception e) {
+                // Only this entry is lost, e.g. a type that failed to print - its name is free for a retry
+                failedEntries.add(entry.name());
+                logger.error("Failed to get the content of " + entry.name() + " for " + file + " - skipping it", e);
+                continue;
+            }
+            try {
+                writtenNames.add(entry.name());
+                if (format == Format.zip) {
+                    writeZipEntry(entry.name(), content);
+                } else {
+                    writeTarEntry(entry.name(), content);
+                }
+                entries++;
+            } catch (IOException e) {
+                // A broken archive cannot take any further entries
+                failure = e;
+                logger.error("Failed to write " + entry.name() + " to " + file, e);
+            }
+        }
+    }
+
+    private void writeZipEntry(String name, byte[] content) throws IOException {
+        ZipOutputStream zip = (ZipOutputStream) out;
+        ZipEntry zipEntry = new ZipEntry(name);
+        zipEntry.setTime(modificationTime);
+        zip.putNextEntry(zipEntry);
+        zip.write(content);
+        zip.closeEntry();
+    }
+
+    private void writeTarEntry(String name, byte[] content) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > 100) {
+            // The ustar name field is too short, a pax header carries the full path
+            byte[] record = paxRecord("path", name);
+            out.write(tarHeader("PaxHeader/" + name.substring(name.lastIndexOf('/') + 1), record.length, 'x'));
+            writeTarData(record);
+        }
+        out.write(tarHeader(name, content.length, '0'));
+        writeTarData(content);
+    }
+
+    private void writeTarData(byte[] data) throws IOException {
+        out.write(data);
+        int padding = (TAR_BLOCK - data.length % TAR_BLOCK) % TAR_BLOCK;
+        out.write(new byte[padding]);
+    }
+
+    private byte[] tarHeader(String name, long size, char type) {
+        byte[] header = new byte[TAR_BLOCK];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(nameBytes, 0, header, 0, Math.min(nameBytes.length, 100));
+        putOctal(header, 100, 8, 0644);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        putOctal(header, 124, 12, size);
+        putOctal(header, 136, 12, modificationTime / 1000);
+        header[156] = (byte) type;
+        System.arraycopy("ustar\000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 6);
+        System.arraycopy("00".getBytes(StandardCharsets.US_ASCII), 0, header, 263, 2);
+        // The checksum is calculated with spaces in its own field
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        putOctal(header, 148, 7, checksum);
+        return header;
+    }
+
+    /**
+     * Writes the value as zero-padded octal number, followed by a NUL, into the field.
+     */
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        String octal = String.format("%0" + (length - 1) + "o", value);
+        System.arraycopy(octal.getBytes(StandardCharsets.US_ASCII), 0, header, offset, length - 1);
+        header[offset + length - 1] = 0;
+    }
+
+    /**
+     * A pax record is "<length> <key>=<value>\n", where the length counts the whole record including itself.
+     */
+    private static byte[] paxRecord(String key, String value) {
+        int content = (" " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8).length;
+        int length = content + String.valueOf(content).length();
+        if (String.valueOf(length).length() > String.valueOf(content).length()) {
+            length++;
+        }
+        return (length + " " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void throwOnFailure() {
+        if (failure != null) {
+            throw new UncheckedIOException(new IOException("Failed to write to " + file, failure));
+        }
+    }
+
+    /**
+     * @return the names of the entries whose content could not be provided, and that are missing from the archive
+     */
+    public Set<String> getFailedEntries() {
+        return Set.copyOf(failedEntries);
+    }
+
+    /**
+     * @return the number of entries written so far
+     */
+    public int getEntries() {
+        return entries;
+    }
+
+    /**
+     * Waits for the queued entries and finishes the archive.
+     *
+     * @throws IOException if an entry could not be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        openWriters.remove(file, this);
+        try {
+            queue.put(END);
+            writingThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while finishing " + file);
+        }
+        if (format == Format.tgz) {
+            // Two empty blocks end a tar archive
+            out.write(new byte[2 * TAR_BLOCK]);
+        }
+        out.close();
+        if (failure != null) {
+            throw new IOException("Failed to write to " + file, failure);
+        }
+        if (!failedEntries.isEmpty()) {
+            logger.warn("Left out " + failedEntries.size() + " entries whose content failed: " + failedEntries);
+        }
+        logger.info("Wrote " + entries + " entries to " + file);
+    }
+}
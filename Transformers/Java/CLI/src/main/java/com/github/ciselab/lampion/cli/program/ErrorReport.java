@@ -0,0 +1,95 @@
+package com.github.ciselab.lampion.cli.program;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the files that failed during a run, so that the run can continue without them.
+ *
+ * A single unparsable or pathological file used to abort the whole run, and had to be removed by hand
+ * before starting over. With isolated failures, the files of a failing unit (a file or partition) are
+ * quarantined here together with the stage and the exception, and the rest of the input is processed as usual.
+ * At the end of the run, the report is written next to the output, or into its archive.
+ *
+ * The report is shared by all threads of a run.
+ */
+public class ErrorReport {
+
+    private static Logger logger = LoggerFactory.getLogger(ErrorReport.class);
+
+    public static final String REPORT_FILE = "lampion-errors.report";
+
+    private final List<String> entries = new ArrayList<>();
+    private int quarantinedFiles = 0;
+
+    /**
+     * Quarantines the files of a failed unit.
+     *
+     * @param files the files of the unit that failed
+     * @param stage the stage in which the unit failed, e.g. parse, transform or print
+     * @param error what went wrong
+     */
+    public synchronized void quarantine(List<Path> files, String stage, Throwable error) {
+        logger.warn("Quarantined " + files.size() + " files after failing to " + stage + ": " + error);
+        StringWriter stackTrace = new StringWriter();
+        error.printStackTrace(new PrintWriter(stackTrace));
+        entries.add("stage=" + stage + "\n"
+                + "files=" + files.stream().map(Path::toString).collect(Collectors.joining(",")) + "\n"
+                + stackTrace);
+        quarantinedFiles += files.size();
+    }
+
+    /**
+     * @return whether no file had to be quarantined
+     */
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * @return the number of quarantined files
+     */
+    public synchronized int getQuarantinedFiles() {
+        return quarantinedFiles;
+    }
+
+    /**
+     * Writes the report into the directory, if any file was quarantined.
+     *
+     * @param directory the directory to write the report to, usually the output directory
+     * @throws IOException if the report cannot be written
+     */
+    public synchronized void write(Path directory) throws IOException {
+        if (entries.isEmpty()) {
+            logger.info("No file had to be quarantined");
+            return;
+        }
+        Files.createDirectories(directory);
+        Files.writeString(directory.resolve(REPORT_FILE), String.join("\n", entries), StandardCharsets.UTF_8);
+        logger.warn(quarantinedFiles + " files were quarantined, see " + directory.resolve(REPORT_FILE));
+    }
+
+    /**
+     * Adds the report to the archive the output is written to, if any file was quarantined.
+     *
+     * @param archive the archive of the output directory
+     */
+    public synchronized void write(ArchiveWriter archive) {
+        if (entries.isEmpty()) {
+            logger.info("No file had to be quarantined");
+            return;
+        }
+        byte[] report = String.join("\n", entries).getBytes(StandardCharsets.UTF_8);
+        archive.add(REPORT_FILE, () -> report);
+        logger.warn(quarantinedFiles + " files were quarantined, see " + REPORT_FILE + " in the archive");
+    }
+}
@@ -0,0 +1,214 @@
+package com.github.ciselab.lampion.cli.program;
+
+import com.github.ciselab.lampion.core.program.Engine;
+import com.github.ciselab.lampion.core.program.EngineResult;
+import com.github.ciselab.lampion.core.support.Hashing;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spoon.Launcher;
+import spoon.reflect.declaration.CtType;
+
+/**
+ * Re-runs the engine only on the input files that changed since the last run into the same output directory.
+ *
+ * After every run, an index is written next to the output. It holds a hash of the configuration and,
+ * for every input file, the hash of its content and the output files it produced.
+ * On the next run with the same configuration, files with an unchanged hash whose outputs still exist are skipped,
+ * their outputs from the previous run are kept. Changed and new files are parsed and transformed together,
+ * the outputs of changed and deleted files are removed before.
+ * If the configuration changed (or there is no index), every file is processed again
+ * and the outputs of the previous run are removed.
+ *
+ * With per-element seeds and the scopes perClassEach or perMethodEach, the output of a file does not depend
+ * on the other files of the run - hence the incremental output is identical to a full run.
+ */
+public class IncrementalRun {
+
+    private static Logger logger = LoggerFactory.getLogger(IncrementalRun.class);
+
+    public static final String INDEX_FILE = "lampion-incremental.index";
+
+    // These properties do not change the output of a file, e.g. the same input moved to another location
+    private static final Set<String> unindexedProperties = Set.of("inputDirectory", "outputDirectory", "shard");
+
+    private final Engine engine;
+    private final Properties configuration;
+    private ModelCache modelCache = ModelCache.disabled();
+
+    /**
+     * @param engine the engine to run on the changed files, it should derive its seeds per element
+     * @param configuration the configuration of the run, a different configuration invalidates the index
+     */
+    public IncrementalRun(Engine engine, Properties configuration) {
+        this.engine = engine;
+        this.configuration = configuration;
+    }
+
+    /**
+     * Sets the cache the changed files are loaded from and stored to, by default there is none.
+     *
+     * @param modelCache the cache to use
+     */
+    public void setModelCache(ModelCache modelCache) {
+        this.modelCache = modelCache;
+    }
+
+    /**
+     * Processes all files that changed since the last run and updates the index.
+     *
+     * @param files all java files of the input, changed or not
+     * @return the number of files that were processed, 0 if nothing changed
+     * @throws IOException if the input, the outputs or the index cannot be read or written
+     */
+    public int run(List<Path> files) throws IOException {
+        Path input = Path.of(engine.getCodeDirectory());
+        Path output = Path.of(engine.getOutputDirectory());
+        String config = Hashing.configurationHash(configuration, unindexedProperties);
+        Map<String, IndexEntry> previous = readIndex(output.resolve(INDEX_FILE), config, output);
+
+        Map<String, IndexEntry> index = new TreeMap<>();
+        List<Path> changed = new ArrayList<>();
+        Map<Path, String> changedHashes = new HashMap<>();
+        for (Path file : files) {
+            String relative = relativize(input, file);
+            String hash = Hashing.sha256(Files.readAllBytes(file));
+            IndexEntry old = previous.remove(relative);
+            if (old != null && old.hash.equals(hash) && old.outputs.stream().allMatch(o -> Files.exists(output.resolve(o)))) {
+                index.put(relative, old);
+            } else {
+                changed.add(file);
+                changedHashes.put(file.toAbsolutePath().normalize(), hash);
+                if (old != null) {
+                    deleteOutputs(output, old);
+                }
+            }
+        }
+        // What is left of the previous index was deleted from the input
+        for (IndexEntry deleted : previous.values()) {
+            deleteOutputs(output, deleted);
+        }
+        logger.info("Incremental run: " + changed.size() + " of " + files.size() + " files changed, "
+                + previous.size() + " were removed");
+
+        if (!changed.isEmpty()) {
+            Launcher launcher = modelCache.buildModel(changed);
+            EngineResult result = engine.run(launcher.getModel());
+            App.WriteAST(result, launcher);
+
+            Map<Path, List<String>> outputs = outputsByInput(launcher);
+            for (Path file : changed) {
+                Path absolute = file.toAbsolutePath().normalize();
+                // Outputs can be missing on purpose, e.g. if untouched files are skipped
+                List<String> written = outputs.getOrDefault(absolute, List.of()).stream()
+                        .filter(o -> Files.exists(output.resolve(o)))
+                        .toList();
+                index.put(relativize(input, file), new IndexEntry(changedHashes.get(absolute), written));
+            }
+        }
+
+        writeIndex(output.resolve(INDEX_FILE), config, index);
+        return changed.size();
+    }
+
+    /**
+     * Maps every input file of the model to the output files of its top-level types,
+     * which Spoon prints to the directory of their package.
+     */
+    private static Map<Path, List<String>> outputsByInput(Launcher launcher) {
+        Map<Path, List<String>> outputs = new HashMap<>();
+        for (CtType<?> type : launcher.getModel().getAllTypes()) {
+            if (type.getPosition().getFile() == null) {
+                continue;
+            }
+            outputs.computeIfAbsent(type.getPosition().getFile().toPath().toAbsolutePath().normalize(),
+                    k -> new ArrayList<>()).add(Passthrough.relativeOutputPath(type));
+        }
+        return outputs;
+    }
+
+    /**
+     * Reads the index of the last run. The outputs of an index of a different configuration are deleted,
+     * as every file has to be redone and a file that is gone from the input would otherwise leave them behind.
+     *
+     * The index is a line "config=<hash>", followed by a line "file\t<hash>\t<relative input>" per input file,
+     * each followed by a line "output\t<relative output>" per output. Paths are the last field of their line,
+     * so they can contain any character but a line break.
+     */
+    private static Map<String, IndexEntry> readIndex(Path indexFile, String config, Path output) throws IOException {
+        Map<String, IndexEntry> index = new HashMap<>();
+        if (!Files.exists(indexFile)) {
+            logger.info("Found no index of a previous run - processing all files");
+            return index;
+        }
+        List<String> lines = Files.readAllLines(indexFile, StandardCharsets.UTF_8);
+        IndexEntry current = null;
+        for (String line : lines.subList(Math.min(1, lines.size()), lines.size())) {
+            String[] fields = line.split("\t", 3);
+            if (fields[0].equals("file") && fields.length == 3) {
+                current = new IndexEntry(fields[1], new ArrayList<>());
+                index.put(fields[2], current);
+            } else if (fields[0].equals("output") && fields.length == 2 && current != null) {
+                current.outputs.add(fields[1]);
+            } else {
+                logger.warn("Could not read line \"" + line + "\" of " + indexFile + " - processing all files");
+                return new HashMap<>();
+            }
+        }
+        if (lines.isEmpty() || !lines.get(0).equals("config=" + config)) {
+            logger.info("The configuration changed since the last run - processing all files");
+            for (IndexEntry entry : index.values()) {
+                deleteOutputs(output, entry);
+            }
+            return new HashMap<>();
+        }
+        return index;
+    }
+
+    private static void writeIndex(Path indexFile, String config, Map<String, IndexEntry> index) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("config=" + config);
+        for (var entry : index.entrySet()) {
+            lines.add("file\t" + entry.getValue().hash + "\t" + entry.getKey());
+            for (String written : entry.getValue().outputs) {
+                lines.add("output\t" + written);
+            }
+        }
+        Files.createDirectories(indexFile.getParent());
+        Files.write(indexFile, lines, StandardCharsets.UTF_8);
+    }
+
+    private static void deleteOutputs(Path output, IndexEntry entry) throws IOException {
+        for (String file : entry.outputs) {
+            Files.deleteIfExists(output.resolve(file));
+        }
+    }
+
+    private static String relativize(Path root, Path file) {
+        return root.toAbsolutePath().normalize().relativize(file.toAbsolutePath().normalize())
+                .toString().replace('\\', '/');
+    }
+
+    /**
+     * The state of an input file after the last run: the hash of its content and the outputs it produced.
+     */
+    private static class IndexEntry {
+        final String hash;
+        final List<String> outputs;
+
+        IndexEntry(String hash, List<String> outputs) {
+            this.hash = hash;
+            this.outputs = outputs;
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package com.github.ciselab.lampion.cli.program;
+
+import com.github.ciselab.lampion.core.program.EngineResult;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spoon.Launcher;
+import spoon.SpoonException;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.factory.Factory;
+import spoon.reflect.visitor.PrettyPrinter;
+
+/**
+ * Compiles the transformed output with javac, to find the files that do not compile before they end up in a dataset.
+ *
+ * Every modified top-level type is printed like it is written to the output, and compiled in memory with the
+ * JavaCompiler of the running JDK - nothing is written to disk. The types are compiled in batches on several threads.
+ * The other types of the model are not compiled, but javac finds them as sources when a batch refers to them,
+ * hence only the types of the classpath given here (none by default) are missing from a compilation.
+ *
+ * The outcome of every file is kept for the whole run, which can consist of several engine runs,
+ * and written as a report next to the output at the end, together with the number of failing files per transformer.
+ * The verification is shared by all threads of a run.
+ */
+public class JavacVerification {
+
+    private static Logger logger = LoggerFactory.getLogger(JavacVerification.class);
+
+    public static final String REPORT_FILE = "lampion-javac.report";
+
+    // The errors of a file that are written to the report, the remaining ones are only counted
+    private static final int ERRORS_PER_FILE = 5;
+
+    private final int threads;
+    private final int batchSize;
+    private final List<File> classpath;
+    private final JavaCompiler compiler;
+
+    private final List<FileOutcome> outcomes = new ArrayList<>();
+
+    /**
+     * The outcome of compiling a single transformed file.
+     *
+     * @param path the path of the file in the output
+     * @param transformers the names of the transformers that were applied to the types of the file
+     * @param errors the errors javac reported for the file, empty if it compiled
+     */
+    public record FileOutcome(String path, List<String> transformers, List<String> errors) {
+        public boolean compiles() {
+            return errors.isEmpty();
+        }
+    }
+
+    /**
+     * @param threads the number of batches compiled at the same time, at least 1
+     * @param batchSize the number of files compiled together by a single javac task, at least 1
+     * @param classpath the libraries the transformed code may refer to, empty for none
+     * @throws UnsupportedOperationException for less than one thread or file per batch, or without a JDK
+     */
+    public JavacVerification(int threads, int batchSize, List<File> classpath) {
+        if (threads < 1) {
+            throw new UnsupportedOperationException("Verifying requires at least one thread, got " + threads);
+        }
+        if (batchSize < 1) {
+            throw new UnsupportedOperationException("A batch of verified files has to hold at least one file, got " + batchSize);
+        }
+        this.compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new UnsupportedOperationException("Verifying the output requires a JDK, but Lampion runs on a JRE");
+        }
+        this.threads = threads;
+        this.batchSize = batchSize;
+        this.classpath = List.copyOf(classpath);
+    }
+
+    /**
+     * Compiles the modified types of the engine result.
+     *
+     * @param engineResult the result of the engine run on the launchers model
+     * @param launcher the launcher holding the model, printed with its environment
+     * @return the outcomes of the compiled files, in the order of the model
+     */
+    public List<FileOutcome> verify(EngineResult engineResult, Launcher launcher) {
+        Instant start = Instant.now();
+        Factory factory = launcher.getFactory();
+        // All types are indexed up front, javac asks for the types of a package while compiling
+        Map<String, List<CtType<?>>> typesByPackage = new HashMap<>();
+        List<CtType<?>> modified = new ArrayList<>();
+        for (CtType<?> type : factory.getModel().getAllTypes()) {
+            // getOrCreate registers missing units in a map of the factory, which must not happen concurrently
+            factory.CompilationUnit().getOrCreate(type);
+            typesByPackage.computeIfAbsent(packageOf(type), p -> new ArrayList<>()).add(type);
+            if (engineResult.getModifiedTypes().contains(type)) {
+                modified.add(type);
+            }
+        }
+        if (modified.isEmpty()) {
+            return List.of();
+        }
+
+        ThreadLocal<PrettyPrinter> printers = ThreadLocal.withInitial(() -> factory.getEnvironment().createPrettyPrinter());
+        ModelSources sources = new ModelSources(typesByPackage, type -> printers.get().printTypes(type));
+
+        List<Callable<List<FileOutcome>>> tasks = new ArrayList<>();
+        for (int i = 0; i < modified.size(); i += batchSize) {
+            List<CtType<?>> batch = modified.subList(i, Math.min(modified.size(), i + batchSize));
+            tasks.add(() -> compile(batch, sources, engineResult.getAppliedTransformers()));
+        }
+        List<FileOutcome> batchOutcomes = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (Future<List<FileOutcome>> task : pool.invokeAll(tasks)) {
+                batchOutcomes.addAll(task.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SpoonException("Interrupted while verifying the output", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtimeException
+                    ? runtimeException
+                    : new SpoonException("Failed to verify the output", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        long failed = batchOutcomes.stream().filter(o -> !o.compiles()).count();
+        logger.info("Verified " + batchOutcomes.size() + " files with javac, " + failed + " did not compile - took "
+                + Duration.between(start, Instant.now()));
+        synchronized (this) {
+            outcomes.addAll(batchOutcomes);
+        }
+        return batchOutcomes;
+    }
+
+    private List<FileOutcome> compile(List<CtType<?>> batch, ModelSources sources,
+                                      Map<CtType<?>, List<String>> appliedTransformers) throws IOException {
+        List<JavaFileObject> files = new ArrayList<>();
+        Set<URI> uris = new HashSet<>();
+        for (CtType<?> type : batch) {
+            files.add(sources.sourceOf(type));
+            uris.add(sources.sourceOf(type).toUri());
+        }
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager standard = compiler.getStandardFileManager(diagnostics, Locale.ROOT, StandardCharsets.UTF_8);
+             InMemoryFileManager fileManager = new InMemoryFileManager(standard, sources)) {
+            standard.setLocation(StandardLocation.CLASS_PATH, classpath);
+            List<String> options = List.of(
+                    "-proc:none",
+                    // The referred types of the model are read, but not compiled
+                    "-implicit:none",
+                    "-nowarn",
+                    // Keep attributing the other files of the batch after the first error
+                    "-XDshould-stop.ifError=FLOW");
+            compiler.getTask(null, fileManager, diagnostics, options, null, files).call();
+        }
+
+        // javac wraps the files it is given, hence they are told apart by their uri
+        Map<URI, List<String>> errors = new HashMap<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() != Diagnostic.Kind.ERROR || diagnostic.getSource() == null) {
+                continue;
+            }
+            // Errors of the referred types are theirs, not of the batch
+            URI file = diagnostic.getSource().toUri();
+            if (uris.contains(file)) {
+                errors.computeIfAbsent(file, f -> new ArrayList<>())
+                        .add(diagnostic.getLineNumber() + ": " + diagnostic.getMessage(Locale.ROOT));
+            }
+        }
+        List<FileOutcome> batchOutcomes = new ArrayList<>();
+        for (CtType<?> type : batch) {
+            batchOutcomes.add(new FileOutcome(Passthrough.relativeOutputPath(type),
+                    appliedTransformers.getOrDefault(type, List.of()),
+                    errors.getOrDefault(sources.sourceOf(type).toUri(), List.of())));
+        }
+        return batchOutcomes;
+    }
+
+    /**
+     * @return the outcomes of all files verified so far
+     */
+    public synchronized List<FileOutcome> getOutcomes() {
+        return List.copyOf(outcomes);
+    }
+
+    /**
+     * Counts the files that did not compile per transformer, a file counts for every transformer applied to it.
+     *
+     * @return the number of failing and of all verified files per transformer name, sorted by name
+     */
+    public synchronized Map<String, long[]> getFailuresPerTransformer() {
+        Map<String, long[]> failures = new TreeMap<>();
+        for (FileOutcome outcome : outcomes) {
+            for (String transformer : outcome.transformers()) {
+                long[] counts = failures.computeIfAbsent(transformer, t -> new long[2]);
+                counts[0] += outcome.compiles() ? 0 : 1;
+                counts[1]++;
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Writes the report into the directory.
+     *
+     * @param directory the directory to write the report to, usually the output directory
+     * @throws IOException if the report cannot be written
+     */
+    public void write(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Files.writeString(directory.resolve(REPORT_FILE), report(), StandardCharsets.UTF_8);
+        logger.info("Wrote the javac verification of " + getOutcomes().size() + " files to " + directory.resolve(REPORT_FILE));
+    }
+
+    /**
+     * Adds the report to the archive the output is written to.
+     *
+     * @param archive the archive of the output directory
+     */
+    public void write(ArchiveWriter archive) {
+        byte[] report = report().getBytes(StandardCharsets.UTF_8);
+        archive.add(REPORT_FILE, () -> report);
+        logger.info("Wrote the javac verification of " + getOutcomes().size() + " files to " + REPORT_FILE + " in the archive");
+    }
+
+    /**
+     * @return a line per file with its outcome and transformers, followed by the errors of failing files,
+     *         and the failing files per transformer at the end
+     */
+    synchronized String report() {
+        StringBuilder report = new StringBuilder();
+        for (FileOutcome outcome : outcomes.stream().sorted(Comparator.comparing(FileOutcome::path)).toList()) {
+            report.append(outcome.compiles() ? "PASS " : "FAIL ").append(outcome.path())
+                    .append(" transformers=").append(String.join(",", outcome.transformers())).append('\n');
+            outcome.errors().stream().limit(ERRORS_PER_FILE)
+                    .forEach(error -> report.append("    ").append(error.replace("\n", "\n    ")).append('\n'));
+            if (outcome.errors().size() > ERRORS_PER_FILE) {
+                report.append("    ... ").append(outcome.errors().size() - ERRORS_PER_FILE).append(" more errors\n");
+            }
+        }
+        long failed = outcomes.stream().filter(o -> !o.compiles()).count();
+        report.append("\n").append(failed).append(" of ").append(outcomes.size()).append(" files did not compile\n");
+        getFailuresPerTransformer().forEach((transformer, counts) ->
+                report.append(transformer).append('=').append(counts[0]).append(" of ").append(counts[1]).append('\n'));
+        return report.toString();
+    }
+
+    private static String packageOf(CtType<?> type) {
+        return type.getPackage() == null || type.getPackage().isUnnamedPackage() ? "" : type.getPackage().getQualifiedName();
+    }
+
+    /**
+     * A top-level type of the model as a source for javac, printed when javac first reads it.
+     * Types referred to by several batches are printed only once.
+     */
+    private static class ModelSource extends SimpleJavaFileObject {
+        private final CtType<?> type;
+        private final Function<CtType<?>, String> printer;
+        private String content = null;
+
+        ModelSource(CtType<?> type, Function<CtType<?>, String> printer) {
+            super(URI.create("model:///" + Passthrough.relativeOutputPath(type)), Kind.SOURCE);
+            this.type = type;
+            this.printer = printer;
+        }
+
+        @Override
+        public synchronized CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            if (content == null) {
+                content = printer.apply(type);
+            }
+            return content;
+        }
+    }
+
+    /**
+     * The sources of all types of the model, a single one per type, so that the batch and the source path agree.
+     */
+    private static class ModelSources {
+        private final Map<String, List<CtType<?>>> typesByPackage;
+        private final Function<CtType<?>, String> printer;
+        // Elements compare by content, hence the types are told apart by identity
+        private final Map<CtType<?>, ModelSource> sources = Collections.synchronizedMap(new IdentityHashMap<>());
+
+        ModelSources(Map<String, List<CtType<?>>> typesByPackage, Function<CtType<?>, String> printer) {
+            this.typesByPackage = typesByPackage;
+            this.printer = printer;
+        }
+
+        ModelSource sourceOf(CtType<?> type) {
+            return sources.computeIfAbsent(type, t -> new ModelSource(t, printer));
+        }
+
+        List<JavaFileObject> sourcesOf(String packageName) {
+            return typesByPackage.getOrDefault(packageName, List.of()).stream()
+                    .map(this::sourceOf)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Serves the types of the model as source path and swallows the compiled classes.
+     */
+    private static class InMemoryFileManager extends ForwardingJavaFileManager<JavaFileManager> {
+        private final ModelSources sources;
+
+        InMemoryFileManager(JavaFileManager fileManager, ModelSources sources) {
+            super(fileManager);
+            this.sources = sources;
+        }
+
+        @Override
+        public boolean hasLocation(Location location) {
+            return location == StandardLocation.SOURCE_PATH || super.hasLocation(location);
+        }
+
+        @Override
+        public Iterable<JavaFileObject> list(Location location, String packageName, Set<JavaFileObject.Kind> kinds,
+                                             boolean recurse) throws IOException {
+            if (location == StandardLocation.SOURCE_PATH) {
+                return kinds.contains(JavaFileObject.Kind.SOURCE) ? sources.sourcesOf(packageName) : List.of();
+            }
+            return super.list(location, packageName, kinds, recurse);
+        }
+
+        @Override
+        public String inferBinaryName(Location location, JavaFileObject file) {
+            if (file instanceof ModelSource source) {
+                return source.type.getQualifiedName();
+            }
+            return super.inferBinaryName(location, file);
+        }
+
+        @Override
+        public boolean isSameFile(FileObject a, FileObject b) {
+            if (a instanceof ModelSource || b instanceof ModelSource) {
+                return a == b;
+            }
+            return super.isSameFile(a, b);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind,
+                                                   FileObject sibling) {
+            return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+                @Override
+                public OutputStream openOutputStream() {
+                    return new ByteArrayOutputStream();
+                }
+            };
+        }
+    }
+}
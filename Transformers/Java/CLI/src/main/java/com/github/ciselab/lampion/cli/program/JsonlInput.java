@@ -0,0 +1,150 @@
+package com.github.ciselab.lampion.cli.program;
+
+import com.github.ciselab.lampion.core.program.Engine;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import spoon.support.compiler.VirtualFile;
+
+/**
+ * Transforms a CodeSearchNet-style jsonl dataset directly, without writing a java file per record first.
+ *
+ * Every record is wrapped into a class like jsonl_to_java.py does, including the header comment with the other
+ * values of the record, and given to Spoon as an in-memory VirtualFile (see VirtualInput).
+ * The records are read one at a time with a JsonlReader, so the file does not have to fit into the heap either.
+ *
+ * The written java files (or jsonl records, see JsonlWriter) are the same as for the files of jsonl_to_java.py.
+ */
+public class JsonlInput extends VirtualInput {
+
+    private final Path jsonlFile;
+
+    /**
+     * @param engine the engine to run on every batch
+     * @param jsonlFile the dataset to read
+     * @param batchSize the number of records per launcher
+     * @throws UnsupportedOperationException for a batch size smaller than 1
+     */
+    public JsonlInput(Engine engine, Path jsonlFile, int batchSize) {
+        super(engine, batchSize);
+        this.jsonlFile = jsonlFile;
+    }
+
+    @Override
+    protected long countSources() throws IOException {
+        try (JsonlReader reader = new JsonlReader(jsonlFile)) {
+            return reader.countLines();
+        }
+    }
+
+    @Override
+    protected Sources openSources() throws IOException {
+        JsonlReader reader = new JsonlReader(jsonlFile);
+        // Overloaded methods of a class would get the same class name, see jsonl_to_java.py.
+        // Every pass starts over, so that the records get the same names in every pass.
+        Set<String> seenClassNames = new HashSet<>();
+        return new Sources() {
+            @Override
+            public VirtualFile next() throws IOException {
+                String line = reader.nextLine();
+                return line == null ? null : toJavaSource(JsonlReader.parseRecord(line), seenClassNames);
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        };
+    }
+
+    /**
+     * Wraps the code of the record into a class in the package of its path, like jsonl_to_java.py.
+     * The other values of the record are kept in the header comment read by JsonlWriter.
+     *
+     * @param record a CodeSearchNet record, with at least path, func_name and code
+     * @param seenClassNames the class names given so far, a counter is added to a name that was given already
+     * @return the java file of the record, named after its package and class
+     */
+    static VirtualFile toJavaSource(Map<String, Object> record, Set<String> seenClassNames) {
+        String path = (String) record.get("path");
+        String funcName = (String) record.get("func_name");
+        List<String> parts = List.of(path.split("/"));
+        String directory = String.join("/", parts.subList(0, parts.size() - 1));
+        String className = parts.get(parts.size() - 1).split("\\.")[0];
+        String func = funcName.contains(".") ? funcName.split("\\.")[1] : funcName;
+
+        String finalClassName = className + "_" + func;
+        for (int counter = 2; !seenClassNames.add(finalClassName); counter++) {
+            finalClassName = className + "_" + func + "_" + counter;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Object> docTokens = (List<Object>) record.getOrDefault("docstring_tokens", List.of());
+        String source = (directory.isEmpty() ? "" : "package " + directory.replace('/', '.') + ";\n")
+                + "/*\n"
+                + "python_helper_header_start\n"
+                + "ur_repo " + record.get("repo") + " ur_repo\n"
+                + "ur_url " + record.get("url") + " ur_url\n"
+                + "ur_path " + path + " ur_path\n"
+                + "ur_func_name " + funcName + " ur_func_name\n"
+                + "ur_docstring " + toBytesLiteral((String) record.getOrDefault("docstring", "")) + " ur_docstring\n"
+                + "ur_doctokens " + toStringList(docTokens) + " ur_doctokens\n"
+                + "ur_sha " + record.get("sha") + " ur_sha\n"
+                + "ur_partition " + record.get("partition") + " ur_partition\n"
+                + "python_helper_header_end\n"
+                + "*/\n"
+                + "public class " + finalClassName + " {\n\n"
+                + record.get("code") + "\n\n"
+                + "}\n";
+        String name = (directory.isEmpty() ? "" : directory + "/") + finalClassName + ".java";
+        return new VirtualFile(source, name);
+    }
+
+    /**
+     * Writes the string as a python bytes literal of its utf-8, as printed by python for the header.
+     */
+    static String toBytesLiteral(String value) {
+        StringBuilder literal = new StringBuilder("b'");
+        int previous = 0;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            int c = b & 0xff;
+            switch (c) {
+                case '\\' -> literal.append("\\\\");
+                case '\'' -> literal.append("\\'");
+                case '\n' -> literal.append("\\n");
+                case '\r' -> literal.append("\\r");
+                case '\t' -> literal.append("\\t");
+                default -> {
+                    // A "*/" would end the header comment
+                    if (c < 0x20 || c > 0x7e || (c == '/' && previous == '*')) {
+                        literal.append(String.format("\\x%02x", c));
+                    } else {
+                        literal.append((char) c);
+                    }
+                }
+            }
+            previous = c;
+        }
+        return literal.append('\'').toString();
+    }
+
+    /**
+     * Writes the values as a python list of strings.
+     */
+    static String toStringList(List<Object> values) {
+        return values.stream()
+                .map(value -> "'" + String.valueOf(value)
+                        .replace("\\", "\\\\")
+                        .replace("'", "\\'")
+                        .replace("\n", "\\n")
+                        .replace("\r", "\\r")
+                        .replace("\t", "\\t")
+                        .replace("*/", "*\\x2f") + "'")
+                .collect(Collectors.joining(", ", "[", "]"));
+    }
+}
@@ -0,0 +1,325 @@
+package com.github.ciselab.lampion.cli.program;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the lines of a jsonl file through a memory-mapped window, one record at a time.
+ *
+ * Datasets come in shards of several gigabytes. Reading them with a BufferedReader copies every byte through
+ * the heap, and collecting the lines keeps all of them as Strings. Here, the file is mapped in windows
+ * (1 GB by default) and only the current line is decoded, the pages of the file are left to the operating system.
+ * A line has to fit into a window, the window is moved to the start of a line that crosses its end.
+ * Empty lines are skipped.
+ *
+ * The records are parsed with a small json parser, which covers the objects, arrays, strings, numbers and literals
+ * of jsonl datasets - the CLI has no json library.
+ */
+public class JsonlReader implements Closeable {
+
+    private static final int DEFAULT_WINDOW = 1 << 30;
+
+    private final FileChannel channel;
+    private final long size;
+    private final int window;
+
+    private MappedByteBuffer buffer;
+    private long bufferStart = 0;     // the position of the buffer in the file
+    private long position = 0;        // the position of the next line in the file
+
+    /**
+     * @param file the jsonl file to read
+     * @throws IOException if the file cannot be opened
+     */
+    public JsonlReader(Path file) throws IOException {
+        this(file, DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param file the jsonl file to read
+     * @param window the number of bytes mapped at once, at least the length of the longest line
+     * @throws IOException if the file cannot be opened
+     */
+    public JsonlReader(Path file, int window) throws IOException {
+        if (window < 1) {
+            throw new UnsupportedOperationException("The window of a jsonl reader has to be at least one byte");
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.window = window;
+    }
+
+    /**
+     * @return the next non-empty line without its line break, null at the end of the file
+     * @throws IOException if the file cannot be mapped
+     * @throws UnsupportedOperationException if a line is longer than the window
+     */
+    public String nextLine() throws IOException {
+        while (position < size) {
+            long end = findLineEnd();
+            int offset = (int) (position - bufferStart);
+            int length = (int) (end - position);
+            position = Math.min(end + 1, size);
+            if (length > 0 && buffer.get(offset + length - 1) == '\r') {
+                length--;
+            }
+            if (length > 0) {
+                return StandardCharsets.UTF_8.decode(buffer.slice(offset, length)).toString();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of remaining non-empty lines, the reader is at the end of the file afterwards
+     * @throws IOException if the file cannot be mapped
+     */
+    public long countLines() throws IOException {
+        long lines = 0;
+        while (position < size) {
+            long end = findLineEnd();
+            boolean empty = end == position
+                    || (end == position + 1 && buffer.get((int) (position - bufferStart)) == '\r');
+            position = Math.min(end + 1, size);
+            if (!empty) {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Maps the window around the current line and returns the position of its line break (or the end of the file).
+     */
+    private long findLineEnd() throws IOException {
+        if (buffer == null || position >= bufferStart + buffer.limit()) {
+            map(position);
+        }
+        while (true) {
+            for (int i = (int) (position - bufferStart); i < buffer.limit(); i++) {
+                if (buffer.get(i) == '\n') {
+                    return bufferStart + i;
+                }
+            }
+            if (bufferStart + buffer.limit() == size) {
+                return size;
+            }
+            if (bufferStart == position) {
+                throw new UnsupportedOperationException("Found a line of more than " + window + " bytes at byte " + position);
+            }
+            map(position);
+        }
+    }
+
+    private void map(long start) throws IOException {
+        bufferStart = start;
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(window, size - start));
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer = null;
+        channel.close();
+    }
+
+    /**
+     * Parses a line of jsonl.
+     *
+     * @param line a json object
+     * @return the values of the object by their key, as String, Double, Boolean, null, List or Map
+     * @throws IllegalArgumentException if the line is not a json object
+     */
+    public static Map<String, Object> parseRecord(String line) {
+        Parser parser = new Parser(line);
+        Object value = parser.value();
+        parser.skipWhitespace();
+        if (!(value instanceof Map<?, ?>) || parser.index != line.length()) {
+            throw new IllegalArgumentException("Expected a single json object, got " + abbreviate(line));
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> record = (Map<String, Object>) value;
+        return record;
+    }
+
+    private static String abbreviate(String line) {
+        return line.length() > 100 ? line.substring(0, 100) + "..." : line;
+    }
+
+    /**
+     * A recursive descent parser over a single json value.
+     */
+    private static class Parser {
+        final String json;
+        int index = 0;
+
+        Parser(String json) {
+            this.json = json;
+        }
+
+        Object value() {
+            skipWhitespace();
+            if (index >= json.length()) {
+                throw error("a value");
+            }
+            char c = json.charAt(index);
+            switch (c) {
+                case '{' -> {
+                    return object();
+                }
+                case '[' -> {
+                    return array();
+                }
+                case '"' -> {
+                    return string();
+                }
+                default -> {
+                    return literal();
+                }
+            }
+        }
+
+        Map<String, Object> object() {
+            Map<String, Object> object = new LinkedHashMap<>();
+            index++;
+            skipWhitespace();
+            if (peek() == '}') {
+                index++;
+                return object;
+            }
+            while (true) {
+                skipWhitespace();
+                if (peek() != '"') {
+                    throw error("a key");
+                }
+                String key = string();
+                skipWhitespace();
+                expect(':');
+                object.put(key, value());
+                skipWhitespace();
+                if (peek() == ',') {
+                    index++;
+                } else {
+                    expect('}');
+                    return object;
+                }
+            }
+        }
+
+        List<Object> array() {
+            List<Object> array = new ArrayList<>();
+            index++;
+            skipWhitespace();
+            if (peek() == ']') {
+                index++;
+                return array;
+            }
+            while (true) {
+                array.add(value());
+                skipWhitespace();
+                if (peek() == ',') {
+                    index++;
+                } else {
+                    expect(']');
+                    return array;
+                }
+            }
+        }
+
+        String string() {
+            StringBuilder string = new StringBuilder();
+            index++;
+            while (true) {
+                if (index >= json.length()) {
+                    throw error("the end of a string");
+                }
+                char c = json.charAt(index++);
+                if (c == '"') {
+                    return string.toString();
+                }
+                if (c != '\\') {
+                    string.append(c);
+                    continue;
+                }
+                if (index >= json.length()) {
+                    throw error("an escape");
+                }
+                char escaped = json.charAt(index++);
+                switch (escaped) {
+                    case 'n' -> string.append('\n');
+                    case 'r' -> string.append('\r');
+                    case 't' -> string.append('\t');
+                    case 'b' -> string.append('\b');
+                    case 'f' -> string.append('\f');
+                    case 'u' -> {
+                        // Exactly four hex digits, Integer.parseInt would also take a sign
+                        if (index + 4 > json.length()
+                                || !json.substring(index, index + 4).chars().allMatch(d -> Character.digit(d, 16) >= 0)) {
+                            throw error("an escape");
+                        }
+                        string.append((char) Integer.parseInt(json.substring(index, index + 4), 16));
+                        index += 4;
+                    }
+                    default -> string.append(escaped);
+                }
+            }
+        }
+
+        Object literal() {
+            int start = index;
+            while (index < json.length() && ",}] \t\r\n".indexOf(json.charAt(index)) < 0) {
+                index++;
+            }
+            String literal = json.substring(start, index);
+            switch (literal) {
+                case "true" -> {
+                    return Boolean.TRUE;
+                }
+                case "false" -> {
+                    return Boolean.FALSE;
+                }
+                case "null" -> {
+                    return null;
+                }
+                default -> {
+                    try {
+                        return Double.parseDouble(literal);
+                    } catch (NumberFormatException e) {
+                        index = start;
+                        throw error("a value");
+                    }
+                }
+            }
+        }
+
+        void skipWhitespace() {
+            while (index < json.length() && Character.isWhitespace(json.charAt(index))) {
+                index++;
+            }
+        }
+
+        char peek() {
+            return index < json.length() ? json.charAt(index) : '\0';
+        }
+
+        void expect(char c) {
+            if (peek() != c) {
+                throw error("'" + c + "'");
+            }
+            index++;
+        }
+
+        IllegalArgumentException error(String expected) {
+            return new IllegalArgumentException("Expected " + expected + " at character " + index
+                    + " of " + abbreviate(json));
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package com.github.ciselab.lampion.cli.program;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spoon.reflect.declaration.CtCompilationUnit;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.visitor.PrettyPrinter;
+
+/**
+ * Writes transformed types as CodeSearchNet-style jsonl records, one line per top-level type.
+ *
+ * This replaces the round trip of the CodeBERT experiments, which printed java files and read them again
+ * with java_to_jsonl.py. The input files are expected to be made by jsonl_to_java.py, which wraps every
+ * method of the dataset in a class and keeps the remaining values of the record in a header comment.
+ * The header is read from the original source, so it survives removing comments. For in-memory sources without
+ * a file (see JsonlInput), it is read from the comments of the class instead.
+ * The code of a record is the transformed body of the wrapping class, tokenized like java_to_jsonl.py does.
+ * Files without such a header get a record with their path and complete code.
+ *
+ * Unlike the python script, the docstring is decoded from the python bytes literal of the header and not altered
+ * further, and the tokens are taken from the code itself, without the escaping artifacts.
+ *
+ * A writer is opened once per file and shared by all threads of a run, every record is written in one piece.
+ */
+public class JsonlWriter implements Closeable {
+
+    private static Logger logger = LoggerFactory.getLogger(JsonlWriter.class);
+
+    private static final Map<Path, JsonlWriter> openWriters = new ConcurrentHashMap<>();
+
+    private static final Pattern HEADER = Pattern.compile("python_helper_header_start(.*?)python_helper_header_end", Pattern.DOTALL);
+    private static final Pattern HEADER_VALUE = Pattern.compile("ur_(\\w+) (.*?) ur_\\1", Pattern.DOTALL);
+    // The tokenization of java_to_jsonl.py
+    private static final Pattern TOKEN = Pattern.compile("\\w+(?:'\\w+)*|[^\\w\\s]", Pattern.UNICODE_CHARACTER_CLASS);
+
+    private final Path file;
+    private final BufferedWriter writer;
+    private int records = 0;
+
+    private JsonlWriter(Path file) throws IOException {
+        this.file = file;
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the writer of the file, opening it on first use. An existing file is replaced on opening.
+     *
+     * @param file the jsonl file to write to
+     * @return the writer of the file, the same for every call until it is closed
+     */
+    public static JsonlWriter forFile(Path file) {
+        return openWriters.computeIfAbsent(file.toAbsolutePath().normalize(), f -> {
+            try {
+                return new JsonlWriter(f);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Closes all writers opened with forFile, to be called at the end of a run.
+     *
+     * @throws IOException if a writer cannot be flushed
+     */
+    public static void closeAll() throws IOException {
+        for (JsonlWriter writer : openWriters.values()) {
+            writer.close();
+        }
+    }
+
+    /**
+     * Prints the types and appends a record for each of them.
+     *
+     * @param types the top-level types to write
+     * @param printer the printer to print the types with, used by this thread only
+     * @return the number of written records
+     */
+    public int write(List<CtType<?>> types, PrettyPrinter printer) {
+        int written = 0;
+        for (CtType<?> type : types) {
+            String record = toRecord(type, printer.printTypes(type));
+            synchronized (this) {
+                try {
+                    writer.write(record);
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                records++;
+            }
+            written++;
+        }
+        return written;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (openWriters.remove(file, this)) {
+            writer.close();
+            logger.info("Wrote " + records + " records to " + file);
+        }
+    }
+
+    /**
+     * Builds the jsonl record of the printed type, with the values of the header of its original source if it has one.
+     *
+     * @param type the top-level type of the record
+     * @param printed the printed compilation unit of the type
+     * @return the record as a single line of json, without the line break
+     */
+    public static String toRecord(CtType<?> type, String printed) {
+        CtCompilationUnit unit = type.getPosition().getCompilationUnit();
+        // In-memory sources (see JsonlInput) come without a file
+        Map<String, String> header = unit == null || unit.getFile() == null
+                ? Map.of()
+                : readHeader(unit.getOriginalSourceCode());
+        // Their header is still a comment of the class
+        for (int i = 0; header.isEmpty() && i < type.getComments().size(); i++) {
+            header = readHeader(type.getComments().get(i).getContent());
+        }
+
+        String code = header.isEmpty() ? printed : extractBody(printed, type.getSimpleName());
+        Map<String, Object> record = new LinkedHashMap<>();
+        if (header.isEmpty()) {
+            record.put("path", type.getPosition().getFile() == null
+                    ? type.getQualifiedName().replace('.', '/') + ".java"
+                    : type.getPosition().getFile().getPath());
+        } else {
+            record.put("repo", header.get("repo"));
+            record.put("path", header.get("path"));
+            record.put("func_name", header.get("func_name"));
+        }
+        record.put("language", "java");
+        record.put("code", code);
+        record.put("code_tokens", tokenize(code));
+        if (!header.isEmpty()) {
+            record.put("docstring", decodeBytesLiteral(header.getOrDefault("docstring", "b''")));
+            record.put("docstring_tokens", parseStringList(header.getOrDefault("doctokens", "[]")));
+            record.put("sha", header.get("sha"));
+            record.put("url", header.get("url"));
+            record.put("partition", header.get("partition"));
+        }
+        return toJson(record);
+    }
+
+    /**
+     * Reads the values of the header written by jsonl_to_java.py, e.g. "ur_repo google/guava ur_repo".
+     *
+     * @param source the source code of the file
+     * @return the values by their key without the "ur_" prefix, empty if there is no header
+     */
+    public static Map<String, String> readHeader(String source) {
+        Map<String, String> values = new LinkedHashMap<>();
+        Matcher header = source == null ? null : HEADER.matcher(source);
+        if (header == null || !header.find()) {
+            return values;
+        }
+        Matcher value = HEADER_VALUE.matcher(header.group(1));
+        while (value.find()) {
+            values.put(value.group(1), value.group(2).strip());
+        }
+        return values;
+    }
+
+    /**
+     * The body of the wrapping class: everything between the first curly bracket after its declaration
+     * and the last curly bracket, like java_to_jsonl.py takes it.
+     */
+    static String extractBody(String printed, String simpleName) {
+        Matcher declaration = Pattern.compile("\\b(class|interface|enum|record)\\s+" + Pattern.quote(simpleName) + "\\b")
+                .matcher(printed);
+        int start = declaration.find() ? printed.indexOf('{', declaration.end()) : printed.indexOf('{');
+        int end = printed.lastIndexOf('}');
+        if (start < 0 || end <= start) {
+            return printed.strip();
+        }
+        return printed.substring(start + 1, end).strip();
+    }
+
+    static List<String> tokenize(String code) {
+        List<String> tokens = new ArrayList<>();
+        Matcher token = TOKEN.matcher(code);
+        while (token.find()) {
+            tokens.add(token.group());
+        }
+        return tokens;
+    }
+
+    /**
+     * Decodes a python bytes literal such as b'It\'s \xc3\xa4\n', holding utf-8.
+     *
+     * @param literal the literal as python prints it
+     * @return the decoded string
+     * @throws IllegalArgumentException if an escape is not followed by two hex digits
+     */
+    public static String decodeBytesLiteral(String literal) {
+        String content = literal.strip();
+        if (content.startsWith("b")) {
+            content = content.substring(1);
+        }
+        if (content.length() >= 2) {
+            content = content.substring(1, content.length() - 1);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (c != '\\' || i + 1 == content.length()) {
+                byte[] encoded = String.valueOf(c).getBytes(StandardCharsets.UTF_8);
+                bytes.write(encoded, 0, encoded.length);
+                continue;
+            }
+            char escaped = content.charAt(++i);
+            switch (escaped) {
+                case 'n' -> bytes.write('\n');
+                case 'r' -> bytes.write('\r');
+                case 't' -> bytes.write('\t');
+                case 'x' -> {
+                    bytes.write(parseHex(content, i + 1, 2));
+                    i += 2;
+                }
+                default -> bytes.write(escaped);
+            }
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a python list of strings such as ['Copies', "it's"].
+     *
+     * @param literal the list as python prints it
+     * @return the strings of the list
+     * @throws IllegalArgumentException if an escape is incomplete or not followed by enough hex digits
+     */
+    public static List<String> parseStringList(String literal) {
+        List<String> strings = new ArrayList<>();
+        String content = literal.strip();
+        int i = content.indexOf('[') + 1;
+        while (i < content.length()) {
+            char quote = content.charAt(i);
+            if (quote != '\'' && quote != '"') {
+                i++;
+                continue;
+            }
+            StringBuilder string = new StringBuilder();
+            for (i++; i < content.length() && content.charAt(i) != quote; i++) {
+                char c = content.charAt(i);
+                if (c != '\\') {
+                    string.append(c);
+                    continue;
+                }
+                if (++i >= content.length()) {
+                    throw new IllegalArgumentException("Expected an escape at character " + i + " of " + content);
+                }
+                char escaped = content.charAt(i);
+                switch (escaped) {
+                    case 'n' -> string.append('\n');
+                    case 'r' -> string.append('\r');
+                    case 't' -> string.append('\t');
+                    case 'x' -> {
+                        string.append((char) parseHex(content, i + 1, 2));
+                        i += 2;
+                    }
+                    case 'u' -> {
+                        string.append((char) parseHex(content, i + 1, 4));
+                        i += 4;
+                    }
+                    case 'U' -> {
+                        int codePoint = parseHex(content, i + 1, 8);
+                        if (!Character.isValidCodePoint(codePoint)) {
+                            throw new IllegalArgumentException("Expected a code point at character " + (i + 1) + " of " + content);
+                        }
+                        string.appendCodePoint(codePoint);
+                        i += 8;
+                    }
+                    default -> string.append(escaped);
+                }
+            }
+            strings.add(string.toString());
+            i++;
+        }
+        return strings;
+    }
+
+    /**
+     * Parses exactly the given number of hex digits at the start, Integer.parseInt alone would also take a sign.
+     */
+    private static int parseHex(String content, int start, int digits) {
+        if (start + digits > content.length()
+                || !content.substring(start, start + digits).chars().allMatch(d -> Character.digit(d, 16) >= 0)) {
+            throw new IllegalArgumentException("Expected " + digits + " hex digits at character " + start + " of " + content);
+        }
+        return Integer.parseInt(content.substring(start, start + digits), 16);
+    }
+
+    /**
+     * Writes the record as a single line of json. Values are strings or lists of strings, nulls are left out.
+     */
+    static String toJson(Map<String, Object> record) {
+        StringBuilder json = new StringBuilder("{");
+        for (var entry : record.entrySet()) {
+            if (entry.getValue() == null) {
+                continue;
+            }
+            if (json.length() > 1) {
+                json.append(", ");
+            }
+            appendString(json, entry.getKey());
+            json.append(": ");
+            if (entry.getValue() instanceof List<?> list) {
+                json.append('[');
+                for (int i = 0; i < list.size(); i++) {
+                    if (i > 0) {
+                        json.append(", ");
+                    }
+                    appendString(json, String.valueOf(list.get(i)));
+                }
+                json.append(']');
+            } else {
+                appendString(json, String.valueOf(entry.getValue()));
+            }
+        }
+        return json.append('}').toString();
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,151 @@
+package com.github.ciselab.lampion.cli.program;
+
+import com.github.ciselab.lampion.core.program.ModelSnapshot;
+import com.github.ciselab.lampion.core.support.Hashing;
+import com.github.ciselab.lampion.core.support.Versions;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spoon.Launcher;
+import spoon.reflect.factory.Factory;
+
+/**
+ * A persistent cache of parsed Spoon models, to skip parsing when the same input is transformed again.
+ *
+ * Grid experiments run the same corpus under many configurations, and every run parses the corpus from scratch.
+ * This cache stores the serialized model of a set of files (a single file in the pipelined mode,
+ * a partition or the whole input otherwise) in a directory, keyed by the paths and contents of the files
+ * together with the versions of Spoon and the JDK. As long as none of them change, the next run loads the model
+ * instead of parsing. Entries of other versions are simply never hit again and can be deleted.
+ *
+ * The model is stored right after parsing, before any transformation. Entries are written to a temporary file
+ * and moved in place, so concurrent runs sharing a cache directory never read half-written entries.
+ * A cache entry that cannot be loaded is deleted and the files are parsed again.
+ *
+ * The entries are read with plain java deserialization, which runs code of the classes named in the entry.
+ * The directory must therefore be trusted, i.e. only writable by the runs sharing it, like any other input of a run.
+ */
+public class ModelCache {
+
+    private static Logger logger = LoggerFactory.getLogger(ModelCache.class);
+
+    private static final String ENTRY_SUFFIX = ".model";
+
+    private final Path directory;     // null if the cache is disabled
+
+    private ModelCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param directory the directory holding the cache entries, created if missing
+     * @return a cache storing its entries in the directory
+     * @throws IOException if the directory cannot be created
+     */
+    public static ModelCache in(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        return new ModelCache(directory);
+    }
+
+    /**
+     * @return a cache that always parses and never stores anything
+     */
+    public static ModelCache disabled() {
+        return new ModelCache(null);
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Returns a launcher holding the model of the files, loaded from the cache if possible and parsed otherwise.
+     * Freshly parsed models are added to the cache.
+     * In both cases, auto-imports are disabled afterwards,
+     * as with the imports set to true on second application the import will disappear, making Lambdas uncompilable,
+     * and the printing is prepared (see App.preparePrinting).
+     *
+     * @param files the java files to build the model from
+     * @return a launcher whose model is built
+     */
+    public Launcher buildModel(List<Path> files) {
+        String key = isEnabled() ? keyOf(files) : null;
+        Launcher launcher = isEnabled() ? load(key) : null;
+        if (launcher == null) {
+            launcher = new Launcher();
+            for (Path file : files) {
+                launcher.addInputResource(file.toString());
+            }
+            launcher.buildModel();
+            if (isEnabled()) {
+                save(key, launcher.getFactory());
+            }
+        }
+        launcher.getFactory().getEnvironment().setAutoImports(false);
+        App.preparePrinting(launcher);
+        return launcher;
+    }
+
+    /**
+     * The key covers everything the parsed model depends on: the versions of the parser and of the JDK,
+     * and the absolute path and content of every file. The path is part of the key,
+     * as it is stored in the source positions and used to derive the seeds of the classes.
+     */
+    String keyOf(List<Path> files) {
+        StringBuilder content = new StringBuilder()
+                .append("spoon=").append(Versions.spoon()).append('\n')
+                .append("jdk=").append(Runtime.version()).append('\n');
+        for (Path file : files) {
+            try {
+                content.append(file.toAbsolutePath().normalize()).append('=')
+                        .append(Hashing.sha256(Files.readAllBytes(file))).append('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return Hashing.sha256(content.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Launcher load(String key) {
+        Path entry = directory.resolve(key + ENTRY_SUFFIX);
+        if (!Files.exists(entry)) {
+            return null;
+        }
+        try (InputStream in = Files.newInputStream(entry)) {
+            Factory factory = ModelSnapshot.read(in);
+            logger.debug("Loaded model " + key + " from the cache");
+            return new Launcher(factory);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not load cached model " + entry + " - parsing again", e);
+            try {
+                Files.deleteIfExists(entry);
+            } catch (IOException ignored) {
+                // Another run may have replaced it in the meantime, it is overwritten on saving anyway
+            }
+            return null;
+        }
+    }
+
+    private void save(String key, Factory factory) {
+        Path entry = directory.resolve(key + ENTRY_SUFFIX);
+        try {
+            Path temporary = Files.createTempFile(directory, key, ".tmp");
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                ModelSnapshot.write(factory, out);
+            }
+            Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.debug("Stored model " + key + " in the cache");
+        } catch (IOException e) {
+            // A failing cache must not fail the run, the model is just parsed again next time
+            logger.warn("Could not store model " + key + " in the cache", e);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.github.ciselab.lampion.cli.program;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spoon.SpoonException;
+import spoon.reflect.CtModel;
+import spoon.reflect.declaration.CtCompilationUnit;
+import spoon.reflect.declaration.CtPackage;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.factory.Factory;
+import spoon.reflect.visitor.Filter;
+import spoon.reflect.visitor.PrettyPrinter;
+import spoon.support.JavaOutputProcessor;
+
+/**
+ * Prints the top-level types of a model to the source output directory of its environment on several threads.
+ *
+ * Spoon prints all types one after another with a single printer. The printers are not thread-safe,
+ * so every thread gets its own printer, created from the environment just like Spoon does,
+ * and all types of a compilation unit are printed by the same thread.
+ * As every type is printed by a fresh calculation of the same printer configuration, the files are byte-identical
+ * to those of the sequential printer. The compilation units are resolved and the package directories
+ * are created before printing, as both are shared between the threads.
+ * Instead of the directory, the types can be printed into an ArchiveWriter, which compresses them meanwhile.
+ */
+public class ParallelPrinter {
+
+    private static Logger logger = LoggerFactory.getLogger(ParallelPrinter.class);
+
+    private final int threads;
+
+    /**
+     * @param threads the number of threads to print with, at least 1
+     */
+    public ParallelPrinter(int threads) {
+        if (threads < 1) {
+            throw new UnsupportedOperationException("Printing requires at least one thread, got " + threads);
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Prints the top-level types of the factories model that match the filter.
+     *
+     * @param factory the factory holding the model and the environment to print with
+     * @param filter the types to print, null to print all types
+     * @return the number of printed types
+     */
+    public int print(Factory factory, Filter<CtType<?>> filter) {
+        List<List<CtType<?>>> groups = groupByCompilationUnit(factory, filter);
+        int printed = groups.stream().mapToInt(List::size).sum();
+        createPackageDirectories(factory.getModel(),
+                factory.getEnvironment().getSourceOutputDirectory().toPath());
+
+        ThreadLocal<JavaOutputProcessor> printers = ThreadLocal.withInitial(() -> {
+            JavaOutputProcessor printer = new JavaOutputProcessor(factory.getEnvironment().createPrettyPrinter());
+            printer.setFactory(factory);
+            return printer;
+        });
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (List<CtType<?>> types : groups) {
+                tasks.add(pool.submit(() -> types.forEach(printers.get()::createJavaFile)));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SpoonException("Interrupted while printing", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } finally {
+            pool.shutdownNow();
+        }
+        logger.debug("Printed " + printed + " types of " + groups.size() + " compilation units on " + threads + " threads");
+        return printed;
+    }
+
+    /**
+     * Prints the top-level types of the factories model that match the filter into the archive,
+     * each under the path it would be printed to in a directory.
+     * All types of a compilation unit are printed by the same thread like above.
+     * They are added unit by unit in the order of the model, while they are printed. Returns when all types are printed, the archive may still be compressing them.
+     *
+     * @param factory the factory holding the model and the environment to print with
+     * @param filter the types to print, null to print all types
+     * @param archive the archive to add the printed types to
+     * @return the number of printed types
+     */
+    public int print(Factory factory, Filter<CtType<?>> filter, ArchiveWriter archive) {
+        List<List<CtType<?>>> groups = groupByCompilationUnit(factory, filter);
+
+        ThreadLocal<PrettyPrinter> printers = ThreadLocal.withInitial(() -> factory.getEnvironment().createPrettyPrinter());
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        int printed = 0;
+        try {
+            List<Future<List<byte[]>>> tasks = new ArrayList<>();
+            for (List<CtType<?>> types : groups) {
+                // Like above, one thread prints all types of a unit, as they share its imports
+                Future<List<byte[]>> task = pool.submit(() -> types.stream()
+                        .map(type -> printers.get().printTypes(type).getBytes(StandardCharsets.UTF_8))
+                        .toList());
+                tasks.add(task);
+                for (int i = 0; i < types.size(); i++) {
+                    int index = i;
+                    archive.add(Passthrough.relativeOutputPath(types.get(i)), () -> task.get().get(index));
+                }
+                printed += types.size();
+            }
+            for (Future<List<byte[]>> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SpoonException("Interrupted while printing", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } finally {
+            pool.shutdownNow();
+        }
+        logger.debug("Printed " + printed + " types of " + groups.size() + " compilation units into an archive on "
+                + threads + " threads");
+        return printed;
+    }
+
+    /**
+     * Groups the top-level types that match the filter by their compilation unit, in the order of the model.
+     * getOrCreate registers missing units in a map of the factory, which must not happen concurrently,
+     * hence the units are resolved here before printing.
+     */
+    private static List<List<CtType<?>>> groupByCompilationUnit(Factory factory, Filter<CtType<?>> filter) {
+        // Elements compare by content, hence the units are grouped by identity
+        Map<CtCompilationUnit, List<CtType<?>>> units = new IdentityHashMap<>();
+        List<List<CtType<?>>> groups = new ArrayList<>();
+        for (CtType<?> type : factory.getModel().getAllTypes()) {
+            if (filter != null && !filter.matches(type)) {
+                continue;
+            }
+            CtCompilationUnit unit = factory.CompilationUnit().getOrCreate(type);
+            units.computeIfAbsent(unit, u -> {
+                List<CtType<?>> group = new ArrayList<>();
+                groups.add(group);
+                return group;
+            }).add(type);
+        }
+        return groups;
+    }
+
+    /**
+     * Spoon creates the package directories with File::mkdirs when printing, which fails if another printing thread
+     * or partition creates the same directory at the same time. Creating them beforehand avoids the race.
+     */
+    static void createPackageDirectories(CtModel model, Path outputDirectory) {
+        for (CtPackage ctPackage : model.getAllPackages()) {
+            if (ctPackage.isUnnamedPackage()) {
+                continue;
+            }
+            try {
+                Files.createDirectories(outputDirectory.resolve(ctPackage.getQualifiedName().replace('.', '/')));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static RuntimeException unwrap(ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        if (e.getCause() instanceof Error error) {
+            throw error;
+        }
+        return new SpoonException(e.getCause());
+    }
+}
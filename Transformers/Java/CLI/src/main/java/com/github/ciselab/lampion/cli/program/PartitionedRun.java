@@ -0,0 +1,346 @@
+package com.github.ciselab.lampion.cli.program;
+
+import com.github.ciselab.lampion.core.program.Engine;
+import com.github.ciselab.lampion.core.program.EngineResult;
+import com.github.ciselab.lampion.core.program.WorkerUtilisation;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spoon.Launcher;
+import spoon.reflect.CtModel;
+
+/**
+ * Processes the input in partitions, each with its own Launcher and CtModel.
+ *
+ * A partition is parsed, transformed, printed and released before the next one is parsed,
+ * so the heap only has to hold the model of a single partition instead of the whole corpus.
+ * Partitions can be built by number of files, by megabytes of source or by package (directory).
+ *
+ * The scopes perMethod, perClass, perClassEach and perMethodEach are computed per partition and add up naturally.
+ * For the global scope, the total number of transformations is split among the partitions by their share of files.
+ *
+ * Partitions can also be processed concurrently, each with its own Launcher and Engine (see the constructors).
+ * Concurrent partitions are started largest first (by bytes of source) and the utilisation of every worker is logged.
+ */
+public class PartitionedRun {
+
+    private static Logger logger = LoggerFactory.getLogger(PartitionedRun.class);
+
+    // How the files are cut into partitions
+    public enum PartitionBy {
+        files,      // "N files per partition"
+        megabytes,  // "N megabytes of source per partition"
+        packages    // "One package (directory) per partition"
+    }
+
+    private final Supplier<Engine> engines;
+    private final List<List<Path>> partitions;
+    private final int threads;
+    private ModelCache modelCache = ModelCache.disabled();
+    private ErrorReport errorReport = null;     // null if failures abort the run
+
+    /**
+     * Creates a sequential run, processing one partition after another with the same engine.
+     *
+     * @param engine the engine to run on every partition
+     * @param partitions the files of every partition, in the order they are processed
+     */
+    public PartitionedRun(Engine engine, List<List<Path>> partitions) {
+        this(() -> engine, partitions, 1);
+    }
+
+    /**
+     * Creates a run that processes up to "threads" partitions concurrently, each with its own Launcher and Engine.
+     * Spoon models are built single-threaded, but independent Launchers can build their models side by side.
+     * This suits inputs where the files do not reference each other, such as single-class datasets.
+     *
+     * @param engines provides the engine for every partition. For more than one thread,
+     *                every call has to return a new engine with its own transformers, as engines are not thread-safe.
+     * @param partitions the files of every partition
+     * @param threads the number of partitions processed at the same time
+     * @throws UnsupportedOperationException for less than one thread
+     */
+    public PartitionedRun(Supplier<Engine> engines, List<List<Path>> partitions, int threads) {
+        if (threads < 1) {
+            throw new UnsupportedOperationException("A partitioned run needs at least one thread");
+        }
+        this.engines = engines;
+        this.partitions = partitions;
+        this.threads = threads;
+    }
+
+    /**
+     * Sets the cache the partitions are loaded from and stored to, by default there is none.
+     *
+     * @param modelCache the cache to use, it is shared by all threads
+     */
+    public void setModelCache(ModelCache modelCache) {
+        this.modelCache = modelCache;
+    }
+
+    /**
+     * Isolates failures: if a partition fails, its files are retried one by one
+     * and the files that still fail are quarantined in the report, instead of aborting the run.
+     *
+     * @param errorReport the report to quarantine failing files in, null to abort on the first failure
+     */
+    public void setErrorReport(ErrorReport errorReport) {
+        this.errorReport = errorReport;
+    }
+
+    /**
+     * Cuts the files into partitions.
+     *
+     * @param root the input directory, used to determine the package of a file
+     * @param files the java files to partition, in processing order
+     * @param partitionBy how to build the partitions
+     * @param size the number of files or megabytes per partition, ignored for packages
+     * @return the partitions, none of them empty
+     * @throws UnsupportedOperationException for a size smaller than 1
+     */
+    public static List<List<Path>> partition(Path root, List<Path> files, PartitionBy partitionBy, long size) {
+        if (partitionBy != PartitionBy.packages && size < 1) {
+            throw new UnsupportedOperationException("The size of a partition has to be at least 1");
+        }
+        List<List<Path>> partitions = new ArrayList<>();
+        switch (partitionBy) {
+            case files -> {
+                for (int i = 0; i < files.size(); i += size) {
+                    partitions.add(files.subList(i, (int) Math.min(files.size(), i + size)));
+                }
+            }
+            case megabytes -> {
+                long maxBytes = size * 1024 * 1024;
+                List<Path> current = new ArrayList<>();
+                long currentBytes = 0;
+                for (Path file : files) {
+                    long bytes = sizeOf(file);
+                    if (!current.isEmpty() && currentBytes + bytes > maxBytes) {
+                        partitions.add(current);
+                        current = new ArrayList<>();
+                        currentBytes = 0;
+                    }
+                    current.add(file);
+                    currentBytes += bytes;
+                }
+                if (!current.isEmpty()) {
+                    partitions.add(current);
+                }
+            }
+            case packages -> {
+                // Java sources live in the directory of their package, which saves parsing them up front
+                Map<String, List<Path>> byDirectory = new TreeMap<>();
+                for (Path file : files) {
+                    Path parent = root.relativize(file).getParent();
+                    byDirectory.computeIfAbsent(parent == null ? "" : parent.toString(), k -> new ArrayList<>()).add(file);
+                }
+                partitions.addAll(byDirectory.values());
+            }
+        }
+        return partitions;
+    }
+
+    /**
+     * Runs an engine on every partition and prints the partition once it is transformed.
+     * With a single thread, a partition is finished before the next one is parsed.
+     * For the global scope, the number of transformations is split among the partitions,
+     * after the run the engine is set back to its original number.
+     *
+     * @return the number of processed partitions
+     */
+    public int run() {
+        Engine template = engines.get();
+        long transformations = template.getNumberOfTransformationsPerScope();
+        Engine.TransformationScope scope = template.getTransformationScope();
+        long[] shares = scope == Engine.TransformationScope.global
+                ? distribute(transformations, partitions)
+                : IntStream.range(0, partitions.size()).mapToLong(i -> transformations).toArray();
+
+        try {
+            if (threads == 1) {
+                for (int i = 0; i < partitions.size(); i++) {
+                    runPartition(i == 0 ? template : engines.get(), i, shares[i]);
+                }
+            } else {
+                // Big partitions are started first, so that none of them is left running alone at the end
+                List<Integer> largestFirst = IntStream.range(0, partitions.size()).boxed()
+                        .sorted(Comparator.comparingLong((Integer i) -> -bytesOf(partitions.get(i))).thenComparing(i -> i))
+                        .toList();
+                WorkerUtilisation utilisation = new WorkerUtilisation();
+                List<Callable<Void>> tasks = new ArrayList<>();
+                for (int index : largestFirst) {
+                    Engine engine = index == 0 ? template : engines.get();
+                    tasks.add(utilisation.track(() -> {
+                        runPartition(engine, index, shares[index]);
+                        return null;
+                    }));
+                }
+                logger.info("Processing " + partitions.size() + " partitions on " + threads + " threads");
+                ExecutorService pool = Executors.newFixedThreadPool(threads);
+                try {
+                    for (Future<Void> partition : pool.invokeAll(tasks)) {
+                        partition.get();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while processing partitions", e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException runtimeException) {
+                        throw runtimeException;
+                    }
+                    throw new IllegalStateException("A partition failed", e.getCause());
+                } finally {
+                    pool.shutdown();
+                }
+                utilisation.finish();
+                utilisation.log(logger);
+            }
+        } finally {
+            template.setNumberOfTransformationsPerScope(transformations, scope);
+        }
+        return partitions.size();
+    }
+
+    private void runPartition(Engine engine, int index, long transformations) {
+        List<Path> partition = partitions.get(index);
+        logger.info("Processing partition " + (index + 1) + "/" + partitions.size()
+                + " with " + partition.size() + " files and " + transformations + " transformations per "
+                + engine.getTransformationScope());
+        if (errorReport == null) {
+            process(engine, partition, transformations);
+            return;
+        }
+
+        try {
+            process(engine, partition, transformations);
+        } catch (UnitFailure failure) {
+            if (partition.size() == 1) {
+                errorReport.quarantine(partition, failure.stage, failure.getCause());
+                return;
+            }
+            // Find the culprits by retrying every file on its own, the others are processed as usual
+            logger.warn("Partition " + (index + 1) + " failed to " + failure.stage
+                    + " - retrying its " + partition.size() + " files one by one");
+            List<List<Path>> singles = partition.stream().map(List::of).toList();
+            long[] shares = engine.getTransformationScope() == Engine.TransformationScope.global
+                    ? distribute(transformations, singles)
+                    : singles.stream().mapToLong(single -> transformations).toArray();
+            for (int i = 0; i < singles.size(); i++) {
+                try {
+                    process(engine, singles.get(i), shares[i]);
+                } catch (UnitFailure singleFailure) {
+                    errorReport.quarantine(singles.get(i), singleFailure.stage, singleFailure.getCause());
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses, transforms and prints the files as one model.
+     * With an error report, failures are thrown as UnitFailure, naming the stage that failed.
+     */
+    private void process(Engine engine, List<Path> files, long transformations) {
+        String stage = "parse";
+        try {
+            Launcher launcher = modelCache.buildModel(files);
+            CtModel codeRoot = launcher.getModel();
+
+            stage = "transform";
+            engine.setNumberOfTransformationsPerScope(transformations, engine.getTransformationScope());
+            EngineResult result = engine.run(codeRoot);
+
+            stage = "print";
+            if (threads > 1 && result.getWriteJavaOutput()) {
+                ParallelPrinter.createPackageDirectories(codeRoot, Path.of(result.getOutputDirectory()));
+            }
+            App.WriteAST(result, launcher);
+            // Launcher, model and result are released here, before the next partition is parsed
+        } catch (RuntimeException | StackOverflowError | AssertionError e) {
+            if (errorReport == null) {
+                throw e;
+            }
+            throw new UnitFailure(stage, e);
+        }
+    }
+
+    /**
+     * Splits the total among the partitions proportionally to their number of files,
+     * using the largest remainder so that the shares add up to exactly the total.
+     * Ties are given to the earlier partitions, which keeps the split deterministic.
+     *
+     * @param total the number of transformations to split
+     * @param partitions the partitions to split them among
+     * @return the number of transformations for every partition, in order of the partitions
+     */
+    public static long[] distribute(long total, List<List<Path>> partitions) {
+        return distribute(total, partitions.stream().mapToLong(List::size).toArray());
+    }
+
+    /**
+     * Splits the total proportionally to the sizes, like the partitions above.
+     *
+     * @param total the number of transformations to split
+     * @param sizes the number of units (e.g. files or records) of every partition
+     * @return the number of transformations for every partition, in order of the sizes
+     */
+    public static long[] distribute(long total, long[] sizes) {
+        long units = LongStream.of(sizes).sum();
+        long[] shares = new long[sizes.length];
+        if (units == 0) {
+            return shares;
+        }
+        long assigned = 0;
+        for (int i = 0; i < shares.length; i++) {
+            shares[i] = total * sizes[i] / units;
+            assigned += shares[i];
+        }
+        List<Integer> byRemainder = IntStream.range(0, shares.length).boxed()
+                .sorted(Comparator.comparingLong((Integer i) -> -((total * sizes[i]) % units))
+                        .thenComparing(i -> i))
+                .toList();
+        for (int i = 0; assigned < total; i++, assigned++) {
+            shares[byRemainder.get(i)]++;
+        }
+        return shares;
+    }
+
+    private static long bytesOf(List<Path> partition) {
+        return partition.stream().mapToLong(PartitionedRun::sizeOf).sum();
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A failure of a unit, carrying the stage it failed in.
+     */
+    private static class UnitFailure extends RuntimeException {
+        final String stage;
+
+        UnitFailure(String stage, Throwable cause) {
+            super(cause);
+            this.stage = stage;
+        }
+    }
+}
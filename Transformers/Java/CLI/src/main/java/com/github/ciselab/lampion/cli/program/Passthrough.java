@@ -0,0 +1,83 @@
+package com.github.ciselab.lampion.cli.program;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spoon.reflect.declaration.CtType;
+
+/**
+ * Writes source files that no transformation touched verbatim to the output, instead of printing them with Spoon.
+ *
+ * Printing an untouched file costs CPU and reformats it, while the content is already known.
+ * The files are either copied with FileChannel::transferTo, which lets the operating system copy the bytes
+ * without passing them through the heap, or hard linked, which does not copy at all.
+ * Hard links only work within one filesystem and share the content with the input -
+ * altering a linked output file alters the input file as well. If a link cannot be created, the file is copied.
+ * Hence the outputs are unlinked before printing into them (see "unlink"), e.g. in a later run into the same directory.
+ */
+public abstract class Passthrough {
+
+    private static Logger logger = LoggerFactory.getLogger(Passthrough.class);
+
+    /**
+     * Copies or links the source to the target, replacing an existing target.
+     *
+     * @param source the file to pass through
+     * @param target where to put it in the output
+     * @param link whether to try a hard link before copying
+     * @throws IOException if the file can neither be linked nor copied
+     */
+    public static void transfer(Path source, Path target, boolean link) throws IOException {
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        Files.deleteIfExists(target);
+        if (link) {
+            try {
+                Files.createLink(target, source);
+                return;
+            } catch (FileSystemException | UnsupportedOperationException e) {
+                // e.g. the output is on another filesystem
+                logger.debug("Could not link " + source + " - copying it instead", e);
+            }
+        }
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+        }
+    }
+
+    /**
+     * Removes the outputs of the types, so that printing creates new files instead of writing into the existing ones.
+     * An output that was passed through as a hard link is the input file itself, printing into it would alter the input.
+     *
+     * @param outputDirectory the directory the types are printed to
+     * @param types the top-level types that are going to be printed
+     * @throws IOException if an output cannot be removed
+     */
+    public static void unlink(Path outputDirectory, Iterable<CtType<?>> types) throws IOException {
+        for (CtType<?> type : types) {
+            Files.deleteIfExists(outputDirectory.resolve(relativeOutputPath(type)));
+        }
+    }
+
+    /**
+     * @param type a top-level type
+     * @return the path Spoon prints the type to, relative to the output directory
+     */
+    public static String relativeOutputPath(CtType<?> type) {
+        String packagePath = type.getPackage() == null || type.getPackage().isUnnamedPackage()
+                ? ""
+                : type.getPackage().getQualifiedName().replace('.', '/') + "/";
+        return packagePath + type.getSimpleName() + ".java";
+    }
+}
@@ -0,0 +1,212 @@
+package com.github.ciselab.lampion.cli.program;
+
+import com.github.ciselab.lampion.core.program.Engine;
+import com.github.ciselab.lampion.core.program.EngineResult;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spoon.Launcher;
+import spoon.reflect.CtModel;
+
+/**
+ * Streams the input files through the stages parse, transform and print.
+ *
+ * Every file is parsed into a model of its own, transformed by the engine and printed, after which it is released.
+ * The stages run on their own threads and are connected by bounded queues, so reading and parsing the next files
+ * overlaps with transforming and printing the current ones, while at most "queueDepth" models wait per stage.
+ * The memory needed is thereby bounded by the queue depth instead of the size of the corpus.
+ *
+ * As every file is transformed on its own, the transformation scopes apply per file.
+ * For perClassEach and perMethodEach (together with per-element seeds) this gives the same output as a run over
+ * the whole corpus, for the global scopes the number of transformations is distributed per file instead.
+ */
+public class Pipeline {
+
+    private static Logger logger = LoggerFactory.getLogger(Pipeline.class);
+
+    private final Engine engine;
+    private final int queueDepth;
+    private ModelCache modelCache = ModelCache.disabled();
+    private ErrorReport errorReport = null;     // null if failures stop the pipeline
+
+    // Marks the end of the stream for the next stage
+    private static final Unit END = new Unit(null);
+
+    /**
+     * @param engine the engine to transform every file with. It is only used by the transform stage.
+     * @param queueDepth the number of models that may wait between two stages
+     * @throws UnsupportedOperationException for a queue depth smaller than 1
+     */
+    public Pipeline(Engine engine, int queueDepth) {
+        if (queueDepth < 1) {
+            throw new UnsupportedOperationException("The queue depth of the pipeline has to be at least 1");
+        }
+        this.engine = engine;
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * Sets the cache the parse stage loads models from and stores them to, by default there is none.
+     *
+     * @param modelCache the cache to use
+     */
+    public void setModelCache(ModelCache modelCache) {
+        this.modelCache = modelCache;
+    }
+
+    /**
+     * Isolates failures: a file that fails in any stage is quarantined in the report and the pipeline continues.
+     *
+     * @param errorReport the report to quarantine failing files in, null to stop on the first failure
+     */
+    public void setErrorReport(ErrorReport errorReport) {
+        this.errorReport = errorReport;
+    }
+
+    /**
+     * Runs all files through the pipeline and returns once the last one is printed.
+     * If any stage fails (and failures are not isolated), the other stages are stopped and the failure is rethrown.
+     *
+     * @param files the java files to process
+     * @return the number of printed files
+     */
+    public long run(List<Path> files) {
+        Instant start = Instant.now();
+        BlockingQueue<Unit> parsed = new ArrayBlockingQueue<>(queueDepth);
+        BlockingQueue<Unit> transformed = new ArrayBlockingQueue<>(queueDepth);
+
+        ExecutorService stages = Executors.newFixedThreadPool(3);
+        CompletionService<Long> completion = new ExecutorCompletionService<>(stages);
+        completion.submit(stage(() -> parse(files, parsed)));
+        completion.submit(stage(() -> transform(parsed, transformed)));
+        Future<Long> printing = completion.submit(stage(() -> print(transformed)));
+
+        long printed;
+        try {
+            for (int i = 0; i < 3; i++) {
+                completion.take().get();
+            }
+            printed = printing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running the pipeline", e);
+        } catch (ExecutionException e) {
+            logger.error("A stage of the pipeline failed - stopping all stages", e.getCause());
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("A stage of the pipeline failed", e.getCause());
+        } finally {
+            stages.shutdownNow();
+        }
+
+        logger.info("Pipeline processed " + printed + " files in "
+                + Duration.between(start, Instant.now()).getSeconds() + " seconds");
+        return printed;
+    }
+
+    private long parse(List<Path> files, BlockingQueue<Unit> out) throws InterruptedException {
+        long count = 0;
+        for (Path file : files) {
+            Unit unit = new Unit(file);
+            try {
+                unit.launcher = modelCache.buildModel(List.of(file));
+                unit.model = unit.launcher.getModel();
+            } catch (RuntimeException | StackOverflowError | AssertionError e) {
+                quarantineOrThrow(unit, "parse", e);
+                continue;
+            }
+            out.put(unit);
+            count++;
+        }
+        out.put(END);
+        return count;
+    }
+
+    private long transform(BlockingQueue<Unit> in, BlockingQueue<Unit> out) throws InterruptedException {
+        long count = 0;
+        for (Unit unit = in.take(); unit != END; unit = in.take()) {
+            try {
+                unit.result = engine.run(unit.model);
+            } catch (RuntimeException | StackOverflowError | AssertionError e) {
+                quarantineOrThrow(unit, "transform", e);
+                continue;
+            }
+            out.put(unit);
+            count++;
+        }
+        out.put(END);
+        return count;
+    }
+
+    private long print(BlockingQueue<Unit> in) throws InterruptedException {
+        long count = 0;
+        for (Unit unit = in.take(); unit != END; unit = in.take()) {
+            try {
+                if (unit.result.getWriteJavaOutput()) {
+                    App.printJavaFiles(unit.result, unit.launcher);
+                }
+            } catch (RuntimeException | StackOverflowError | AssertionError e) {
+                quarantineOrThrow(unit, "print", e);
+                continue;
+            }
+            logger.debug("Finished " + unit.file);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Quarantines the file of a failed unit if failures are isolated, otherwise the failure stops the pipeline.
+     */
+    private void quarantineOrThrow(Unit unit, String stage, Throwable error) {
+        if (errorReport == null) {
+            if (error instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw (Error) error;
+        }
+        errorReport.quarantine(List.of(unit.file), stage, error);
+    }
+
+    /**
+     * Wraps a stage, so that a failing stage logs which one failed.
+     */
+    private static Callable<Long> stage(Callable<Long> body) {
+        return () -> {
+            try {
+                return body.call();
+            } catch (InterruptedException e) {
+                // Another stage failed and the pipeline is shutting down
+                Thread.currentThread().interrupt();
+                return 0L;
+            }
+        };
+    }
+
+    /**
+     * A single file travelling through the pipeline, holding everything the next stage needs.
+     */
+    private static class Unit {
+        final Path file;
+        Launcher launcher;
+        CtModel model;
+        EngineResult result;
+
+        Unit(Path file) {
+            this.file = file;
+        }
+    }
+}
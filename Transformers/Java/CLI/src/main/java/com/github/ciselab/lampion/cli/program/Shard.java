@@ -0,0 +1,229 @@
+package com.github.ciselab.lampion.cli.program;
+
+import com.github.ciselab.lampion.core.support.Hashing;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A static shard of the input files, to split big runs across several machines.
+ *
+ * A shard is given as "i/N" (1-based), and selects every java file whose path relative to the input directory
+ * hashes to i. The hash only depends on the path, so every file lands in exactly one shard,
+ * no matter on which machine the shard runs.
+ *
+ * Every shard writes a small manifest next to its output, listing the configuration and the written files.
+ * "merge" combines the outputs of all N shards into a single directory and manifest.
+ * Together with per-element seeds and a per-class scope, the merged output is byte-identical to a single-node run.
+ */
+public class Shard {
+
+    private static Logger logger = LoggerFactory.getLogger(Shard.class);
+
+    public static final String MANIFEST_FILE = "lampion-shard.manifest";
+    public static final String MERGED_MANIFEST_FILE = "lampion-merged.manifest";
+
+    // These properties are allowed to differ between shards of the same run
+    private static final Set<String> nonSharedProperties = Set.of("inputDirectory", "outputDirectory", "shard");
+
+    public final int index;   // 1-based index of this shard
+    public final int total;   // Total number of shards
+
+    /**
+     * @param index the (1-based) index of the shard
+     * @param total the total number of shards
+     * @throws UnsupportedOperationException if the index is not within 1..total
+     */
+    public Shard(int index, int total) {
+        if (total < 1 || index < 1 || index > total) {
+            throw new UnsupportedOperationException("Shard has to be i/N with 1 <= i <= N, but was " + index + "/" + total);
+        }
+        this.index = index;
+        this.total = total;
+    }
+
+    /**
+     * Parses a shard in the form "i/N", e.g. "2/8".
+     *
+     * @param value the value of the shard property
+     * @return the parsed shard
+     * @throws UnsupportedOperationException for malformed values
+     */
+    public static Shard parse(String value) {
+        String[] parts = value.trim().split("/");
+        if (parts.length != 2) {
+            throw new UnsupportedOperationException("Shard has to be given as i/N, but was " + value);
+        }
+        try {
+            return new Shard(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+        } catch (NumberFormatException e) {
+            throw new UnsupportedOperationException("Shard has to be given as i/N, but was " + value, e);
+        }
+    }
+
+    /**
+     * @param relativePath the path of a file relative to the input directory
+     * @return whether the file belongs to this shard
+     */
+    public boolean selects(String relativePath) {
+        CRC32 crc = new CRC32();
+        crc.update(normalize(relativePath).getBytes(StandardCharsets.UTF_8));
+        return crc.getValue() % total == index - 1;
+    }
+
+    /**
+     * Walks the input directory and returns all java files of this shard, sorted by path.
+     *
+     * @param inputDirectory the root of all input files
+     * @return the java files of this shard
+     * @throws IOException if the directory cannot be walked
+     */
+    public List<Path> selectInputFiles(Path inputDirectory) throws IOException {
+        try (Stream<Path> files = Files.walk(inputDirectory)) {
+            return files
+                    .filter(Files::isRegularFile)
+                    .filter(f -> f.toString().endsWith(".java"))
+                    .filter(f -> selects(inputDirectory.relativize(f).toString()))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Writes the manifest of this shard into the output directory.
+     * It holds the shard, a hash of the shared configuration and a checksum for every written java file.
+     *
+     * @param outputDirectory the directory the shard has been written to
+     * @param configuration the configuration the shard ran with
+     * @throws IOException if the output cannot be read or the manifest not written
+     */
+    public void writeManifest(Path outputDirectory, Properties configuration) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("shard=" + this);
+        lines.add("config=" + configurationHash(configuration));
+        for (var file : checksums(outputDirectory).entrySet()) {
+            lines.add("file=" + file.getValue() + " " + file.getKey());
+        }
+        Files.write(outputDirectory.resolve(MANIFEST_FILE), lines, StandardCharsets.UTF_8);
+        logger.info("Wrote manifest for shard " + this + " with " + (lines.size() - 2) + " files");
+    }
+
+    /**
+     * Merges the outputs of all shards of a run into one directory.
+     *
+     * Checks that exactly the shards 1..N are given, that they ran with the same configuration,
+     * that no file was written by two shards and that all files match the checksums of their manifest.
+     * Afterwards, the merged directory contains all files and a manifest over all of them.
+     *
+     * @param mergedDirectory the directory to merge into
+     * @param shardDirectories the output directories of the shards, each containing a manifest
+     * @throws IOException if files cannot be read or written
+     * @throws UnsupportedOperationException if the shards do not form a complete, consistent run
+     */
+    public static void merge(Path mergedDirectory, List<Path> shardDirectories) throws IOException {
+        String config = null;
+        Integer total = null;
+        Set<Integer> seenShards = new HashSet<>();
+        Map<String, String> mergedFiles = new TreeMap<>();
+
+        for (Path shardDirectory : shardDirectories) {
+            String shardValue = null;
+            for (String line : Files.readAllLines(shardDirectory.resolve(MANIFEST_FILE), StandardCharsets.UTF_8)) {
+                if (line.startsWith("shard=")) {
+                    shardValue = line.substring("shard=".length());
+                    Shard shard = parse(shardValue);
+                    if (total != null && total != shard.total) {
+                        throw new UnsupportedOperationException("Found shards of different runs: " + total + " and " + shard.total + " shards");
+                    }
+                    if (!seenShards.add(shard.index)) {
+                        throw new UnsupportedOperationException("Shard " + shard + " was given twice");
+                    }
+                    total = shard.total;
+                } else if (line.startsWith("config=")) {
+                    String shardConfig = line.substring("config=".length());
+                    if (config != null && !config.equals(shardConfig)) {
+                        throw new UnsupportedOperationException("Shard at " + shardDirectory + " ran with a different configuration");
+                    }
+                    config = shardConfig;
+                } else if (line.startsWith("file=")) {
+                    String[] entry = line.substring("file=".length()).split(" ", 2);
+                    String checksum = entry[0];
+                    String file = entry[1];
+                    if (mergedFiles.containsKey(file)) {
+                        throw new UnsupportedOperationException("File " + file + " was written by more than one shard");
+                    }
+                    Path source = shardDirectory.resolve(file);
+                    if (!checksum.equals(Hashing.sha256(Files.readAllBytes(source)))) {
+                        throw new UnsupportedOperationException("File " + source + " does not match its manifest");
+                    }
+                    Path target = mergedDirectory.resolve(file);
+                    Files.createDirectories(target.getParent());
+                    Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+                    mergedFiles.put(file, checksum);
+                }
+            }
+            if (shardValue == null) {
+                throw new UnsupportedOperationException("Manifest at " + shardDirectory + " does not name its shard");
+            }
+        }
+        if (total == null || seenShards.size() != total) {
+            throw new UnsupportedOperationException("Expected all " + total + " shards, but found " + seenShards.size());
+        }
+
+        List<String> lines = new ArrayList<>();
+        lines.add("shards=" + total);
+        lines.add("config=" + config);
+        for (var file : mergedFiles.entrySet()) {
+            lines.add("file=" + file.getValue() + " " + file.getKey());
+        }
+        Files.write(mergedDirectory.resolve(MERGED_MANIFEST_FILE), lines, StandardCharsets.UTF_8);
+        logger.info("Merged " + total + " shards with " + mergedFiles.size() + " files into " + mergedDirectory);
+    }
+
+    /**
+     * Hashes all properties that have to be equal for the shards of one run.
+     */
+    private static String configurationHash(Properties configuration) {
+        return Hashing.configurationHash(configuration, nonSharedProperties);
+    }
+
+    /**
+     * Collects the checksum of every java file below the directory, keyed by their relative path.
+     */
+    private static Map<String, String> checksums(Path directory) throws IOException {
+        Map<String, String> checksums = new TreeMap<>();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.filter(Files::isRegularFile).filter(f -> f.toString().endsWith(".java")).toList()) {
+                checksums.put(normalize(directory.relativize(file).toString()), Hashing.sha256(Files.readAllBytes(file)));
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return checksums;
+    }
+
+
+    private static String normalize(String path) {
+        return path.replace('\\', '/');
+    }
+
+    @Override
+    public String toString() {
+        return index + "/" + total;
+    }
+}
@@ -0,0 +1,168 @@
+package com.github.ciselab.lampion.cli.program;
+
+import com.github.ciselab.lampion.core.program.Engine;
+import com.github.ciselab.lampion.core.program.EngineResult;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import spoon.Launcher;
+import spoon.reflect.declaration.CtCompilationUnit;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.visitor.PrettyPrinter;
+import spoon.support.compiler.VirtualFile;
+
+/**
+ * Transforms a stream of sources, e.g. from stdin, so that Lampion can sit in the middle of a shell pipeline.
+ *
+ * The stream holds either jsonl records (like a JsonlInput) or complete java files, each followed by a NUL byte.
+ * The sources are read and transformed in batches as they arrive (see VirtualInput), only the current batch is held
+ * in memory. A stream cannot be counted in advance, so the global scope is not supported.
+ *
+ * Without an output stream, the batches are written to the output directory like for any other input.
+ * With an output stream, every batch is written to it as soon as it is transformed, in the order it was read:
+ * a jsonl record per class for jsonl (see JsonlWriter), the printed file followed by a NUL byte otherwise.
+ * Every source is written, whether it was transformed or not.
+ */
+public class StreamInput extends VirtualInput {
+
+    // The kinds of streams
+    public enum Format {
+        jsonl,      // "One CodeSearchNet record per line, as read by JsonlInput"
+        nul         // "Complete java files, each followed by a NUL byte, e.g. from find -print0 | xargs -0 cat"
+    }
+
+    private final InputStream in;
+    private final OutputStream out;     // null to write to the output directory
+    private final Format format;
+    // The class names of the records for the output directory, see JsonlInput
+    private final Set<String> seenClassNames = new HashSet<>();
+    private Set<String> batchClassNames = new HashSet<>();
+    private long sources = 0;
+
+    /**
+     * @param engine the engine to run on every batch
+     * @param in the stream to read the sources from
+     * @param out the stream to write the transformed sources to, null to write them to the output directory
+     * @param format the format of both streams
+     * @param batchSize the number of sources per launcher, 1 to write every source as soon as it is transformed
+     * @throws UnsupportedOperationException for a batch size smaller than 1
+     */
+    public StreamInput(Engine engine, InputStream in, OutputStream out, Format format, int batchSize) {
+        super(engine, batchSize);
+        this.in = in;
+        this.out = out;
+        this.format = format;
+    }
+
+    @Override
+    protected long countSources() {
+        return -1;
+    }
+
+    @Override
+    protected Sources openSources() {
+        if (format == Format.jsonl) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            return new Sources() {
+                @Override
+                public VirtualFile next() throws IOException {
+                    String line;
+                    do {
+                        line = reader.readLine();
+                    } while (line != null && line.isBlank());
+                    // Written to a stream, the names of the classes only have to be unique within their launcher
+                    return line == null
+                            ? null
+                            : JsonlInput.toJavaSource(JsonlReader.parseRecord(line), out != null ? batchClassNames : seenClassNames);
+                }
+
+                @Override
+                public void close() {
+                    // The stream belongs to the caller
+                }
+            };
+        }
+        BufferedInputStream buffered = new BufferedInputStream(in, 1 << 16);
+        return new Sources() {
+            @Override
+            public VirtualFile next() throws IOException {
+                ByteArrayOutputStream source = new ByteArrayOutputStream();
+                int b;
+                while ((b = buffered.read()) != -1) {
+                    if (b != 0) {
+                        source.write(b);
+                    } else if (source.size() > 0) {
+                        break;
+                    }
+                }
+                if (source.size() == 0) {
+                    return null;
+                }
+                sources++;
+                return new VirtualFile(source.toString(StandardCharsets.UTF_8), "stream/Source" + sources + ".java");
+            }
+
+            @Override
+            public void close() {
+                // The stream belongs to the caller
+            }
+        };
+    }
+
+    @Override
+    protected void write(EngineResult result, Launcher launcher, List<VirtualFile> batch) {
+        batchClassNames = new HashSet<>();
+        if (out == null) {
+            super.write(result, launcher, batch);
+            return;
+        }
+        // The compilation units of in-memory sources keep the name of their source as file
+        Map<String, List<CtType<?>>> typesBySource = new HashMap<>();
+        for (CtType<?> type : launcher.getModel().getAllTypes()) {
+            CtCompilationUnit unit = type.getPosition().getCompilationUnit();
+            String source = unit == null || unit.getFile() == null ? null : unit.getFile().getPath();
+            typesBySource.computeIfAbsent(source, s -> new ArrayList<>()).add(type);
+        }
+        PrettyPrinter printer = launcher.getEnvironment().createPrettyPrinter();
+        try {
+            for (VirtualFile source : batch) {
+                List<CtType<?>> types = typesBySource.getOrDefault(new File(source.getName()).getPath(), List.of());
+                if (format == Format.jsonl) {
+                    for (CtType<?> type : types) {
+                        out.write(JsonlWriter.toRecord(type, printer.printTypes(type)).getBytes(StandardCharsets.UTF_8));
+                        out.write('\n');
+                    }
+                } else if (!types.isEmpty()) {
+                    out.write(printer.printTypes(types.toArray(new CtType<?>[0])).getBytes(StandardCharsets.UTF_8));
+                    out.write(0);
+                }
+            }
+            // Types without a source, e.g. replaced by compiling transformers, are still part of the output
+            for (CtType<?> type : typesBySource.getOrDefault(null, List.of())) {
+                if (format == Format.jsonl) {
+                    out.write(JsonlWriter.toRecord(type, printer.printTypes(type)).getBytes(StandardCharsets.UTF_8));
+                    out.write('\n');
+                } else {
+                    out.write(printer.printTypes(type).getBytes(StandardCharsets.UTF_8));
+                    out.write(0);
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
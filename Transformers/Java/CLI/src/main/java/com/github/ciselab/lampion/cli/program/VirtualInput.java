@@ -0,0 +1,178 @@
+package com.github.ciselab.lampion.cli.program;
+
+import com.github.ciselab.lampion.core.program.Engine;
+import com.github.ciselab.lampion.core.program.EngineResult;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spoon.Launcher;
+import spoon.support.compiler.VirtualFile;
+
+/**
+ * Transforms sources that are read from a single file into memory, without a java file on disk for each of them.
+ *
+ * The sources are given to Spoon as VirtualFiles and processed in batches, each with its own Launcher
+ * that is released before the next batch is read, so neither the input nor the model of all sources
+ * has to fit into the heap. For the global scope, the transformations are split among the batches
+ * by their number of sources, which are counted in a first pass over the input.
+ * Inputs that can only be read once, like a stream, cannot be counted and do not support the global scope.
+ * With a shard (see "setShard"), only the sources whose name the shard selects are processed - the name is the
+ * path the source is written to, like the path of a file relative to the input directory.
+ *
+ * See JsonlInput, ArchiveInput and StreamInput.
+ */
+public abstract class VirtualInput {
+
+    private static Logger logger = LoggerFactory.getLogger(VirtualInput.class);
+
+    protected final Engine engine;
+    private final int batchSize;
+    private Shard shard = null;     // null to process all sources
+
+    /**
+     * The sources of a single pass over the input.
+     */
+    protected interface Sources extends Closeable {
+        /**
+         * @return the next source, null if there is none left
+         * @throws IOException if the input cannot be read
+         */
+        VirtualFile next() throws IOException;
+    }
+
+    /**
+     * @param engine the engine to run on every batch
+     * @param batchSize the number of sources per launcher
+     * @throws UnsupportedOperationException for a batch size smaller than 1
+     */
+    protected VirtualInput(Engine engine, int batchSize) {
+        if (batchSize < 1) {
+            throw new UnsupportedOperationException("A batch of in-memory sources has to hold at least one source");
+        }
+        this.engine = engine;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Restricts the run to the sources of the shard.
+     * The sources are read completely nevertheless, e.g. to name them like without a shard.
+     *
+     * @param shard the shard to process, null to process all sources
+     */
+    public void setShard(Shard shard) {
+        this.shard = shard;
+    }
+
+    /**
+     * @return the number of sources of the input, -1 if they cannot be counted in advance
+     * @throws IOException if the input cannot be read
+     */
+    protected abstract long countSources() throws IOException;
+
+    /**
+     * @return the sources of the input, in the same order and number as counted
+     * @throws IOException if the input cannot be read
+     */
+    protected abstract Sources openSources() throws IOException;
+
+    /**
+     * Reads, transforms and writes all sources of the input.
+     * For the global scope, the engine is set back to its original number of transformations afterwards.
+     *
+     * @return the number of processed sources
+     * @throws IOException if the input cannot be read
+     */
+    public long run() throws IOException {
+        long total = shard == null ? countSources() : countSelectedSources();
+        long transformations = engine.getNumberOfTransformationsPerScope();
+        Engine.TransformationScope scope = engine.getTransformationScope();
+        long[] shares = null;
+        if (scope == Engine.TransformationScope.global) {
+            if (total < 0) {
+                throw new UnsupportedOperationException("The global scope needs the number of all sources in advance,"
+                        + " which this input cannot provide - use a per class or per method scope");
+            }
+            int batches = (int) ((total + batchSize - 1) / batchSize);
+            long[] sizes = new long[batches];
+            for (int i = 0; i < batches; i++) {
+                sizes[i] = Math.min(batchSize, total - (long) i * batchSize);
+            }
+            shares = PartitionedRun.distribute(transformations, sizes);
+        }
+        logger.info("Reading " + (total < 0 ? "an unknown number of" : String.valueOf(total))
+                + " sources in batches of " + batchSize);
+
+        long processed = 0;
+        try (Sources sources = openSources()) {
+            for (int i = 0; ; i++) {
+                List<VirtualFile> batch = new ArrayList<>();
+                VirtualFile source;
+                while (batch.size() < batchSize && (source = nextSelected(sources)) != null) {
+                    batch.add(source);
+                }
+                if (batch.isEmpty()) {
+                    break;
+                }
+                if (shares != null) {
+                    engine.setNumberOfTransformationsPerScope(shares[i], scope);
+                }
+                logger.info("Processing batch " + (i + 1) + " with " + batch.size() + " sources");
+                process(batch);
+                processed += batch.size();
+            }
+        } finally {
+            engine.setNumberOfTransformationsPerScope(transformations, scope);
+        }
+        return processed;
+    }
+
+    private VirtualFile nextSelected(Sources sources) throws IOException {
+        VirtualFile source = sources.next();
+        while (source != null && shard != null && !shard.selects(source.getName())) {
+            source = sources.next();
+        }
+        return source;
+    }
+
+    /**
+     * Counts the sources of the shard in a pass of their own, the input has to be readable more than once.
+     */
+    private long countSelectedSources() throws IOException {
+        if (countSources() < 0) {
+            throw new UnsupportedOperationException("A shard needs an input that can be read more than once");
+        }
+        long selected = 0;
+        try (Sources sources = openSources()) {
+            while (nextSelected(sources) != null) {
+                selected++;
+            }
+        }
+        return selected;
+    }
+
+    private void process(List<VirtualFile> sources) {
+        Launcher launcher = new Launcher();
+        sources.forEach(launcher::addInputResource);
+        // There is no input directory whose other files could be copied to the output
+        launcher.getEnvironment().setCopyResources(false);
+        launcher.buildModel();
+        // With the imports set to true, on second application the import will disappear, making Lambdas uncompilable.
+        launcher.getFactory().getEnvironment().setAutoImports(false);
+        EngineResult result = engine.run(launcher.getModel());
+        write(result, launcher, sources);
+    }
+
+    /**
+     * Writes the transformed batch, by default like any other model (see App.WriteAST).
+     *
+     * @param result the result of the engine on the batch
+     * @param launcher the launcher holding the model of the batch
+     * @param sources the sources of the batch, in the order they were read
+     */
+    protected void write(EngineResult result, Launcher launcher, List<VirtualFile> sources) {
+        App.WriteAST(result, launcher);
+    }
+}
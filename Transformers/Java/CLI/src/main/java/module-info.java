@@ -4,4 +4,7 @@ open module com.github.ciselab.lampion.cli {
     requires spoon.core;
 
     requires org.slf4j;
+
+    // The transformed output can be verified with javac, see JavacVerification
+    requires java.compiler;
 }
\ No newline at end of file
@@ -1,10 +1,14 @@
 package com.github.ciselab.lapion.cli.program;
 
 import static com.github.ciselab.lampion.cli.program.App.WriteAST;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.github.ciselab.lampion.cli.program.App;
+import com.github.ciselab.lampion.cli.program.ModelCache;
 import com.github.ciselab.lampion.core.program.Engine;
 import com.github.ciselab.lampion.core.program.EngineResult;
 import com.github.ciselab.lampion.core.transformations.TransformerRegistry;
@@ -13,10 +17,13 @@ import com.github.ciselab.lampion.core.transformations.transformers.RandomInline
 import com.github.ciselab.lampion.core.transformations.transformers.RandomParameterNameTransformer;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
@@ -25,6 +32,7 @@ import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import spoon.Launcher;
 import spoon.reflect.CtModel;
+import spoon.reflect.declaration.CtType;
 
 public class AppTest {
 
@@ -230,4 +238,263 @@ public class AppTest {
         }
     }
 
+
+    @Tag("File")
+    @Test
+    void testWriteAST_skipUntouchedFiles_shouldOnlyWriteModifiedTypes() throws IOException {
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfTrueTransformer());
+        String output = outputTestFolder + "skip";
+        Engine engine = new Engine("./src/test/resources/javafiles/javafiles_perMethodEach",output,registry);
+        engine.setNumberOfTransformationsPerScope(1, Engine.TransformationScope.global);
+
+        Launcher launcher = new spoon.Launcher();
+        launcher.addInputResource(engine.getCodeDirectory());
+        CtModel codeRoot = launcher.buildModel();
+        launcher.getFactory().getEnvironment().setAutoImports(false);
+        EngineResult result = engine.run(codeRoot);
+        try {
+            App.untouchedFiles = App.UntouchedFiles.skip;
+            WriteAST(result, launcher);
+        } finally {
+            App.untouchedFiles = App.UntouchedFiles.print;
+        }
+
+        assertEquals(1, result.getModifiedTypes().size());
+        try (var written = Files.walk(Path.of(output))) {
+            assertEquals(1, written.filter(f -> f.toString().endsWith(".java")).count());
+        }
+    }
+
+    @Tag("File")
+    @Test
+    void testWriteAST_copyUntouchedFiles_shouldWriteThemVerbatim() throws IOException {
+        assertUntouchedFilesPassedThrough(App.UntouchedFiles.copy);
+    }
+
+    @Tag("File")
+    @Test
+    void testWriteAST_linkUntouchedFiles_shouldWriteThemVerbatim() throws IOException {
+        assertUntouchedFilesPassedThrough(App.UntouchedFiles.link);
+    }
+
+    @Tag("File")
+    @Test
+    void testWriteAST_rerunIntoLinkedOutput_shouldNotAlterInput() throws IOException {
+        // A copy of the input, as a failing test would alter the linked files
+        Path input = Path.of(outputTestFolder, "link_input");
+        Path output = Path.of(outputTestFolder, "link_rerun");
+        Files.createDirectories(input);
+        try (var files = Files.list(Path.of("./src/test/resources/javafiles/javafiles_perMethodEach"))) {
+            for (Path file : files.toList()) {
+                Files.copy(file, input.resolve(file.getFileName()));
+            }
+        }
+        List<String> originals = new ArrayList<>();
+        try (var files = Files.list(input)) {
+            for (Path file : files.sorted().toList()) {
+                originals.add(Files.readString(file));
+            }
+        }
+
+        // The first run links all files, the second run prints the modified type into the same directory
+        for (long transformations : new long[]{0, 1}) {
+            TransformerRegistry registry = new TransformerRegistry("Test");
+            registry.registerTransformer(new IfTrueTransformer());
+            Engine engine = new Engine(input.toString(), output.toString(), registry);
+            engine.setNumberOfTransformationsPerScope(transformations, Engine.TransformationScope.global);
+            Launcher launcher = new spoon.Launcher();
+            launcher.addInputResource(engine.getCodeDirectory());
+            CtModel codeRoot = launcher.buildModel();
+            launcher.getFactory().getEnvironment().setAutoImports(false);
+            EngineResult result = engine.run(codeRoot);
+            try {
+                App.untouchedFiles = transformations == 0 ? App.UntouchedFiles.link : App.UntouchedFiles.print;
+                WriteAST(result, launcher);
+            } finally {
+                App.untouchedFiles = App.UntouchedFiles.print;
+            }
+        }
+
+        List<String> afterwards = new ArrayList<>();
+        try (var files = Files.list(input)) {
+            for (Path file : files.sorted().toList()) {
+                afterwards.add(Files.readString(file));
+            }
+        }
+        assertEquals(originals, afterwards);
+        try (var written = Files.walk(output)) {
+            assertTrue(written.filter(f -> f.toString().endsWith(".java")).anyMatch(f -> {
+                try {
+                    return Files.readString(f).contains("if (true)");
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+    }
+
+    private void assertUntouchedFilesPassedThrough(App.UntouchedFiles mode) throws IOException {
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfTrueTransformer());
+        String output = outputTestFolder + mode;
+        Engine engine = new Engine("./src/test/resources/javafiles/javafiles_perMethodEach",output,registry);
+        engine.setNumberOfTransformationsPerScope(1, Engine.TransformationScope.global);
+
+        Launcher launcher = new spoon.Launcher();
+        launcher.addInputResource(engine.getCodeDirectory());
+        CtModel codeRoot = launcher.buildModel();
+        launcher.getFactory().getEnvironment().setAutoImports(false);
+        EngineResult result = engine.run(codeRoot);
+        try {
+            App.untouchedFiles = mode;
+            WriteAST(result, launcher);
+        } finally {
+            App.untouchedFiles = App.UntouchedFiles.print;
+        }
+
+        assertEquals(1, result.getModifiedTypes().size());
+        for (CtType<?> type : codeRoot.getAllTypes()) {
+            Path written = Path.of(output, "lampion/test/examples", type.getSimpleName() + ".java");
+            assertTrue(Files.exists(written));
+            String original = Files.readString(type.getPosition().getFile().toPath());
+            if (result.getModifiedTypes().contains(type)) {
+                assertNotEquals(original, Files.readString(written));
+            } else {
+                assertEquals(original, Files.readString(written));
+            }
+        }
+    }
+
+    @Tag("File")
+    @Test
+    void testWriteAST_sniperPrinting_shouldKeepUnchangedCode() throws IOException {
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfTrueTransformer());
+        String output = outputTestFolder + "sniper";
+        Engine engine = new Engine("./src/test/resources/javafiles/javafiles_perMethodEach",output,registry);
+        engine.setNumberOfTransformationsPerScope(1, Engine.TransformationScope.global);
+
+        EngineResult result;
+        CtModel codeRoot;
+        try {
+            App.sniperPrinting = true;
+            List<Path> files;
+            try (var listed = Files.list(Path.of(engine.getCodeDirectory()))) {
+                files = listed.sorted().toList();
+            }
+            Launcher launcher = ModelCache.disabled().buildModel(files);
+            codeRoot = launcher.getModel();
+            result = engine.run(codeRoot);
+            WriteAST(result, launcher);
+        } finally {
+            App.sniperPrinting = false;
+        }
+
+        assertEquals(1, result.getModifiedTypes().size());
+        for (CtType<?> type : codeRoot.getAllTypes()) {
+            String written = Files.readString(Path.of(output, "lampion/test/examples", type.getSimpleName() + ".java"));
+            String original = Files.readString(type.getPosition().getFile().toPath());
+            if (result.getModifiedTypes().contains(type)) {
+                assertTrue(written.contains("if (true)"));
+                // The lines before the first method keep their original formatting
+                String header = original.substring(0, original.indexOf('{') + 1);
+                assertTrue(written.startsWith(header));
+            } else {
+                assertEquals(original, written);
+            }
+        }
+    }
+
+    @Tag("File")
+    @Test
+    void testMain_isolateFailuresWithVariants_shouldThrowException() throws IOException {
+        Path config = Path.of(outputTestFolder, "isolating_variants.properties");
+        Files.writeString(config, "isolateFailures=true\nvariants=small\nvariant.small.transformations=1\n");
+
+        try {
+            assertThrows(UnsupportedOperationException.class,
+                    () -> App.main(new String[]{config.toString(), pathToTestFileFolder, outputTestFolder}));
+        } finally {
+            App.configuration.remove("isolateFailures");
+            App.configuration.remove("variants");
+            App.configuration.remove("variant.small.transformations");
+        }
+    }
+
+    @Tag("File")
+    @Test
+    void testMain_isolateFailuresWithJsonlOutput_shouldThrowException() throws IOException {
+        Path config = Path.of(outputTestFolder, "isolating_jsonl.properties");
+        Files.writeString(config, "isolateFailures=true\noutputFormat=jsonl\n");
+
+        try {
+            assertThrows(UnsupportedOperationException.class,
+                    () -> App.main(new String[]{config.toString(), pathToTestFileFolder, outputTestFolder}));
+        } finally {
+            App.outputFormat = App.OutputFormat.java;
+            App.configuration.remove("isolateFailures");
+            App.configuration.remove("outputFormat");
+        }
+    }
+
+    @Tag("File")
+    @Test
+    void testMain_sniperPrintingWithParallelism_shouldThrowException() throws IOException {
+        Path config = Path.of(outputTestFolder, "sniper_parallel.properties");
+        Files.writeString(config, "sniperPrinting=true\nparallelism=2\n");
+
+        try {
+            assertThrows(UnsupportedOperationException.class,
+                    () -> App.main(new String[]{config.toString(), pathToTestFileFolder, outputTestFolder}));
+        } finally {
+            App.sniperPrinting = false;
+            App.configuration.remove("sniperPrinting");
+            App.configuration.remove("parallelism");
+        }
+    }
+
+    @Tag("File")
+    @Test
+    void testMain_shardWithJsonlOutput_shouldThrowException() throws IOException {
+        Path config = Path.of(outputTestFolder, "sharded_jsonl.properties");
+        Files.writeString(config, "shard=1/2\noutputFormat=jsonl\n");
+
+        try {
+            assertThrows(UnsupportedOperationException.class,
+                    () -> App.main(new String[]{config.toString(), pathToTestFileFolder, outputTestFolder}));
+        } finally {
+            App.outputFormat = App.OutputFormat.java;
+            App.configuration.remove("shard");
+            App.configuration.remove("outputFormat");
+        }
+    }
+
+    @Tag("File")
+    @Test
+    void testMain_secondRunWithoutOutputSettings_shouldUseDefaults() throws IOException {
+        Path config = Path.of(outputTestFolder, "isolating_variants.properties");
+        Files.writeString(config, "isolateFailures=true\nvariants=small\nvariant.small.transformations=1\n");
+        // As left behind by a previous run
+        App.sniperPrinting = true;
+        App.outputFormat = App.OutputFormat.jsonl;
+        App.printThreads = 4;
+
+        try {
+            // Fails after reading the output settings, before reading any sources
+            assertThrows(UnsupportedOperationException.class,
+                    () -> App.main(new String[]{config.toString(), pathToTestFileFolder, outputTestFolder}));
+
+            assertFalse(App.sniperPrinting);
+            assertEquals(App.OutputFormat.java, App.outputFormat);
+            assertEquals(1, App.printThreads);
+        } finally {
+            App.sniperPrinting = false;
+            App.outputFormat = App.OutputFormat.java;
+            App.printThreads = 1;
+            App.configuration.remove("isolateFailures");
+            App.configuration.remove("variants");
+            App.configuration.remove("variant.small.transformations");
+        }
+    }
 }
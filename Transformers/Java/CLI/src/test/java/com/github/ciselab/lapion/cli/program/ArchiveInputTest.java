@@ -0,0 +1,122 @@
+package com.github.ciselab.lapion.cli.program;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.ciselab.lampion.cli.program.ArchiveInput;
+import com.github.ciselab.lampion.cli.program.ArchiveWriter;
+import com.github.ciselab.lampion.core.program.Engine;
+import com.github.ciselab.lampion.core.transformations.TransformerRegistry;
+import com.github.ciselab.lampion.core.transformations.transformers.IfTrueTransformer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+public class ArchiveInputTest {
+
+    private static Path pathToTestFileFolder = Path.of("./src/test/resources/javafiles/javafiles_with_comments");
+    private static String outputTestFolder = "./src/test/resources/archive_input_output/";
+    // Longer than the 100 bytes of a tar name, to be read from a pax header
+    private static String longDirectory = "project/" + "a_rather_long_directory_name/".repeat(4);
+
+    @AfterEach
+    public void folder_cleanup() throws IOException {
+        if(Files.exists(Paths.get(outputTestFolder))) {
+            Files.walk(Paths.get(outputTestFolder))
+                    .sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    @Tag("File")
+    @Test
+    void testRun_zip_shouldPrintAllJavaFiles() throws IOException {
+        Path zip = archive("input.zip", ArchiveWriter.Format.zip);
+
+        long sources = new ArchiveInput(makeEngine(), zip, "**.java", 2).run();
+
+        assertEquals(3, sources);
+        assertEquals(3, printedFiles().size());
+    }
+
+    @Tag("File")
+    @Test
+    void testRun_tarGzWithGlob_shouldOnlyPrintMatchingFiles() throws IOException {
+        Path tgz = archive("input.tar.gz", ArchiveWriter.Format.tgz);
+
+        long sources = new ArchiveInput(makeEngine(), tgz, longDirectory + "Block*.java", 2).run();
+
+        assertEquals(1, sources);
+        assertEquals(List.of("BlocksExample.java"), printedFiles());
+    }
+
+    @Tag("File")
+    @Test
+    void testRun_noJavaFiles_shouldPrintNothing() throws IOException {
+        Path tgz = archive("input.tgz", ArchiveWriter.Format.tgz);
+
+        assertEquals(0, new ArchiveInput(makeEngine(), tgz, "**.txt", 2).run());
+    }
+
+    @Test
+    void testConstructor_noArchive_shouldThrowException() {
+        assertThrows(UnsupportedOperationException.class,
+                () -> new ArchiveInput(makeEngine(), Path.of("input.jar"), "**.java", 1));
+    }
+
+    @Test
+    void testFormatOf_shouldRecognizeExtensions() {
+        assertEquals(Optional.of(ArchiveWriter.Format.zip), ArchiveInput.formatOf(Path.of("a/b.ZIP")));
+        assertEquals(Optional.of(ArchiveWriter.Format.tgz), ArchiveInput.formatOf(Path.of("b.tar.gz")));
+        assertEquals(Optional.of(ArchiveWriter.Format.tgz), ArchiveInput.formatOf(Path.of("b.tgz")));
+        assertEquals(Optional.empty(), ArchiveInput.formatOf(Path.of("b.jsonl")));
+    }
+
+    /**
+     * Packs the test files below a long directory, next to a file that is no java file.
+     */
+    private static Path archive(String name, ArchiveWriter.Format format) throws IOException {
+        Path archive = Path.of(outputTestFolder, "input", name);
+        try (ArchiveWriter writer = ArchiveWriter.forFile(archive, format, 6);
+             var files = Files.list(pathToTestFileFolder)) {
+            for (Path file : files.sorted().toList()) {
+                writer.add(longDirectory + file.getFileName(), () -> Files.readAllBytes(file));
+            }
+            writer.add(longDirectory + "README.txt", () -> "no java".getBytes(StandardCharsets.UTF_8));
+        }
+        return archive;
+    }
+
+    private static List<String> printedFiles() throws IOException {
+        Path output = Path.of(outputTestFolder, "output");
+        assertTrue(Files.isDirectory(output));
+        try (var files = Files.walk(output)) {
+            return files.filter(f -> f.toString().endsWith(".java"))
+                    .map(f -> f.getFileName().toString())
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static Engine makeEngine() {
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        IfTrueTransformer ifTrueTransformer = new IfTrueTransformer();
+        // Like for files on disk, compiling the snippets of these examples drops their classes from the model
+        ifTrueTransformer.setTryingToCompile(false);
+        registry.registerTransformer(ifTrueTransformer);
+        Engine engine = new Engine(outputTestFolder + "input", outputTestFolder + "output", registry);
+        engine.setNumberOfTransformationsPerScope(2, Engine.TransformationScope.global);
+        return engine;
+    }
+}
@@ -0,0 +1,242 @@
+package com.github.ciselab.lapion.cli.program;
+
+import static com.github.ciselab.lampion.cli.program.App.WriteAST;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.github.ciselab.lampion.cli.program.App;
+import com.github.ciselab.lampion.cli.program.ArchiveWriter;
+import com.github.ciselab.lampion.cli.program.ParallelPrinter;
+import com.github.ciselab.lampion.core.program.Engine;
+import com.github.ciselab.lampion.core.program.EngineResult;
+import com.github.ciselab.lampion.core.transformations.TransformerRegistry;
+import com.github.ciselab.lampion.core.transformations.transformers.IfTrueTransformer;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import spoon.Launcher;
+
+public class ArchiveWriterTest {
+
+    private static String pathToTestFileFolder = "./src/test/resources/javafiles/javafiles_with_comments";
+    private static String outputTestFolder = "./src/test/resources/archive_output/";
+
+    @AfterEach
+    public void folder_cleanup() throws IOException {
+        ArchiveWriter.closeAll();
+        if(Files.exists(Paths.get(outputTestFolder))) {
+            Files.walk(Paths.get(outputTestFolder))
+                    .sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    @Tag("File")
+    @Test
+    void testPrint_intoZip_shouldBeIdenticalToPrintedFiles() throws IOException {
+        Launcher sequential = transformedModel(outputTestFolder + "sequential");
+        sequential.prettyprint();
+
+        Launcher archived = transformedModel(outputTestFolder + "archived");
+        Path zip = Path.of(outputTestFolder, "output.zip");
+        ArchiveWriter archive = ArchiveWriter.forFile(zip, ArchiveWriter.Format.zip, 9);
+        int printed = new ParallelPrinter(2).print(archived.getFactory(), null, archive);
+        archive.close();
+
+        Map<String, byte[]> entries = readZip(zip);
+        assertEquals(printed, entries.size());
+        Path directory = Path.of(outputTestFolder, "sequential");
+        for (var entry : entries.entrySet()) {
+            assertArrayEquals(Files.readAllBytes(directory.resolve(entry.getKey())), entry.getValue());
+        }
+    }
+
+    @Tag("File")
+    @Test
+    void testPrint_severalTypesInOneUnit_shouldBeIdenticalToPrintedFiles() throws IOException {
+        Path source = Path.of(outputTestFolder, "input", "Units.java");
+        Files.createDirectories(source.getParent());
+        Files.writeString(source, "package units;\nimport java.util.List;\n"
+                + "public class Units { List<Helper> helpers; }\nclass Helper { java.util.Map<String, Units> units; }\n");
+        Launcher sequential = new Launcher();
+        sequential.addInputResource(source.toString());
+        sequential.buildModel();
+        sequential.setSourceOutputDirectory(outputTestFolder + "sequential");
+        sequential.prettyprint();
+
+        Launcher archived = new Launcher();
+        archived.addInputResource(source.toString());
+        archived.buildModel();
+        Path zip = Path.of(outputTestFolder, "output.zip");
+        ArchiveWriter archive = ArchiveWriter.forFile(zip, ArchiveWriter.Format.zip, 6);
+        int printed = new ParallelPrinter(4).print(archived.getFactory(), null, archive);
+        archive.close();
+
+        Map<String, byte[]> entries = readZip(zip);
+        assertEquals(2, printed);
+        assertEquals(List.of("units/Units.java", "units/Helper.java"), List.copyOf(entries.keySet()));
+        for (var entry : entries.entrySet()) {
+            assertArrayEquals(Files.readAllBytes(Path.of(outputTestFolder, "sequential").resolve(entry.getKey())),
+                    entry.getValue());
+        }
+    }
+
+    @Tag("File")
+    @Test
+    void testAdd_intoTarGz_shouldKeepLongNames() throws IOException {
+        Path tgz = Path.of(outputTestFolder, "output.tar.gz");
+        String longName = "a/" + "very_long_package_name/".repeat(6) + "Example.java";
+        try (ArchiveWriter archive = ArchiveWriter.forFile(tgz, ArchiveWriter.Format.tgz, 1)) {
+            archive.add("a/Short.java", () -> "class Short {}".getBytes(StandardCharsets.UTF_8));
+            archive.add(longName, () -> "class Example {}".getBytes(StandardCharsets.UTF_8));
+        }
+
+        Map<String, byte[]> entries = readTarGz(tgz);
+        assertEquals(List.of("a/Short.java", longName), List.copyOf(entries.keySet()));
+        assertEquals("class Example {}", new String(entries.get(longName), StandardCharsets.UTF_8));
+    }
+
+    @Tag("File")
+    @Test
+    void testAdd_sameNameTwice_shouldKeepFirstEntry() throws IOException {
+        Path zip = Path.of(outputTestFolder, "output.zip");
+        try (ArchiveWriter archive = ArchiveWriter.forFile(zip, ArchiveWriter.Format.zip, 6)) {
+            archive.add("A.java", () -> "first".getBytes(StandardCharsets.UTF_8));
+            archive.add("A.java", () -> "second".getBytes(StandardCharsets.UTF_8));
+        }
+
+        Map<String, byte[]> entries = readZip(zip);
+        assertEquals(1, entries.size());
+        assertEquals("first", new String(entries.get("A.java"), StandardCharsets.UTF_8));
+    }
+
+    @Tag("File")
+    @Test
+    void testAdd_failingContent_shouldKeepOtherEntries() throws IOException {
+        Path zip = Path.of(outputTestFolder, "output.zip");
+        ArchiveWriter archive = ArchiveWriter.forFile(zip, ArchiveWriter.Format.zip, 6);
+        try (archive) {
+            archive.add("A.java", () -> {
+                throw new IllegalStateException("Failed to print A");
+            });
+            archive.add("B.java", () -> "b".getBytes(StandardCharsets.UTF_8));
+            // e.g. the file of a failed partition, retried on its own
+            archive.add("A.java", () -> "a".getBytes(StandardCharsets.UTF_8));
+        }
+
+        Map<String, byte[]> entries = readZip(zip);
+        assertEquals(List.of("B.java", "A.java"), List.copyOf(entries.keySet()));
+        assertEquals("a", new String(entries.get("A.java"), StandardCharsets.UTF_8));
+        assertEquals(Set.of("A.java"), archive.getFailedEntries());
+    }
+
+    @Tag("File")
+    @Test
+    void testWriteAST_zipOutput_shouldWriteNoJavaFiles() throws IOException {
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfTrueTransformer());
+        Engine engine = new Engine(pathToTestFileFolder, outputTestFolder, registry);
+        engine.setNumberOfTransformationsPerScope(5, Engine.TransformationScope.global);
+        Launcher launcher = new Launcher();
+        launcher.addInputResource(pathToTestFileFolder);
+        launcher.buildModel();
+        launcher.getFactory().getEnvironment().setAutoImports(false);
+        EngineResult result = engine.run(launcher.getModel());
+        try {
+            App.outputFormat = App.OutputFormat.zip;
+            WriteAST(result, launcher);
+            ArchiveWriter.closeAll();
+        } finally {
+            App.outputFormat = App.OutputFormat.java;
+        }
+
+        Map<String, byte[]> entries = readZip(Path.of(outputTestFolder, "lampion-output.zip"));
+        assertEquals(launcher.getModel().getAllTypes().size(), entries.size());
+        try (var written = Files.walk(Path.of(outputTestFolder))) {
+            assertEquals(0, written.filter(f -> f.toString().endsWith(".java")).count());
+        }
+    }
+
+    @Test
+    void testForFile_invalidCompression_shouldThrowException() {
+        assertThrows(UnsupportedOperationException.class,
+                () -> ArchiveWriter.forFile(Path.of(outputTestFolder, "output.zip"), ArchiveWriter.Format.zip, 10));
+    }
+
+    private static Launcher transformedModel(String output) {
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfTrueTransformer());
+        Engine engine = new Engine(pathToTestFileFolder, output, registry);
+        engine.setNumberOfTransformationsPerScope(5, Engine.TransformationScope.global);
+        engine.setRandomSeed(2021);
+
+        Launcher launcher = new Launcher();
+        launcher.addInputResource(pathToTestFileFolder);
+        launcher.buildModel();
+        launcher.getFactory().getEnvironment().setAutoImports(false);
+        engine.run(launcher.getModel());
+        launcher.setSourceOutputDirectory(output);
+        return launcher;
+    }
+
+    private static Map<String, byte[]> readZip(Path zip) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (ZipInputStream in = new ZipInputStream(Files.newInputStream(zip))) {
+            for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                entries.put(entry.getName(), in.readAllBytes());
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the regular files of a tar.gz, with the path of a preceding pax header if there is one.
+     */
+    private static Map<String, byte[]> readTarGz(Path tgz) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(Files.newInputStream(tgz)))) {
+            String paxPath = null;
+            byte[] header = new byte[512];
+            while (true) {
+                in.readFully(header);
+                if (header[0] == 0) {
+                    return entries;
+                }
+                String name = new String(header, 0, 100, StandardCharsets.UTF_8).replace("\0", "");
+                int size = Integer.parseInt(new String(header, 124, 11, StandardCharsets.US_ASCII), 8);
+                byte[] content = readBlocks(in, size);
+                if (header[156] == 'x') {
+                    String record = new String(content, StandardCharsets.UTF_8);
+                    paxPath = record.substring(record.indexOf("path=") + 5, record.length() - 1);
+                } else {
+                    entries.put(paxPath != null ? paxPath : name, content);
+                    paxPath = null;
+                }
+            }
+        }
+    }
+
+    private static byte[] readBlocks(InputStream in, int size) throws IOException {
+        byte[] content = in.readNBytes(size);
+        in.readNBytes((512 - size % 512) % 512);
+        return content;
+    }
+}
@@ -0,0 +1,168 @@
+package com.github.ciselab.lapion.cli.program;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.ciselab.lampion.cli.program.IncrementalRun;
+import com.github.ciselab.lampion.core.program.Engine;
+import com.github.ciselab.lampion.core.transformations.TransformerRegistry;
+import com.github.ciselab.lampion.core.transformations.transformers.IfTrueTransformer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("System")
+@Tag("File")
+public class IncrementalRunTest {
+
+    private static String pathToTestFileFolder = "./src/test/resources/javafiles/javafiles_perMethodEach";
+    private static String outputTestFolder = "./src/test/resources/incremental_output/";
+    private static Path input = Path.of(outputTestFolder,"input");
+    private static Path output = Path.of(outputTestFolder,"output");
+    private static Path firstOutput = output.resolve("lampion/test/examples/Example.java");
+    private static Path secondOutput = output.resolve("lampion/test/examples/Example2.java");
+
+    @BeforeEach
+    public void copy_input() throws IOException {
+        Files.createDirectories(input);
+        Files.copy(Path.of(pathToTestFileFolder,"example.java"), input.resolve("example.java"));
+        Files.copy(Path.of(pathToTestFileFolder,"example2.java"), input.resolve("example2.java"));
+    }
+
+    @AfterEach
+    public void folder_cleanup() throws IOException {
+        if(Files.exists(Paths.get(outputTestFolder))) {
+            Files.walk(Paths.get(outputTestFolder))
+                    .sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    @Test
+    void testRun_firstRun_shouldProcessAllFiles() throws IOException {
+        int processed = run(configuration("1"));
+
+        assertEquals(2,processed);
+        assertTrue(Files.exists(firstOutput));
+        assertTrue(Files.exists(secondOutput));
+        assertTrue(Files.exists(output.resolve(IncrementalRun.INDEX_FILE)));
+    }
+
+    @Test
+    void testRun_nothingChanged_shouldProcessNoFiles() throws IOException {
+        run(configuration("1"));
+        String before = Files.readString(firstOutput);
+
+        int processed = run(configuration("1"));
+
+        assertEquals(0,processed);
+        assertEquals(before,Files.readString(firstOutput));
+    }
+
+    @Test
+    void testRun_oneFileChanged_shouldOnlyProcessThatFile() throws IOException {
+        run(configuration("1"));
+        String untouched = Files.readString(secondOutput);
+        Path changed = input.resolve("example.java");
+        Files.writeString(changed, Files.readString(changed).replace("a * b","b * a"));
+
+        int processed = run(configuration("1"));
+
+        assertEquals(1,processed);
+        assertTrue(Files.readString(firstOutput).contains("b * a"));
+        assertEquals(untouched,Files.readString(secondOutput));
+    }
+
+    @Test
+    void testRun_changedFile_shouldGiveSameOutputAsFullRun() throws IOException {
+        run(configuration("1"));
+        Path changed = input.resolve("example.java");
+        Files.writeString(changed, Files.readString(changed).replace("a * b","b * a"));
+        run(configuration("1"));
+        String incremental = Files.readString(firstOutput);
+
+        Files.delete(output.resolve(IncrementalRun.INDEX_FILE));
+        run(configuration("1"));
+
+        assertEquals(incremental,Files.readString(firstOutput));
+    }
+
+    @Test
+    void testRun_fileDeleted_shouldRemoveItsOutput() throws IOException {
+        run(configuration("1"));
+        Files.delete(input.resolve("example2.java"));
+
+        int processed = run(configuration("1"));
+
+        assertEquals(0,processed);
+        assertTrue(Files.exists(firstOutput));
+        assertFalse(Files.exists(secondOutput));
+    }
+
+    @Test
+    void testRun_configurationChanged_shouldProcessAllFiles() throws IOException {
+        run(configuration("1"));
+
+        int processed = run(configuration("2"));
+
+        assertEquals(2,processed);
+    }
+
+    @Test
+    void testRun_configurationChangedAndFileDeleted_shouldRemoveItsOutput() throws IOException {
+        run(configuration("1"));
+        Files.delete(input.resolve("example2.java"));
+
+        int processed = run(configuration("2"));
+
+        assertEquals(1,processed);
+        assertTrue(Files.exists(firstOutput));
+        assertFalse(Files.exists(secondOutput));
+    }
+
+    @Test
+    void testRun_separatorsInPath_shouldReadIndex() throws IOException {
+        Path odd = input.resolve("odd -> name, with commas.java");
+        Files.move(input.resolve("example2.java"), odd);
+        List<Path> files = List.of(input.resolve("example.java"), odd);
+        run(configuration("1"), files);
+
+        int processed = run(configuration("1"), files);
+
+        assertEquals(0,processed);
+        assertTrue(Files.exists(secondOutput));
+    }
+
+    private static Properties configuration(String seed){
+        Properties configuration = new Properties();
+        configuration.put("seed",seed);
+        configuration.put("incremental","true");
+        return configuration;
+    }
+
+    private static int run(Properties configuration) throws IOException {
+        return run(configuration, List.of(input.resolve("example.java"),input.resolve("example2.java"))
+                .stream().filter(Files::exists).toList());
+    }
+
+    private static int run(Properties configuration, List<Path> files) throws IOException {
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfTrueTransformer());
+        Engine engine = new Engine(input.toString(),output.toString(),registry);
+        engine.setNumberOfTransformationsPerScope(2, Engine.TransformationScope.perClassEach);
+        engine.setDeriveSeedsPerElement(true);
+        engine.setRandomSeed(Long.parseLong(configuration.getProperty("seed")));
+        return new IncrementalRun(engine,configuration).run(files);
+    }
+}
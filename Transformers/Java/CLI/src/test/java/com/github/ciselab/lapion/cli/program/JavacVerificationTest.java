@@ -0,0 +1,122 @@
+package com.github.ciselab.lapion.cli.program;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.ciselab.lampion.cli.program.JavacVerification;
+import com.github.ciselab.lampion.core.program.EngineResult;
+import com.github.ciselab.lampion.core.transformations.TransformerRegistry;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import spoon.Launcher;
+import spoon.reflect.declaration.CtType;
+import spoon.support.compiler.VirtualFile;
+
+public class JavacVerificationTest {
+
+    private static String outputTestFolder = "./src/test/resources/javac_verification_output/";
+
+    @AfterEach
+    public void folder_cleanup() throws IOException {
+        if(Files.exists(Paths.get(outputTestFolder))) {
+            Files.walk(Paths.get(outputTestFolder))
+                    .sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    @Test
+    void testConstructor_noThreads_shouldThrowException() {
+        assertThrows(UnsupportedOperationException.class, () -> new JavacVerification(0, 10, List.of()));
+    }
+
+    @Test
+    void testVerify_referringToUnmodifiedType_shouldCompile() {
+        Launcher launcher = buildModel(
+                "package a; public class A { int twice(int x) { return new B().add(x, x); } }",
+                "package a; public class B { int add(int x, int y) { return x + y; } }");
+        JavacVerification verification = new JavacVerification(2, 1, List.of());
+
+        var outcomes = verification.verify(markModified(launcher, "a.A"), launcher);
+
+        assertEquals(1, outcomes.size());
+        assertEquals("a/A.java", outcomes.get(0).path());
+        assertTrue(outcomes.get(0).compiles(), outcomes.get(0).errors().toString());
+    }
+
+    @Test
+    void testVerify_missingMethod_shouldFailWithTransformers() {
+        Launcher launcher = buildModel(
+                "package a; public class A { int addTwo(int x) { return x + getTwo(); } }",
+                "package a; public class B { int add(int x, int y) { return x + y; } }");
+        JavacVerification verification = new JavacVerification(2, 1, List.of());
+
+        var outcomes = verification.verify(markModified(launcher, "a.A", "a.B"), launcher);
+
+        assertEquals(2, outcomes.size());
+        assertFalse(outcomes.get(0).compiles());
+        assertTrue(outcomes.get(0).errors().get(0).contains("getTwo"));
+        assertTrue(outcomes.get(1).compiles());
+        assertArrayEquals(new long[]{1, 2}, verification.getFailuresPerTransformer().get("IfTrue"));
+        assertArrayEquals(new long[]{0, 1}, verification.getFailuresPerTransformer().get("LambdaIdentity"));
+    }
+
+    @Tag("File")
+    @Test
+    void testWrite_shouldListEveryFile() throws IOException {
+        Launcher launcher = buildModel(
+                "package a; public class A { int addTwo(int x) { return x + getTwo(); } }",
+                "package a; public class B { int add(int x, int y) { return x + y; } }");
+        JavacVerification verification = new JavacVerification(1, 10, List.of());
+        verification.verify(markModified(launcher, "a.A", "a.B"), launcher);
+
+        verification.write(Path.of(outputTestFolder));
+
+        String report = Files.readString(Path.of(outputTestFolder, JavacVerification.REPORT_FILE));
+        assertTrue(report.contains("FAIL a/A.java transformers=IfTrue"));
+        assertTrue(report.contains("PASS a/B.java transformers=IfTrue,LambdaIdentity"));
+        assertTrue(report.contains("IfTrue=1 of 2"));
+    }
+
+    private static Launcher buildModel(String... sources) {
+        Launcher launcher = new Launcher();
+        for (int i = 0; i < sources.length; i++) {
+            launcher.addInputResource(new VirtualFile(sources[i], "Source" + i + ".java"));
+        }
+        launcher.buildModel();
+        return launcher;
+    }
+
+    /**
+     * Marks the types as modified, the first by IfTrue only and all others by IfTrue and LambdaIdentity.
+     */
+    private static EngineResult markModified(Launcher launcher, String... typeNames) {
+        Set<CtType<?>> modified = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<CtType<?>, List<String>> transformers = new IdentityHashMap<>();
+        for (int i = 0; i < typeNames.length; i++) {
+            CtType<?> type = launcher.getFactory().Type().get(typeNames[i]);
+            modified.add(type);
+            transformers.put(type, i == 0 ? List.of("IfTrue") : List.of("IfTrue", "LambdaIdentity"));
+        }
+        return new EngineResult.Builder(launcher.getModel(), "-", outputTestFolder, new TransformerRegistry("Test"))
+                .modifiedTypes(modified)
+                .appliedTransformers(transformers)
+                .build();
+    }
+}
@@ -0,0 +1,126 @@
+package com.github.ciselab.lapion.cli.program;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.ciselab.lampion.cli.program.App;
+import com.github.ciselab.lampion.cli.program.JsonlInput;
+import com.github.ciselab.lampion.cli.program.JsonlReader;
+import com.github.ciselab.lampion.cli.program.JsonlWriter;
+import com.github.ciselab.lampion.cli.program.Shard;
+import com.github.ciselab.lampion.core.program.Engine;
+import com.github.ciselab.lampion.core.transformations.TransformerRegistry;
+import com.github.ciselab.lampion.core.transformations.transformers.IfTrueTransformer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+public class JsonlInputTest {
+
+    private static Path dataset = Path.of("./src/test/resources/jsonl/java.jsonl");
+    private static String outputTestFolder = "./src/test/resources/jsonl_input_output/";
+
+    @AfterEach
+    public void folder_cleanup() throws IOException {
+        if(Files.exists(Paths.get(outputTestFolder))) {
+            Files.walk(Paths.get(outputTestFolder))
+                    .sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    @Tag("File")
+    @Test
+    void testRun_javaOutput_shouldWriteWrappedClasses() throws IOException {
+        Engine engine = makeEngine(3);
+
+        long records = new JsonlInput(engine, dataset, 2).run();
+
+        assertEquals(3, records);
+        Path directory = Path.of(outputTestFolder, "android/guava/src/com/google/common/io");
+        // The second record of the same method gets a counter, like in jsonl_to_java.py
+        for (String name : List.of("CharSource_copyTo", "CharSource_read", "CharSource_copyTo_2")) {
+            String written = Files.readString(directory.resolve(name + ".java"));
+            assertTrue(written.contains("ur_repo google/guava ur_repo"));
+            assertTrue(written.contains("class " + name + " {"));
+        }
+        // The transformations are split among the batches and restored afterwards
+        assertEquals(3, engine.getNumberOfTransformationsPerScope());
+    }
+
+    @Tag("File")
+    @Test
+    void testRun_jsonlOutput_shouldKeepValuesOfRecords() throws IOException {
+        Engine engine = makeEngine(0);
+
+        try {
+            App.outputFormat = App.OutputFormat.jsonl;
+            new JsonlInput(engine, dataset, 2).run();
+            JsonlWriter.closeAll();
+        } finally {
+            App.outputFormat = App.OutputFormat.java;
+        }
+
+        List<String> input = Files.readAllLines(dataset, StandardCharsets.UTF_8);
+        List<String> output = Files.readAllLines(Path.of(outputTestFolder, App.jsonlFile), StandardCharsets.UTF_8);
+        assertEquals(input.size(), output.size());
+        for (int i = 0; i < input.size(); i++) {
+            Map<String, Object> original = JsonlReader.parseRecord(input.get(i));
+            Map<String, Object> written = JsonlReader.parseRecord(output.get(i));
+            for (String key : List.of("repo", "path", "func_name", "docstring", "docstring_tokens", "sha", "url", "partition")) {
+                assertEquals(original.get(key), written.get(key), key);
+            }
+        }
+    }
+
+    @Tag("File")
+    @Test
+    void testRun_allShards_shouldWriteEveryRecordOnce() throws IOException {
+        long records = 0;
+        for (int index = 1; index <= 2; index++) {
+            JsonlInput input = new JsonlInput(makeEngine(0), dataset, 1);
+            input.setShard(new Shard(index, 2));
+            records += input.run();
+        }
+
+        // Every record is processed by exactly one shard
+        assertEquals(3, records);
+        Set<String> written;
+        try (Stream<Path> files = Files.walk(Path.of(outputTestFolder))) {
+            written = files.map(f -> f.getFileName().toString())
+                    .filter(name -> name.endsWith(".java"))
+                    .collect(Collectors.toSet());
+        }
+        // The records are named like in a single run, no matter which shard processes them
+        assertEquals(Set.of("CharSource_copyTo.java", "CharSource_read.java", "CharSource_copyTo_2.java"), written);
+    }
+
+    @Test
+    void testConstructor_zeroBatchSize_shouldThrowException() {
+        assertThrows(UnsupportedOperationException.class, () -> new JsonlInput(makeEngine(1), dataset, 0));
+    }
+
+    private static Engine makeEngine(long transformations) {
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        IfTrueTransformer ifTrueTransformer = new IfTrueTransformer();
+        ifTrueTransformer.setTryingToCompile(false);
+        registry.registerTransformer(ifTrueTransformer);
+        Engine engine = new Engine(dataset.toString(), outputTestFolder, registry);
+        engine.setNumberOfTransformationsPerScope(transformations, Engine.TransformationScope.global);
+        return engine;
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.ciselab.lapion.cli.program;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.github.ciselab.lampion.cli.program.JsonlReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+public class JsonlReaderTest {
+
+    private static String outputTestFolder = "./src/test/resources/jsonl_reader_output/";
+
+    @AfterEach
+    public void folder_cleanup() throws IOException {
+        if(Files.exists(Paths.get(outputTestFolder))) {
+            Files.walk(Paths.get(outputTestFolder))
+                    .sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    @Tag("File")
+    @Test
+    void testNextLine_smallWindow_shouldReadAllLines() throws IOException {
+        Path file = write("{\"a\": 1}\r\n\n{\"b\": \"ä\"}\n{\"c\": [1, 2]}");
+
+        try (JsonlReader reader = new JsonlReader(file, 16)) {
+            assertEquals("{\"a\": 1}", reader.nextLine());
+            assertEquals("{\"b\": \"ä\"}", reader.nextLine());
+            assertEquals("{\"c\": [1, 2]}", reader.nextLine());
+            assertNull(reader.nextLine());
+        }
+    }
+
+    @Tag("File")
+    @Test
+    void testCountLines_shouldSkipEmptyLines() throws IOException {
+        Path file = write("{\"a\": 1}\r\n\r\n{\"b\": 2}\n\n");
+
+        try (JsonlReader reader = new JsonlReader(file, 16)) {
+            assertEquals(2, reader.countLines());
+        }
+    }
+
+    @Tag("File")
+    @Test
+    void testNextLine_lineLongerThanWindow_shouldThrowException() throws IOException {
+        Path file = write("{\"a\": \"a long value\"}\n");
+
+        try (JsonlReader reader = new JsonlReader(file, 8)) {
+            assertThrows(UnsupportedOperationException.class, reader::nextLine);
+        }
+    }
+
+    @Tag("File")
+    @Test
+    void testNextLine_datasetShard_shouldReadEveryRecord() throws IOException {
+        try (JsonlReader reader = new JsonlReader(Path.of("./src/test/resources/jsonl/java.jsonl"))) {
+            assertEquals("CharSource.copyTo", JsonlReader.parseRecord(reader.nextLine()).get("func_name"));
+            assertEquals("CharSource.read", JsonlReader.parseRecord(reader.nextLine()).get("func_name"));
+            assertEquals("CharSource.copyTo", JsonlReader.parseRecord(reader.nextLine()).get("func_name"));
+            assertNull(reader.nextLine());
+        }
+    }
+
+    @Test
+    void testParseRecord_shouldParseNestedValues() {
+        Map<String, Object> record = JsonlReader.parseRecord(
+                "{\"code\": \"a\\n\\\"b\\\" \\u00e4\", \"tokens\": [\"a\", \"b\"], \"n\": 2, \"ok\": true, \"none\": null, \"o\": {}}");
+
+        assertEquals("a\n\"b\" ä", record.get("code"));
+        assertEquals(List.of("a", "b"), record.get("tokens"));
+        assertEquals(2.0, record.get("n"));
+        assertEquals(true, record.get("ok"));
+        assertNull(record.get("none"));
+        assertEquals(Map.of(), record.get("o"));
+    }
+
+    @Test
+    void testParseRecord_noObject_shouldThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> JsonlReader.parseRecord("[1, 2]"));
+        assertThrows(IllegalArgumentException.class, () -> JsonlReader.parseRecord("{\"a\": 1"));
+        assertThrows(IllegalArgumentException.class, () -> JsonlReader.parseRecord("{\"a\": nope}"));
+    }
+
+    @Test
+    void testParseRecord_brokenEscape_shouldThrowException() {
+        // A lone backslash at the end, a truncated and an invalid unicode escape
+        assertThrows(IllegalArgumentException.class, () -> JsonlReader.parseRecord("{\"a\": \"\\"));
+        assertThrows(IllegalArgumentException.class, () -> JsonlReader.parseRecord("{\"a\": \"\\u00"));
+        assertThrows(IllegalArgumentException.class, () -> JsonlReader.parseRecord("{\"a\": \"\\u+0e4\"}"));
+        assertThrows(IllegalArgumentException.class, () -> JsonlReader.parseRecord("{\"a\": \"\\uzzzz\"}"));
+    }
+
+    private static Path write(String content) throws IOException {
+        Path file = Path.of(outputTestFolder, "test.jsonl");
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        return file;
+    }
+}
@@ -0,0 +1,171 @@
+package com.github.ciselab.lapion.cli.program;
+
+import static com.github.ciselab.lampion.cli.program.App.WriteAST;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.ciselab.lampion.cli.program.App;
+import com.github.ciselab.lampion.cli.program.JsonlWriter;
+import com.github.ciselab.lampion.core.program.Engine;
+import com.github.ciselab.lampion.core.program.EngineResult;
+import com.github.ciselab.lampion.core.transformations.TransformerRegistry;
+import com.github.ciselab.lampion.core.transformations.transformers.IfTrueTransformer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import spoon.Launcher;
+
+public class JsonlWriterTest {
+
+    private static String pathToTestFileFolder = "./src/test/resources/javafiles/javafiles_jsonl";
+    private static String outputTestFolder = "./src/test/resources/jsonl_output/";
+
+    @AfterEach
+    public void folder_cleanup() throws IOException {
+        if(Files.exists(Paths.get(outputTestFolder))) {
+            Files.walk(Paths.get(outputTestFolder))
+                    .sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    @Tag("File")
+    @Test
+    void testWriteAST_jsonlOutput_shouldWriteRecordWithHeaderValues() throws IOException {
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        IfTrueTransformer ifTrueTransformer = new IfTrueTransformer();
+        // Without the classpath of guava, the class cannot be compiled
+        ifTrueTransformer.setTryingToCompile(false);
+        registry.registerTransformer(ifTrueTransformer);
+        Engine engine = new Engine(pathToTestFileFolder, outputTestFolder, registry);
+        engine.setNumberOfTransformationsPerScope(1, Engine.TransformationScope.global);
+
+        Launcher launcher = new Launcher();
+        launcher.addInputResource(pathToTestFileFolder);
+        launcher.buildModel();
+        launcher.getFactory().getEnvironment().setAutoImports(false);
+        EngineResult result = engine.run(launcher.getModel());
+        try {
+            App.outputFormat = App.OutputFormat.jsonl;
+            WriteAST(result, launcher);
+            JsonlWriter.closeAll();
+        } finally {
+            App.outputFormat = App.OutputFormat.java;
+        }
+
+        List<String> records = Files.readAllLines(Path.of(outputTestFolder, App.jsonlFile), StandardCharsets.UTF_8);
+        assertEquals(1, records.size());
+        String record = records.get(0);
+        assertTrue(record.startsWith("{\"repo\": \"google/guava\", \"path\": \"android/guava/src/com/google/common/io/CharSource.java\""));
+        assertTrue(record.contains("\"func_name\": \"CharSource.copyTo\""));
+        assertTrue(record.contains("\"docstring\": \"Copies the contents of this source to the given sink.\\n\\n@return"));
+        assertTrue(record.contains("\"docstring_tokens\": [\"Copies\", \"the\""));
+        assertTrue(record.contains("\"partition\": \"valid\""));
+        // Without a classpath, the unresolved types are printed fully qualified
+        assertTrue(record.contains("\"code\": \"@android.guava.src.com.google.common.io.CanIgnoreReturnValue"));
+        // The transformation is part of the code, the wrapping class and header are not
+        assertTrue(record.contains("if (true)"));
+        assertFalse(record.contains("python_helper_header"));
+        assertFalse(record.contains("class CharSource_copyTo"));
+        // No java files are written
+        try (var written = Files.walk(Path.of(outputTestFolder))) {
+            assertEquals(0, written.filter(f -> f.toString().endsWith(".java")).count());
+        }
+    }
+
+    @Tag("File")
+    @Test
+    void testToRecord_compiledClass_shouldKeepHeaderValues() throws IOException {
+        Path input = Path.of(outputTestFolder, "input", "Example_add.java");
+        Files.createDirectories(input.getParent());
+        Files.writeString(input, """
+                /*
+                python_helper_header_start
+                ur_repo a/b ur_repo
+                ur_path src/Example.java ur_path
+                ur_func_name Example.add ur_func_name
+                python_helper_header_end
+                */
+                public class Example_add {
+                    public int add(int a, int b) {
+                        return a + b;
+                    }
+                }
+                """);
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        // Compiling keeps the class and its position, only the snippets are replaced
+        registry.registerTransformer(new IfTrueTransformer());
+        Engine engine = new Engine(input.getParent().toString(), outputTestFolder, registry);
+        engine.setNumberOfTransformationsPerScope(1, Engine.TransformationScope.global);
+
+        Launcher launcher = new Launcher();
+        launcher.addInputResource(input.getParent().toString());
+        launcher.buildModel();
+        launcher.getFactory().getEnvironment().setAutoImports(false);
+        engine.run(launcher.getModel());
+
+        var type = launcher.getModel().getAllTypes().iterator().next();
+        String record = JsonlWriter.toRecord(type, type.toString());
+        assertTrue(record.startsWith("{\"repo\": \"a/b\", \"path\": \"src/Example.java\", \"func_name\": \"Example.add\""));
+        assertTrue(record.contains("if (true)"));
+    }
+
+    @Test
+    void testReadHeader_withoutHeader_shouldBeEmpty() {
+        assertTrue(JsonlWriter.readHeader("package a; class B {}").isEmpty());
+    }
+
+    @Test
+    void testReadHeader_shouldReadValuesByKey() {
+        var header = JsonlWriter.readHeader("/*\npython_helper_header_start\nur_repo a/b ur_repo\nur_sha 123 ur_sha\npython_helper_header_end\n*/");
+
+        assertEquals("a/b", header.get("repo"));
+        assertEquals("123", header.get("sha"));
+    }
+
+    @Test
+    void testDecodeBytesLiteral_shouldDecodeEscapesAndUtf8() {
+        assertEquals("It's ä\nnext", JsonlWriter.decodeBytesLiteral("b'It\\'s \\xc3\\xa4\\nnext'"));
+    }
+
+    @Test
+    void testParseStringList_shouldParseBothQuotes() {
+        assertEquals(List.of("Copies", "it's", "\\"), JsonlWriter.parseStringList("['Copies', \"it's\", '\\\\']"));
+    }
+
+    @Test
+    void testParseStringList_empty_shouldBeEmpty() {
+        assertEquals(List.of(), JsonlWriter.parseStringList("[]"));
+    }
+
+    @Test
+    void testDecodeBytesLiteral_truncatedHexEscape_shouldThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> JsonlWriter.decodeBytesLiteral("b'broken \\xc'"));
+    }
+
+    @Test
+    void testDecodeBytesLiteral_signedHexEscape_shouldThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> JsonlWriter.decodeBytesLiteral("b'\\x+1'"));
+    }
+
+    @Test
+    void testParseStringList_truncatedUnicodeEscape_shouldThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> JsonlWriter.parseStringList("['\\u00e']"));
+    }
+
+    @Test
+    void testParseStringList_escapeAtEnd_shouldThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> JsonlWriter.parseStringList("['\\"));
+    }
+}
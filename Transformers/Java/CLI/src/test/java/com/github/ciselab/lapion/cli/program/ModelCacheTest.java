@@ -0,0 +1,127 @@
+package com.github.ciselab.lapion.cli.program;
+
+import static com.github.ciselab.lampion.cli.program.App.WriteAST;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.ciselab.lampion.cli.program.ModelCache;
+import com.github.ciselab.lampion.core.program.Engine;
+import com.github.ciselab.lampion.core.transformations.TransformerRegistry;
+import com.github.ciselab.lampion.core.transformations.transformers.AddNeutralElementTransformer;
+import com.github.ciselab.lampion.core.transformations.transformers.IfTrueTransformer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import spoon.Launcher;
+
+public class ModelCacheTest {
+
+    private static String pathToTestFileFolder = "./src/test/resources/javafiles/javafiles_perMethodEach";
+    private static String outputTestFolder = "./src/test/resources/model_cache_output/";
+    private static String expectedJavaFile = "lampion/test/examples/Example.java";
+
+    private static List<Path> files = List.of(
+            Path.of(pathToTestFileFolder,"example.java"),Path.of(pathToTestFileFolder,"example2.java"));
+
+    @AfterEach
+    public void folder_cleanup() throws IOException {
+        if(Files.exists(Paths.get(outputTestFolder))) {
+            Files.walk(Paths.get(outputTestFolder))
+                    .sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    @Test
+    void testBuildModel_disabled_shouldNotStoreAnything(){
+        Launcher launcher = ModelCache.disabled().buildModel(files);
+
+        assertEquals(2, launcher.getModel().getAllTypes().size());
+        assertFalse(Files.exists(Path.of(outputTestFolder)));
+    }
+
+    @Tag("File")
+    @Test
+    void testBuildModel_twice_shouldStoreOneEntry() throws IOException {
+        ModelCache cache = ModelCache.in(Path.of(outputTestFolder,"cache"));
+
+        cache.buildModel(files);
+        Launcher cached = cache.buildModel(files);
+
+        assertEquals(1, countEntries());
+        assertEquals(2, cached.getModel().getAllTypes().size());
+    }
+
+    @Tag("File")
+    @Test
+    void testBuildModel_changedFile_shouldStoreNewEntry() throws IOException {
+        ModelCache cache = ModelCache.in(Path.of(outputTestFolder,"cache"));
+        Path copy = Path.of(outputTestFolder,"input","example.java");
+        Files.createDirectories(copy.getParent());
+        Files.copy(files.get(0), copy);
+
+        cache.buildModel(List.of(copy));
+        Files.writeString(copy, Files.readString(copy).replace("a + b","b + a"));
+        cache.buildModel(List.of(copy));
+
+        assertEquals(2, countEntries());
+    }
+
+    @Tag("File")
+    @Test
+    void testBuildModel_corruptEntry_shouldParseAgain() throws IOException {
+        ModelCache cache = ModelCache.in(Path.of(outputTestFolder,"cache"));
+        cache.buildModel(files);
+        try (Stream<Path> entries = Files.list(Path.of(outputTestFolder,"cache"))) {
+            for (Path entry : entries.toList()) {
+                Files.writeString(entry, "not a model");
+            }
+        }
+
+        Launcher launcher = cache.buildModel(files);
+
+        assertEquals(2, launcher.getModel().getAllTypes().size());
+    }
+
+    @Tag("System")
+    @Tag("File")
+    @Test
+    void testBuildModel_fromCache_shouldProduceSameOutputAsParsing() throws IOException {
+        ModelCache cache = ModelCache.in(Path.of(outputTestFolder,"cache"));
+
+        Launcher parsed = cache.buildModel(files);
+        WriteAST(buildEngine(outputTestFolder + "parsed").run(parsed.getModel()), parsed);
+        Launcher loaded = cache.buildModel(files);
+        WriteAST(buildEngine(outputTestFolder + "loaded").run(loaded.getModel()), loaded);
+
+        assertEquals(Files.readString(Path.of(outputTestFolder,"parsed",expectedJavaFile)),
+                Files.readString(Path.of(outputTestFolder,"loaded",expectedJavaFile)));
+        assertTrue(Files.readString(Path.of(outputTestFolder,"loaded",expectedJavaFile)).contains("if (true)"));
+    }
+
+    private static long countEntries() throws IOException {
+        try (Stream<Path> entries = Files.list(Path.of(outputTestFolder,"cache"))) {
+            return entries.filter(p -> p.toString().endsWith(".model")).count();
+        }
+    }
+
+    private static Engine buildEngine(String output){
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfTrueTransformer());
+        registry.registerTransformer(new AddNeutralElementTransformer());
+        Engine engine = new Engine(pathToTestFileFolder,output,registry);
+        engine.setNumberOfTransformationsPerScope(2, Engine.TransformationScope.perClassEach);
+        engine.setDeriveSeedsPerElement(true);
+        return engine;
+    }
+}
@@ -0,0 +1,102 @@
+package com.github.ciselab.lapion.cli.program;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.github.ciselab.lampion.cli.program.ParallelPrinter;
+import com.github.ciselab.lampion.core.program.Engine;
+import com.github.ciselab.lampion.core.transformations.TransformerRegistry;
+import com.github.ciselab.lampion.core.transformations.transformers.IfTrueTransformer;
+import com.github.ciselab.lampion.core.transformations.transformers.LambdaIdentityTransformer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import spoon.Launcher;
+
+public class ParallelPrinterTest {
+
+    private static List<String> pathsToTestFileFolders = List.of(
+            "./src/test/resources/javafiles/javafiles_with_comments",
+            "./src/test/resources/javafiles/javafiles_with_import",
+            "./src/test/resources/javafiles/javafiles_perMethodEach");
+    private static String outputTestFolder = "./src/test/resources/parallel_printer_output/";
+
+    @AfterEach
+    public void folder_cleanup() throws IOException {
+        if(Files.exists(Paths.get(outputTestFolder))) {
+            Files.walk(Paths.get(outputTestFolder))
+                    .sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    @Tag("File")
+    @Test
+    void testPrint_manyThreads_shouldBeIdenticalToSequentialPrinting() throws IOException {
+        Launcher sequential = transformedModel(outputTestFolder + "sequential");
+        sequential.prettyprint();
+
+        Launcher parallel = transformedModel(outputTestFolder + "parallel");
+        int printed = new ParallelPrinter(3).print(parallel.getFactory(), null);
+
+        assertEquals(sequential.getModel().getAllTypes().size(), printed);
+        List<Path> expected = javaFiles(Path.of(outputTestFolder, "sequential"));
+        List<Path> actual = javaFiles(Path.of(outputTestFolder, "parallel"));
+        assertEquals(expected, actual);
+        for (Path file : expected) {
+            assertArrayEquals(Files.readAllBytes(Path.of(outputTestFolder, "sequential").resolve(file)),
+                    Files.readAllBytes(Path.of(outputTestFolder, "parallel").resolve(file)));
+        }
+    }
+
+    @Tag("File")
+    @Test
+    void testPrint_withFilter_shouldOnlyPrintMatchingTypes() throws IOException {
+        Launcher launcher = transformedModel(outputTestFolder + "filtered");
+
+        int printed = new ParallelPrinter(2).print(launcher.getFactory(), t -> t.getSimpleName().startsWith("Doc"));
+
+        assertEquals(1, printed);
+        assertEquals(1, javaFiles(Path.of(outputTestFolder, "filtered")).size());
+    }
+
+    @Test
+    void testConstructor_zeroThreads_shouldThrowException() {
+        assertThrows(UnsupportedOperationException.class, () -> new ParallelPrinter(0));
+    }
+
+    private static Launcher transformedModel(String output) {
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfTrueTransformer());
+        registry.registerTransformer(new LambdaIdentityTransformer());
+        Engine engine = new Engine(pathsToTestFileFolders.get(0), output, registry);
+        engine.setNumberOfTransformationsPerScope(10, Engine.TransformationScope.global);
+        engine.setRandomSeed(2021);
+
+        Launcher launcher = new Launcher();
+        pathsToTestFileFolders.forEach(launcher::addInputResource);
+        launcher.buildModel();
+        launcher.getFactory().getEnvironment().setAutoImports(false);
+        engine.run(launcher.getModel());
+        launcher.setSourceOutputDirectory(output);
+        return launcher;
+    }
+
+    private static List<Path> javaFiles(Path directory) throws IOException {
+        try (var files = Files.walk(directory)) {
+            return files.filter(f -> f.toString().endsWith(".java"))
+                    .map(directory::relativize)
+                    .sorted()
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.github.ciselab.lapion.cli.program;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.ciselab.lampion.cli.program.ErrorReport;
+import com.github.ciselab.lampion.cli.program.PartitionedRun;
+import com.github.ciselab.lampion.core.program.Engine;
+import com.github.ciselab.lampion.core.transformations.TransformationResult;
+import com.github.ciselab.lampion.core.transformations.TransformerRegistry;
+import com.github.ciselab.lampion.core.transformations.transformers.IfTrueTransformer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import spoon.reflect.declaration.CtElement;
+
+public class PartitionedRunTest {
+
+    private static String pathToTestFileFolder = "./src/test/resources/javafiles/javafiles_perMethodEach";
+    private static String outputTestFolder = "./src/test/resources/partition_output/";
+
+    private static List<Path> files = List.of(
+            Path.of("root/a/One.java"), Path.of("root/a/Two.java"),
+            Path.of("root/b/Three.java"), Path.of("root/Four.java"), Path.of("root/b/Five.java"));
+
+    @AfterEach
+    public void folder_cleanup() throws IOException {
+        if(Files.exists(Paths.get(outputTestFolder))) {
+            Files.walk(Paths.get(outputTestFolder))
+                    .sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    @Test
+    void testPartition_byFiles_shouldCutIntoChunks(){
+        var partitions = PartitionedRun.partition(Path.of("root"),files, PartitionedRun.PartitionBy.files,2);
+
+        assertEquals(3,partitions.size());
+        assertEquals(1,partitions.get(2).size());
+    }
+
+    @Test
+    void testPartition_byPackages_shouldGroupByDirectory(){
+        var partitions = PartitionedRun.partition(Path.of("root"),files, PartitionedRun.PartitionBy.packages,0);
+
+        assertEquals(3,partitions.size());
+        assertTrue(partitions.stream().anyMatch(p -> p.equals(List.of(Path.of("root/b/Three.java"),Path.of("root/b/Five.java")))));
+    }
+
+    @Test
+    void testPartition_zeroFiles_shouldThrowException(){
+        assertThrows(UnsupportedOperationException.class,
+                () -> PartitionedRun.partition(Path.of("root"),files, PartitionedRun.PartitionBy.files,0));
+    }
+
+    @Test
+    void testDistribute_shouldAddUpToTotal(){
+        var partitions = PartitionedRun.partition(Path.of("root"),files, PartitionedRun.PartitionBy.files,2);
+
+        long[] shares = PartitionedRun.distribute(7,partitions);
+
+        assertEquals(7, Arrays.stream(shares).sum());
+        // 2 files of 5 are 2.8 transformations, the single file 1.4
+        assertEquals(3,shares[0]);
+        assertEquals(3,shares[1]);
+        assertEquals(1,shares[2]);
+    }
+
+    @Tag("System")
+    @Tag("File")
+    @Test
+    void testRun_twoPartitions_shouldWriteAllFilesAndRestoreTransformations() throws IOException {
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfTrueTransformer());
+        Engine engine = new Engine(pathToTestFileFolder,outputTestFolder,registry);
+        engine.setNumberOfTransformationsPerScope(4, Engine.TransformationScope.global);
+
+        var partitions = PartitionedRun.partition(Path.of(pathToTestFileFolder),
+                List.of(Path.of(pathToTestFileFolder,"example.java"),Path.of(pathToTestFileFolder,"example2.java")),
+                PartitionedRun.PartitionBy.files,1);
+        int processed = new PartitionedRun(engine,partitions).run();
+
+        assertEquals(2,processed);
+        assertTrue(Files.exists(Path.of(outputTestFolder,"lampion/test/examples/Example.java")));
+        assertTrue(Files.exists(Path.of(outputTestFolder,"lampion/test/examples/Example2.java")));
+        assertEquals(4,engine.getNumberOfTransformationsPerScope());
+    }
+
+    @Tag("System")
+    @Tag("File")
+    @Test
+    void testRun_concurrentLaunchers_shouldGiveSameOutputAsSequential() throws IOException {
+        var partitions = PartitionedRun.partition(Path.of(pathToTestFileFolder),
+                List.of(Path.of(pathToTestFileFolder,"example.java"),Path.of(pathToTestFileFolder,"example2.java")),
+                PartitionedRun.PartitionBy.files,1);
+
+        new PartitionedRun(makeEngine(outputTestFolder + "sequential"),partitions).run();
+        int processed = new PartitionedRun(() -> makeEngine(outputTestFolder + "concurrent"),partitions,2).run();
+
+        assertEquals(2,processed);
+        for (String file : List.of("lampion/test/examples/Example.java","lampion/test/examples/Example2.java")) {
+            assertEquals(Files.readString(Path.of(outputTestFolder,"sequential",file)),
+                    Files.readString(Path.of(outputTestFolder,"concurrent",file)));
+        }
+    }
+
+    @Test
+    void testConstructor_zeroThreads_shouldThrowException(){
+        assertThrows(UnsupportedOperationException.class,
+                () -> new PartitionedRun(() -> makeEngine(outputTestFolder),List.of(),0));
+    }
+
+    private static Engine makeEngine(String output){
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfTrueTransformer());
+        Engine engine = new Engine(pathToTestFileFolder,output,registry);
+        engine.setNumberOfTransformationsPerScope(2, Engine.TransformationScope.perClassEach);
+        engine.setDeriveSeedsPerElement(true);
+        return engine;
+    }
+
+    @Tag("System")
+    @Tag("File")
+    @Test
+    void testRun_failingFile_withErrorReport_shouldQuarantineOnlyThatFile() throws IOException {
+        ErrorReport report = new ErrorReport();
+        var partitions = List.of(List.of(Path.of(pathToTestFileFolder,"example.java"),Path.of(pathToTestFileFolder,"example2.java")));
+
+        PartitionedRun run = new PartitionedRun(makeFailingEngine(outputTestFolder),partitions);
+        run.setErrorReport(report);
+        run.run();
+        report.write(Path.of(outputTestFolder));
+
+        assertEquals(1,report.getQuarantinedFiles());
+        assertTrue(Files.exists(Path.of(outputTestFolder,"lampion/test/examples/Example.java")));
+        assertFalse(Files.exists(Path.of(outputTestFolder,"lampion/test/examples/Example2.java")));
+        String written = Files.readString(Path.of(outputTestFolder,ErrorReport.REPORT_FILE));
+        assertTrue(written.contains("stage=transform"));
+        assertTrue(written.contains("example2.java"));
+    }
+
+    @Tag("System")
+    @Tag("File")
+    @Test
+    void testRun_failingFile_withDerivedSeeds_retriedFilesShouldMatchRunWithoutFailure() throws IOException {
+        var failingPartitions = List.of(List.of(Path.of(pathToTestFileFolder,"example.java"),Path.of(pathToTestFileFolder,"example2.java")));
+        Engine failing = makeFailingEngine(outputTestFolder + "retried");
+        failing.setDeriveSeedsPerElement(true);
+        PartitionedRun retried = new PartitionedRun(failing,failingPartitions);
+        retried.setErrorReport(new ErrorReport());
+        retried.run();
+
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfTrueTransformer());
+        Engine plain = new Engine(pathToTestFileFolder,outputTestFolder + "plain",registry);
+        plain.setNumberOfTransformationsPerScope(1, Engine.TransformationScope.perClassEach);
+        plain.setDeriveSeedsPerElement(true);
+        new PartitionedRun(plain,List.of(List.of(Path.of(pathToTestFileFolder,"example.java")))).run();
+
+        assertEquals(Files.readString(Path.of(outputTestFolder,"plain","lampion/test/examples/Example.java")),
+                Files.readString(Path.of(outputTestFolder,"retried","lampion/test/examples/Example.java")));
+    }
+
+    @Test
+    void testRun_failingFile_withoutErrorReport_shouldThrowException() {
+        var partitions = List.of(List.of(Path.of(pathToTestFileFolder,"example.java"),Path.of(pathToTestFileFolder,"example2.java")));
+
+        assertThrows(IllegalStateException.class, () -> new PartitionedRun(makeFailingEngine(outputTestFolder),partitions).run());
+    }
+
+    /**
+     * Builds an engine that fails on every element of example2.java.
+     */
+    static Engine makeFailingEngine(String output){
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfTrueTransformer() {
+            @Override
+            public TransformationResult applyAtRandom(CtElement ast) {
+                if (ast.getPosition().getFile().getName().equals("example2.java")) {
+                    throw new IllegalStateException("Pathological file");
+                }
+                return super.applyAtRandom(ast);
+            }
+        });
+        Engine engine = new Engine(pathToTestFileFolder,output,registry);
+        engine.setNumberOfTransformationsPerScope(1, Engine.TransformationScope.perClassEach);
+        return engine;
+    }
+}
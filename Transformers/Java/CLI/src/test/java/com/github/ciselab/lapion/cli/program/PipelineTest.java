@@ -0,0 +1,98 @@
+package com.github.ciselab.lapion.cli.program;
+
+import static com.github.ciselab.lampion.cli.program.App.WriteAST;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.ciselab.lampion.cli.program.ErrorReport;
+import com.github.ciselab.lampion.cli.program.Pipeline;
+import com.github.ciselab.lampion.core.program.Engine;
+import com.github.ciselab.lampion.core.transformations.TransformerRegistry;
+import com.github.ciselab.lampion.core.transformations.transformers.AddNeutralElementTransformer;
+import com.github.ciselab.lampion.core.transformations.transformers.IfTrueTransformer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import spoon.Launcher;
+import spoon.reflect.CtModel;
+
+public class PipelineTest {
+
+    private static String pathToTestFileFolder = "./src/test/resources/javafiles/javafiles_perMethodEach";
+    private static String outputTestFolder = "./src/test/resources/pipeline_output/";
+    private static String expectedJavaFile = "lampion/test/examples/Example.java";
+
+    @AfterEach
+    public void folder_cleanup() throws IOException {
+        if(Files.exists(Paths.get(outputTestFolder))) {
+            Files.walk(Paths.get(outputTestFolder))
+                    .sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    @Test
+    void testConstructor_zeroQueueDepth_shouldThrowException(){
+        Engine engine = new Engine(pathToTestFileFolder,outputTestFolder,new TransformerRegistry("Test"));
+
+        assertThrows(UnsupportedOperationException.class, () -> new Pipeline(engine,0));
+    }
+
+    @Tag("System")
+    @Tag("File")
+    @Test
+    void testRun_perClassEach_shouldProduceSameOutputAsWholeModel() throws IOException {
+        Engine whole = buildEngine(outputTestFolder + "whole");
+        Launcher launcher = new spoon.Launcher();
+        launcher.addInputResource(pathToTestFileFolder);
+        CtModel codeRoot = launcher.buildModel();
+        launcher.getFactory().getEnvironment().setAutoImports(false);
+        WriteAST(whole.run(codeRoot), launcher);
+
+        Engine pipelined = buildEngine(outputTestFolder + "pipelined");
+        long processed = new Pipeline(pipelined,1).run(List.of(
+                Path.of(pathToTestFileFolder,"example.java"),
+                Path.of(pathToTestFileFolder,"example2.java")));
+
+        assertEquals(2,processed);
+        assertEquals(
+                Files.readString(Path.of(outputTestFolder,"whole",expectedJavaFile)),
+                Files.readString(Path.of(outputTestFolder,"pipelined",expectedJavaFile)));
+    }
+
+    @Tag("System")
+    @Tag("File")
+    @Test
+    void testRun_failingFile_withErrorReport_shouldContinueWithOtherFiles() {
+        ErrorReport report = new ErrorReport();
+        Pipeline pipeline = new Pipeline(PartitionedRunTest.makeFailingEngine(outputTestFolder),1);
+        pipeline.setErrorReport(report);
+
+        long printed = pipeline.run(List.of(
+                Path.of(pathToTestFileFolder,"example.java"),Path.of(pathToTestFileFolder,"example2.java")));
+
+        assertEquals(1,printed);
+        assertEquals(1,report.getQuarantinedFiles());
+        assertTrue(Files.exists(Path.of(outputTestFolder,expectedJavaFile)));
+    }
+
+    private static Engine buildEngine(String output){
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfTrueTransformer(5));
+        registry.registerTransformer(new AddNeutralElementTransformer(5));
+
+        Engine engine = new Engine(pathToTestFileFolder,output,registry);
+        engine.setNumberOfTransformationsPerScope(3, Engine.TransformationScope.perClassEach);
+        engine.setDeriveSeedsPerElement(true);
+        return engine;
+    }
+}
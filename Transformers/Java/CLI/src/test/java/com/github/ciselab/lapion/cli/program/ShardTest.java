@@ -0,0 +1,128 @@
+package com.github.ciselab.lapion.cli.program;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.ciselab.lampion.cli.program.Shard;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+public class ShardTest {
+
+    private static String pathToTestFileFolder = "./src/test/resources/javafiles";
+    private static String outputTestFolder = "./src/test/resources/shard_output/";
+
+    @AfterEach
+    public void folder_cleanup() throws IOException {
+        if(Files.exists(Paths.get(outputTestFolder))) {
+            Files.walk(Paths.get(outputTestFolder))
+                    .sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    @Test
+    void testParse_validShard_shouldBeParsed(){
+        Shard shard = Shard.parse("2/8");
+
+        assertEquals(2,shard.index);
+        assertEquals(8,shard.total);
+    }
+
+    @Test
+    void testParse_indexOutOfBounds_shouldThrowException(){
+        assertThrows(UnsupportedOperationException.class, () -> Shard.parse("0/8"));
+        assertThrows(UnsupportedOperationException.class, () -> Shard.parse("9/8"));
+    }
+
+    @Test
+    void testParse_malformed_shouldThrowException(){
+        assertThrows(UnsupportedOperationException.class, () -> Shard.parse("2"));
+        assertThrows(UnsupportedOperationException.class, () -> Shard.parse("a/b"));
+    }
+
+    @Test
+    void testSelects_everyPathIsInExactlyOneShard(){
+        List<Shard> shards = IntStream.rangeClosed(1,5).mapToObj(i -> new Shard(i,5)).collect(Collectors.toList());
+
+        for (int i = 0; i < 100; i++) {
+            String path = "some/package/Class" + i + ".java";
+            assertEquals(1, shards.stream().filter(s -> s.selects(path)).count());
+        }
+    }
+
+    @Tag("File")
+    @Test
+    void testSelectInputFiles_allShards_shouldCoverAllFilesOnce() throws IOException {
+        Path input = Path.of(pathToTestFileFolder);
+        long allFiles = Files.walk(input).filter(f -> f.toString().endsWith(".java")).count();
+
+        long selected = 0;
+        for (int i = 1; i <= 3; i++) {
+            selected += new Shard(i,3).selectInputFiles(input).size();
+        }
+
+        assertEquals(allFiles,selected);
+    }
+
+    @Tag("File")
+    @Test
+    void testMerge_allShards_shouldContainAllFiles() throws IOException {
+        Properties config = new Properties();
+        config.put("seed","5");
+        writeShard(new Shard(1,2),"a/First.java",config);
+        writeShard(new Shard(2,2),"b/Second.java",config);
+
+        Path merged = Path.of(outputTestFolder,"merged");
+        Shard.merge(merged, List.of(Path.of(outputTestFolder,"1"),Path.of(outputTestFolder,"2")));
+
+        assertTrue(Files.exists(merged.resolve("a/First.java")));
+        assertTrue(Files.exists(merged.resolve("b/Second.java")));
+        assertTrue(Files.exists(merged.resolve(Shard.MERGED_MANIFEST_FILE)));
+    }
+
+    @Tag("File")
+    @Test
+    void testMerge_missingShard_shouldThrowException() throws IOException {
+        Properties config = new Properties();
+        writeShard(new Shard(1,2),"a/First.java",config);
+
+        assertThrows(UnsupportedOperationException.class,
+                () -> Shard.merge(Path.of(outputTestFolder,"merged"), List.of(Path.of(outputTestFolder,"1"))));
+    }
+
+    @Tag("File")
+    @Test
+    void testMerge_differentConfigurations_shouldThrowException() throws IOException {
+        Properties config = new Properties();
+        config.put("seed","5");
+        writeShard(new Shard(1,2),"a/First.java",config);
+        Properties otherConfig = new Properties();
+        otherConfig.put("seed","6");
+        writeShard(new Shard(2,2),"b/Second.java",otherConfig);
+
+        assertThrows(UnsupportedOperationException.class,
+                () -> Shard.merge(Path.of(outputTestFolder,"merged"),
+                        List.of(Path.of(outputTestFolder,"1"),Path.of(outputTestFolder,"2"))));
+    }
+
+    private static void writeShard(Shard shard, String file, Properties config) throws IOException {
+        Path shardOutput = Path.of(outputTestFolder, String.valueOf(shard.index));
+        Files.createDirectories(shardOutput.resolve(file).getParent());
+        Files.writeString(shardOutput.resolve(file), "class " + shard.index + " {}");
+        shard.writeManifest(shardOutput, config);
+    }
+}
@@ -0,0 +1,122 @@
+package com.github.ciselab.lapion.cli.program;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.ciselab.lampion.cli.program.JsonlReader;
+import com.github.ciselab.lampion.cli.program.StreamInput;
+import com.github.ciselab.lampion.core.program.Engine;
+import com.github.ciselab.lampion.core.transformations.TransformerRegistry;
+import com.github.ciselab.lampion.core.transformations.transformers.IfTrueTransformer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+public class StreamInputTest {
+
+    private static Path dataset = Path.of("./src/test/resources/jsonl/java.jsonl");
+    private static Path pathToTestFileFolder = Path.of("./src/test/resources/javafiles/javafiles_with_comments");
+    private static String outputTestFolder = "./src/test/resources/stream_input_output/";
+
+    @AfterEach
+    public void folder_cleanup() throws IOException {
+        if(Files.exists(Paths.get(outputTestFolder))) {
+            Files.walk(Paths.get(outputTestFolder))
+                    .sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    @Test
+    void testRun_jsonlToStream_shouldWriteRecordsInOrder() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long sources = new StreamInput(makeEngine(Engine.TransformationScope.perClass),
+                Files.newInputStream(dataset), out, StreamInput.Format.jsonl, 1).run();
+
+        assertEquals(3, sources);
+        List<String> input = Files.readAllLines(dataset, StandardCharsets.UTF_8);
+        List<String> output = out.toString(StandardCharsets.UTF_8).lines().toList();
+        assertEquals(input.size(), output.size());
+        for (int i = 0; i < input.size(); i++) {
+            Map<String, Object> original = JsonlReader.parseRecord(input.get(i));
+            Map<String, Object> written = JsonlReader.parseRecord(output.get(i));
+            for (String key : List.of("repo", "path", "func_name", "sha", "url")) {
+                assertEquals(original.get(key), written.get(key), key);
+            }
+            assertTrue(((String) written.get("code")).contains("if (true)"));
+        }
+    }
+
+    @Test
+    void testRun_nulSeparatedToStream_shouldWriteEveryUnit() throws IOException {
+        ByteArrayOutputStream in = new ByteArrayOutputStream();
+        List<Path> files;
+        try (var listed = Files.list(pathToTestFileFolder)) {
+            files = listed.sorted().toList();
+        }
+        for (Path file : files) {
+            in.write(Files.readAllBytes(file));
+            in.write(0);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long sources = new StreamInput(makeEngine(Engine.TransformationScope.perClass),
+                new ByteArrayInputStream(in.toByteArray()), out, StreamInput.Format.nul, 2).run();
+
+        assertEquals(files.size(), sources);
+        String[] units = out.toString(StandardCharsets.UTF_8).split("\0");
+        assertEquals(files.size(), units.length);
+        // The units keep the order of the input, whose files are named differently from their classes
+        for (int i = 0; i < units.length; i++) {
+            Matcher declaration = Pattern.compile("class \\w+").matcher(Files.readString(files.get(i)));
+            assertTrue(declaration.find());
+            assertTrue(units[i].contains(declaration.group()), declaration.group());
+        }
+    }
+
+    @Tag("File")
+    @Test
+    void testRun_jsonlToDirectory_shouldWriteJavaFiles() throws IOException {
+        long sources = new StreamInput(makeEngine(Engine.TransformationScope.perClass),
+                Files.newInputStream(dataset), null, StreamInput.Format.jsonl, 2).run();
+
+        assertEquals(3, sources);
+        try (var written = Files.walk(Path.of(outputTestFolder))) {
+            assertEquals(3, written.filter(f -> f.toString().endsWith(".java")).count());
+        }
+    }
+
+    @Test
+    void testRun_globalScope_shouldThrowException() {
+        StreamInput input = new StreamInput(makeEngine(Engine.TransformationScope.global),
+                new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream(), StreamInput.Format.nul, 1);
+
+        assertThrows(UnsupportedOperationException.class, input::run);
+    }
+
+    private static Engine makeEngine(Engine.TransformationScope scope) {
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        IfTrueTransformer ifTrueTransformer = new IfTrueTransformer();
+        ifTrueTransformer.setTryingToCompile(false);
+        registry.registerTransformer(ifTrueTransformer);
+        Engine engine = new Engine("-", outputTestFolder, registry);
+        engine.setNumberOfTransformationsPerScope(1, scope);
+        return engine;
+    }
+}
@@ -0,0 +1,34 @@
+
+    package android.guava.src.com.google.common.io; 
+    /*
+    python_helper_header_start
+    ur_repo google/guava ur_repo
+    ur_url https://github.com/google/guava/blob/7155d12b70a2406fa84d94d4b8b3bc108e89abfd/android/guava/src/com/google/common/io/CharSource.java#L208-L222 ur_url
+    ur_path android/guava/src/com/google/common/io/CharSource.java ur_path
+    ur_func_name CharSource.copyTo ur_func_name
+    ur_docstring b'Copies the contents of this source to the given sink.\n\n@return the number of characters copied\n@throws IOException if an I/O error occurs while reading from this source or writing to {@code\nsink}' ur_docstring
+    ur_doctokens ['Copies', 'the', 'contents', 'of', 'this', 'source', 'to', 'the', 'given', 'sink', '.'] ur_doctokens
+    ur_sha 7155d12b70a2406fa84d94d4b8b3bc108e89abfd ur_sha
+    ur_partition valid ur_partition
+    python_helper_header_end
+    */
+    public class CharSource_copyTo {
+
+        @CanIgnoreReturnValue
+  public long copyTo(CharSink sink) throws IOException {
+    checkNotNull(sink);
+
+    Closer closer = Closer.create();
+    try {
+      Reader reader = closer.register(openStream());
+      Writer writer = closer.register(sink.openStream());
+      return CharStreams.copy(reader, writer);
+    } catch (Throwable e) {
+      throw closer.rethrow(e);
+    } finally {
+      closer.close();
+    }
+  }
+        
+    }
+    
\ No newline at end of file
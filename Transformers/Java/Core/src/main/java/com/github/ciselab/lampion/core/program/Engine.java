@@ -1,19 +1,34 @@
 package com.github.ciselab.lampion.core.program;
 
 import com.github.ciselab.lampion.core.program.EngineResult;
+import com.github.ciselab.lampion.core.support.SeedDerivation;
 import com.github.ciselab.lampion.core.transformations.*;
+import com.github.ciselab.lampion.core.transformations.transformers.BaseTransformer;
 import com.github.ciselab.lampion.core.transformations.transformers.RemoveAllCommentsTransformer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import spoon.SpoonException;
+import spoon.compiler.Environment;
 import spoon.reflect.CtModel;
+import spoon.reflect.code.CtStatement;
+import spoon.reflect.cu.SourcePosition;
 import spoon.reflect.declaration.CtClass;
 import spoon.reflect.declaration.CtElement;
 import spoon.reflect.declaration.CtMethod;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.visitor.filter.TypeFilter;
 
+import java.io.File;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 /**
  * This class runs the primary parts of the Program.
@@ -34,6 +49,7 @@ public class Engine {
     public static long globalRandomSeed = 2020;
 
     Random random = new Random(globalRandomSeed);
+    private long randomSeed = globalRandomSeed; // The seed of "random", used to derive the per-element streams
 
     String codeDirectory;
     String outputDirectory;
@@ -66,6 +82,11 @@ public class Engine {
 
     private boolean writeJavaOutput = true; // This switch enables/disables pretty printing of altered java files
 
+    private int parallelism = 1; // The number of threads applying transformations, 1 runs everything sequentially
+    private boolean deriveSeedsPerElement = false; // Whether every class gets random streams derived from its name and file
+    private double compileSampleRate = 1.0; // The fraction of modified classes verified by compiling, see "setCompileSampleRate"
+    private CompilationCache compilationCache = CompilationCache.disabled(); // The compilations to skip, see "setCompilationCache"
+
     public Engine(String codeDirectory, String outputDirectory, TransformerRegistry registry){
         // Sanity Checks
         if (codeDirectory == null || codeDirectory.isEmpty() || codeDirectory.isBlank()) {
@@ -107,6 +128,9 @@ public class Engine {
         // as maybe there are additional Methods created. This way, only ur-elements will be altered.
         classes = codeRoot.getElements(c -> c instanceof CtClass);
         methods = codeRoot.getElements(c -> c instanceof CtMethod);
+        // The engine can be run on several models, hence the iteration starts over for every model
+        classIndex = 0;
+        methodIndex = 0;
 
         logger.info("Found " + classes.size() + " Classes and "
                 + codeRoot.getElements(f -> f instanceof CtMethod).size() + " methods at " + codeDirectory );
@@ -146,29 +170,55 @@ public class Engine {
         // Pick a random transformer
         // apply the transformer and add the result to the aggregation
         long transformationFailures = 0;
-        for (long a = 0; a < totalTransformationsToDo; a++) {
-            try {
-                CtElement toAlter = getNextCtElement();
-
-                int index = random.nextInt(quantifiedTransformers.size());
-                Transformer transformer = quantifiedTransformers.get(index);
-
-                TransformationResult result = transformer.applyAtRandom(toAlter);
-                results.add(result);
-
-                if (result != null && ! result.equals(new EmptyTransformationResult())){
-                    // As we removed the Manifest (for now?) we just log a debug statement of what was done
-                    logger.debug("Successfully applied " + result.getTransformationName() +
-                            " to Element(Hash):" + result.getTransformedElement().toString().hashCode());
+        Set<CtType<?>> modifiedTypes = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<CtType<?>, List<String>> appliedTransformers;
+        Map<String, List<String>> compileFailures = new TreeMap<>();
+        Environment environment = classes.get(0).getFactory().getEnvironment();
+        boolean autoImportsAfterRun = prepareEnvironment(environment, quantifiedTransformers);
+        try {
+            boolean partitioned = (parallelism > 1 || deriveSeedsPerElement) && supportsPartitioning(quantifiedTransformers);
+            if (partitioned) {
+                transformationFailures = applyPartitioned(totalTransformationsToDo, quantifiedTransformers, results,
+                        modifiedTypes);
+            } else {
+                for (long a = 0; a < totalTransformationsToDo; a++) {
+                    CtElement toAlter = null;
+                    try {
+                        toAlter = getNextCtElement();
+
+                        int index = random.nextInt(quantifiedTransformers.size());
+                        Transformer transformer = quantifiedTransformers.get(index);
+
+                        TransformationResult result = transformer.applyAtRandom(toAlter);
+                        results.add(result);
+                        markModified(modifiedTypes, result, toAlter);
+
+                        if (result != null && ! result.equals(new EmptyTransformationResult())){
+                            // As we removed the Manifest (for now?) we just log a debug statement of what was done
+                            logger.debug("Successfully applied " + result.getTransformationName() +
+                                    " to Element(Hash):" + result.getTransformedElement().toString().hashCode());
+                        }
+                    } catch (SpoonException spoonException){
+                        //TODO: Redo-Logic
+                        transformationFailures++;
+                        // A failed transformation might have left its class altered
+                        markModified(modifiedTypes, null, toAlter);
+                    }
                 }
-            } catch (SpoonException spoonException){
-                //TODO: Redo-Logic
-                transformationFailures++;
             }
+            // Step 2.4:
+            // Repair parent relationships which may have broken
+            // classes.stream().forEach(c -> c.updateAllParentsBelow());
+            // Compiling replaces the elements of a class, so the transformers of the classes are collected beforehand
+            appliedTransformers = collectAppliedTransformers(results);
+            // Concurrent partitions always defer, the classes are only compiled here once all of them finished
+            if (isDeferringCompilation(quantifiedTransformers)
+                    || (partitioned && parallelism > 1 && isCompiling(quantifiedTransformers))) {
+                transformationFailures += compileDeferred(modifiedTypes, appliedTransformers, compileFailures);
+            }
+        } finally {
+            environment.setAutoImports(autoImportsAfterRun);
         }
-        // Step 2.4:
-        // Repair parent relationships which may have broken
-        // classes.stream().forEach(c -> c.updateAllParentsBelow());
 
         Instant endOfTransformations = Instant.now();
         logger.info("Applying the Transformations took "
@@ -188,6 +238,7 @@ public class Engine {
                 for (var c : classes){
                     TransformationResult removeCommentResult = commentRemover.applyAtRandom(c);
                     results.add(removeCommentResult);
+                    markModified(modifiedTypes, null, c);
                     logger.info("Removed all Comments from the Java Output files");
                 }
             } catch (SpoonException spoonException) {
@@ -196,13 +247,427 @@ public class Engine {
         }
         classes.forEach(c -> c.updateAllParentsBelow());
 
+        logger.info(modifiedTypes.size() + " of " + codeRoot.getAllTypes().size() + " top-level types were modified");
+
         builder.totalTransformations(totalTransformationsToDo)
                 .transformationFailures(transformationFailures)
+                .modifiedTypes(modifiedTypes)
+                .compileFailures(compileFailures)
+                .appliedTransformers(appliedTransformers)
                 .transformationResults(results);
 
         return builder.build();
     }
 
+    /**
+     * Runs several differently configured engines ("variants") on the same code, which is parsed only once.
+     *
+     * Every variant runs on its own fork of the untransformed model (see ModelSnapshot), so the variants do not
+     * see each other's transformations. An engine carries its whole configuration - transformers, distribution,
+     * number of transformations, scope, seed and output directory - hence the variants are simply engines.
+     * The variants run one after another, and every result is handed to the consumer before the next fork is made,
+     * so only one fork has to be held in memory at a time.
+     *
+     * @param codeRoot the untransformed model, it is not altered
+     * @param variants the engines to run, each on its own fork
+     * @param onResult receives the result of every variant, in order of the variants, e.g. to print it
+     */
+    public static void runVariants(CtModel codeRoot, List<Engine> variants, Consumer<EngineResult> onResult) {
+        Instant start = Instant.now();
+        ModelSnapshot snapshot = ModelSnapshot.of(codeRoot);
+        logger.info("Took a snapshot of " + snapshot.size() + " bytes to run " + variants.size() + " variants on");
+        for (Engine variant : variants) {
+            onResult.accept(variant.run(snapshot.fork()));
+        }
+        logger.info("Running " + variants.size() + " variants took " + Duration.between(start, Instant.now()));
+    }
+
+    /**
+     * Runs several differently configured engines on the same code and returns all results.
+     * As every result keeps its fork of the model, prefer the variant with a consumer for big models.
+     *
+     * @param codeRoot the untransformed model, it is not altered
+     * @param variants the engines to run, each on its own fork
+     * @return the results of the variants, in order of the variants
+     */
+    public static List<EngineResult> runVariants(CtModel codeRoot, List<Engine> variants) {
+        List<EngineResult> results = new ArrayList<>();
+        runVariants(codeRoot, variants, results::add);
+        return results;
+    }
+
+    /**
+     * Applies the transformations partitioned by top-level type, running the partitions concurrently if parallelism
+     * is greater than one.
+     *
+     * The elements are drawn up front with the engines random, like the sequential run does.
+     * Everything else is drawn from random streams owned by the partition, derived from the seeds and a stable key
+     * of the type (see "seedKeyOf"): which transformer is applied and where the transformer applies it.
+     * Hence, the outcome for a type does not depend on the thread, on the processing order or (for the scopes
+     * perClassEach and perMethodEach) on which other types are part of the run.
+     * The results are returned in the order they were planned in.
+     * With several threads, the partitions are scheduled largest first (see "estimateCost")
+     * and the utilisation of every thread is logged afterwards.
+     *
+     * @param totalTransformationsToDo the number of transformations to apply
+     * @param quantifiedTransformers the transformers, quantified by distribution, to pick from
+     * @param results the list to which the results are added, in planned order
+     * @param modifiedTypes the set to which the altered top-level types are added
+     * @return the number of transformations that failed with a SpoonException
+     */
+    private long applyPartitioned(long totalTransformationsToDo, List<Transformer> quantifiedTransformers,
+                                  List<TransformationResult> results, Set<CtType<?>> modifiedTypes) {
+        // Draw the elements - for the global scopes this is the only choice that depends on the whole model
+        List<PlannedTransformation> plan = new ArrayList<>();
+        Map<CtType, List<PlannedTransformation>> partitions = new LinkedHashMap<>();
+        for (long a = 0; a < totalTransformationsToDo; a++) {
+            PlannedTransformation planned = new PlannedTransformation(getNextCtElement());
+
+            plan.add(planned);
+            partitions.computeIfAbsent(topLevelTypeOf(planned.toAlter), k -> new ArrayList<>()).add(planned);
+        }
+        logger.info("Applying the transformations in " + partitions.size()
+                + " partitions on " + parallelism + " threads");
+
+        // Every transformation re-compiles its whole class, so big classes with many transformations dominate.
+        // Scheduling them first keeps them from becoming the long tail of the run.
+        List<Map.Entry<CtType, List<PlannedTransformation>>> schedule = new ArrayList<>(partitions.entrySet());
+        if (parallelism > 1) {
+            Map<CtType, Long> costs = new HashMap<>();
+            schedule.forEach(e -> costs.put(e.getKey(), estimateCost(e.getKey(), e.getValue().size())));
+            schedule.sort(Comparator.comparingLong((Map.Entry<CtType, List<PlannedTransformation>> e)
+                    -> costs.get(e.getKey())).reversed());
+        }
+
+        WorkerUtilisation utilisation = new WorkerUtilisation();
+        List<Callable<Long>> tasks = new ArrayList<>();
+        for (var partition : schedule) {
+            tasks.add(utilisation.track(
+                    () -> applyPartition(partition.getKey(), partition.getValue(), quantifiedTransformers)));
+        }
+
+        long transformationFailures = 0;
+        if (parallelism == 1) {
+            for (Callable<Long> task : tasks) {
+                try {
+                    transformationFailures += task.call();
+                } catch (Exception e) {
+                    throw e instanceof RuntimeException runtimeException
+                            ? runtimeException
+                            : new IllegalStateException("A partition failed while applying transformations", e);
+                }
+            }
+        } else {
+            // A fixed pool takes the tasks strictly in order, which keeps the largest-first schedule
+            ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+            try {
+                for (Future<Long> finishedPartition : pool.invokeAll(tasks)) {
+                    transformationFailures += finishedPartition.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while applying transformations", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw new IllegalStateException("A partition failed while applying transformations", e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+            utilisation.finish();
+            utilisation.log(logger);
+        }
+
+        for (PlannedTransformation planned : plan) {
+            if (planned.applied) {
+                results.add(planned.result);
+            }
+            markModified(modifiedTypes, planned.result, planned.toAlter);
+        }
+        return transformationFailures;
+    }
+
+    /**
+     * Applies the planned transformations of a single partition, in order, with partition-owned random streams.
+     *
+     * @param type the top-level type that all planned elements belong to
+     * @param planned the transformations planned for the type
+     * @param quantifiedTransformers the transformers, quantified by distribution, to pick from
+     * @return the number of transformations that failed with a SpoonException
+     */
+    private long applyPartition(CtType type, List<PlannedTransformation> planned,
+                                List<Transformer> quantifiedTransformers) {
+        String key = seedKeyOf(type);
+        Random partitionRandom = new Random(SeedDerivation.derive(randomSeed, key));
+        Map<Transformer, Transformer> partitionTransformers = new HashMap<>();
+
+        long transformationFailures = 0;
+        for (PlannedTransformation p : planned) {
+            try {
+                int index = partitionRandom.nextInt(quantifiedTransformers.size());
+                Transformer transformer = partitionTransformers.computeIfAbsent(quantifiedTransformers.get(index),
+                        t -> copyForPartition((BaseTransformer) t, key));
+
+                TransformationResult result = transformer.applyAtRandom(p.toAlter);
+                p.result = result;
+                p.applied = true;
+
+                if (result != null && ! result.equals(new EmptyTransformationResult())){
+                    logger.debug("Successfully applied " + result.getTransformationName() +
+                            " to Element(Hash):" + result.getTransformedElement().toString().hashCode());
+                }
+            } catch (SpoonException spoonException){
+                transformationFailures++;
+            }
+        }
+        return transformationFailures;
+    }
+
+    /**
+     * Copies the transformer for the partition of the key.
+     * Compiling a class reads the shared model (e.g. the declarations its references resolve to) and builds into
+     * its factory, while the other partitions keep altering their classes. Hence, the copies of a concurrent run
+     * defer their compilation, which runs on the thread of the engine after all partitions finished.
+     * The transformed code is the same, see "setDeferCompilation".
+     */
+    private BaseTransformer copyForPartition(BaseTransformer transformer, String key) {
+        BaseTransformer copy = transformer.copyFor(key);
+        if (parallelism > 1) {
+            copy.setDeferringCompilation(true);
+        }
+        return copy;
+    }
+
+    /**
+     * Builds the key from which the random streams of a type are derived.
+     * It consists of the qualified name and the path of the file relative to the code directory,
+     * which keeps it stable across machines, input locations and the other files of the run.
+     * Types without a file (e.g. built from virtual sources) are identified by their qualified name only.
+     *
+     * @param type the top-level type to identify
+     * @return the stable key of the type
+     */
+    String seedKeyOf(CtType type) {
+        SourcePosition position = type.getPosition();
+        if (!position.isValidPosition() || position.getFile() == null) {
+            return type.getQualifiedName();
+        }
+        Path file = position.getFile().toPath().toAbsolutePath().normalize();
+        Path root = Path.of(codeDirectory).toAbsolutePath().normalize();
+        String relativePath = file.startsWith(root) ? root.relativize(file).toString() : "";
+        if (relativePath.isEmpty()) {
+            relativePath = file.getFileName().toString();
+        }
+        return type.getQualifiedName() + "@" + relativePath.replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Estimates the work for a partition, which is dominated by compiling the type after every transformation.
+     * The length of the source is cheap to get and a good proxy for the compile time,
+     * for types without a position (e.g. created ones) the number of statements is used instead.
+     *
+     * @param type the top-level type of the partition
+     * @param transformations the number of transformations planned for the type
+     * @return an estimate of the work, only meaningful in relation to other estimates
+     */
+    static long estimateCost(CtType type, int transformations) {
+        SourcePosition position = type.getPosition();
+        long size = position != null && position.isValidPosition()
+                ? position.getSourceEnd() - position.getSourceStart() + 1
+                : type.getElements(new TypeFilter<>(CtStatement.class)).size() * 40L;
+        return size * transformations;
+    }
+
+    /**
+     * Compiles every modified class once, verifying the code that the transformations left in place.
+     * With a compile sample rate below 1, only the sampled classes are compiled (see "isSampledForCompilation").
+     * A class that does not compile is counted as a failed transformation, like the failing transformation
+     * would have been when compiling after every transformation, and reported with the transformers applied to it.
+     *
+     * @param modifiedTypes the top-level types altered by the transformations
+     * @param appliedTransformers the names of the transformers applied to the classes
+     * @param compileFailures the map to which the qualified names of the failed classes are added,
+     *                        with the names of the transformers applied to them
+     * @return the number of classes that failed to compile
+     */
+    private long compileDeferred(Set<CtType<?>> modifiedTypes, Map<CtType<?>, List<String>> appliedTransformers,
+                                 Map<String, List<String>> compileFailures) {
+        Instant start = Instant.now();
+        long failures = 0;
+        long compiled = 0;
+        long classes = 0;
+        for (CtType<?> type : modifiedTypes) {
+            if (!(type instanceof CtClass<?> modifiedClass)) {
+                continue;
+            }
+            classes++;
+            if (!isSampledForCompilation(modifiedClass)) {
+                continue;
+            }
+            try {
+                BaseTransformer.compile(modifiedClass, compilationCache);
+                compiled++;
+            } catch (SpoonException spoonException) {
+                List<String> transformers = appliedTransformers.getOrDefault(modifiedClass, List.of());
+                logger.warn("The transformed class " + modifiedClass.getQualifiedName()
+                        + " did not compile after applying " + transformers, spoonException);
+                compileFailures.put(modifiedClass.getQualifiedName(), transformers);
+                failures++;
+            }
+        }
+        logger.info("Compiling " + (compiled + failures) + " of " + classes + " transformed classes took "
+                + Duration.between(start, Instant.now()));
+        if (compilationCache.isEnabled()) {
+            logger.info(compilationCache.getHits() + " of " + compilationCache.getLookups()
+                    + " compilations so far were answered by the compilation cache");
+        }
+        return failures;
+    }
+
+    /**
+     * Collects the names of the transformers that were applied to every top-level type, in order of their first application.
+     *
+     * @param results the results of the transformations
+     * @return the names of the transformers per top-level type, compared by identity
+     */
+    private static Map<CtType<?>, List<String>> collectAppliedTransformers(List<TransformationResult> results) {
+        Map<CtType<?>, Set<String>> transformersByType = new IdentityHashMap<>();
+        for (TransformationResult result : results) {
+            if (result == null || result.equals(new EmptyTransformationResult()) || result.getTransformedElement() == null) {
+                continue;
+            }
+            try {
+                transformersByType.computeIfAbsent(topLevelTypeOf(result.getTransformedElement()), t -> new LinkedHashSet<>())
+                        .add(result.getTransformationName());
+            } catch (RuntimeException e) {
+                // The element is no longer attached to a type, e.g. replaced by a later transformation
+            }
+        }
+        Map<CtType<?>, List<String>> appliedTransformers = new IdentityHashMap<>();
+        transformersByType.forEach((type, names) -> appliedTransformers.put(type, List.copyOf(names)));
+        return appliedTransformers;
+    }
+
+    /**
+     * Decides whether a modified class is compiled, for a compile sample rate below 1.
+     * The decision is derived from the seed and the stable key of the class (see "seedKeyOf"),
+     * so the same classes are verified again in a rerun with the same seed, regardless of the other classes or threads.
+     *
+     * @param type the top-level type to decide for
+     * @return true if the type is to be compiled, false otherwise
+     */
+    boolean isSampledForCompilation(CtType type) {
+        if (compileSampleRate >= 1) {
+            return true;
+        }
+        // The upper 53 bits as a double in [0,1), like Random.nextDouble.
+        // The prefix keeps the sample independent of the random stream of the partition.
+        double draw = (SeedDerivation.derive(randomSeed, "compile:" + seedKeyOf(type)) >>> 11) * 0x1.0p-53;
+        return draw < compileSampleRate;
+    }
+
+    /**
+     * Sets the flags of the environment that the transformers depend on, once for the whole run and on the thread
+     * of the engine, so that partitions running concurrently only ever read the environment they share.
+     * Transformers that do not set auto imports turn them off for the model, together with the tolerance for
+     * missing classes (see "BaseTransformer.setSetsAutoImports"). Compiling transformers need the auto imports off
+     * while transforming, as a class is compiled from its printed form without the imports of its file.
+     *
+     * @param environment the environment of the model to transform
+     * @param transformers the transformers that are going to be applied
+     * @return the auto imports to restore after the transformations
+     */
+    private static boolean prepareEnvironment(Environment environment, List<Transformer> transformers) {
+        if (transformers.stream().anyMatch(t -> t instanceof BaseTransformer b && !b.isSettingAutoImports())) {
+            environment.setAutoImports(false);
+            environment.setNoClasspath(false);
+            return false;
+        }
+        boolean autoImports = environment.isAutoImports();
+        if (transformers.stream().anyMatch(t -> t instanceof BaseTransformer b && b.isTryingToCompile())) {
+            environment.setAutoImports(false);
+        }
+        return autoImports;
+    }
+
+    private static boolean isCompiling(List<Transformer> transformers) {
+        return transformers.stream().anyMatch(t -> t instanceof BaseTransformer b && b.isTryingToCompile());
+    }
+
+    private static boolean isDeferringCompilation(List<Transformer> transformers) {
+        return transformers.stream()
+                .anyMatch(t -> t instanceof BaseTransformer b && b.isTryingToCompile() && b.isDeferringCompilation());
+    }
+
+    /**
+     * Partitioned runs need independent copies of every transformer, which only BaseTransformers can provide.
+     *
+     * @param transformers the transformers that are going to be applied
+     * @return true if all transformers can be copied, false otherwise
+     */
+    private boolean supportsPartitioning(List<Transformer> transformers) {
+        if (transformers.stream().allMatch(t -> t instanceof BaseTransformer)) {
+            return true;
+        }
+        logger.warn("Parallelism or per-element seeds are set, but the registry " + registry.name
+                + " contains transformers that cannot be copied - falling back to a single shared random stream.");
+        return false;
+    }
+
+    /**
+     * Adds the top-level type altered by a transformation to the modified types.
+     * Transformations that did not apply (empty results) alter nothing. If the transformation failed (no result)
+     * the type of the element is added nevertheless, as a failed transformation might have left it altered.
+     * If the altered type cannot be determined, every type is marked as modified to be on the safe side.
+     *
+     * @param modifiedTypes the set of modified types to add to
+     * @param result the result of the transformation, null if it failed
+     * @param toAlter the element the transformation was applied to, null if it was not drawn yet
+     */
+    private void markModified(Set<CtType<?>> modifiedTypes, TransformationResult result, CtElement toAlter) {
+        if (result != null && result.equals(new EmptyTransformationResult())) {
+            return;
+        }
+        CtElement altered = result != null && result.getTransformedElement() != null
+                ? result.getTransformedElement()
+                : toAlter;
+        try {
+            CtType<?> type = topLevelTypeOf(altered);
+            modifiedTypes.add(type);
+            compilationCache.refresh(type);
+        } catch (RuntimeException e) {
+            // e.g. no element or an element that is not (or no longer) attached to a type
+            classes.forEach(c -> modifiedTypes.add(c.getTopLevelType()));
+            classes.forEach(compilationCache::refresh);
+        }
+    }
+
+    /**
+     * Finds the partition of an element, which is the outermost type it is declared in.
+     * Nested classes are in the same partition as their outer class, as they are compiled together.
+     *
+     * @param element a class or method picked for transformation
+     * @return the top-level type containing the element
+     */
+    private static CtType topLevelTypeOf(CtElement element) {
+        CtType type = element instanceof CtType ? (CtType) element : element.getParent(CtType.class);
+        return type.getTopLevelType();
+    }
+
+    /**
+     * A single transformation that is planned for an element, and its outcome.
+     */
+    private static class PlannedTransformation {
+        final CtElement toAlter;
+        TransformationResult result;
+        boolean applied = false;  // false if the transformation failed with a SpoonException
+
+        PlannedTransformation(CtElement toAlter) {
+            this.toAlter = toAlter;
+        }
+    }
+
     /**
      * Getter for the code Directory field.
      * @return the code directory.
@@ -211,6 +676,14 @@ public class Engine {
         return codeDirectory;
     }
 
+    public String getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    public boolean getWriteJavaOutput() {
+        return writeJavaOutput;
+    }
+
     /**
      * Looks in the initially found classes/methods for the next specified element according to specified scope.
      * Classes and Methods are returned in a order dependent from structure of the program,
@@ -295,6 +768,14 @@ public class Engine {
         this.numberOfTransformationsPerScope = transformations;
     }
 
+    public long getNumberOfTransformationsPerScope() {
+        return numberOfTransformationsPerScope;
+    }
+
+    public TransformationScope getTransformationScope() {
+        return scope;
+    }
+
     /**
      * Whether to write to the output folder or not.
      * All other logic is still applied as usual.
@@ -323,6 +804,120 @@ public class Engine {
         return new HashMap<>();
     }
 
+    /**
+     * Sets the number of threads used to apply the transformations.
+     *
+     * With more than one thread, the transformations are partitioned by (top-level) class and the classes are
+     * transformed concurrently. Every class gets its own copies of the transformers and random streams derived
+     * per element, so the output only depends on the seed and not on the number of threads.
+     * It is identical to a sequential run with "setDeriveSeedsPerElement(true)" and the same seed,
+     * hence a parallelism above 1 also switches on the per-element seeds.
+     *
+     * No class is compiled while the partitions are transformed, as compiling reads and builds into the shared model.
+     * The compiling transformers defer their compilation (see "setDeferCompilation") to the end of the run,
+     * after all partitions finished. A class that does not compile is therefore reported for the class,
+     * instead of failing the transformation that broke it.
+     *
+     * @param parallelism the number of threads, 1 for a sequential run
+     * @throws UnsupportedOperationException for a parallelism smaller than 1
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new UnsupportedOperationException("Parallelism has to be at least 1");
+        }
+        this.parallelism = parallelism;
+        if (parallelism > 1) {
+            this.deriveSeedsPerElement = true;
+        }
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets whether the random streams are derived per element.
+     *
+     * If enabled, every (top-level) class gets its own random streams, derived from the seeds and the qualified name
+     * plus file of the class. The transformations a class receives then do not depend on the order of processing,
+     * and for the scopes perClassEach and perMethodEach also not on the other classes of the run.
+     * This is required to get the same results in parallel or sharded runs, and always active for parallelism > 1.
+     *
+     * If disabled (default), a single random stream is shared throughout the run, like in earlier versions.
+     *
+     * @param val true to derive random streams per element, false for the single shared stream
+     */
+    public void setDeriveSeedsPerElement(boolean val) {
+        this.deriveSeedsPerElement = val;
+    }
+
+    public boolean getDeriveSeedsPerElement() {
+        return deriveSeedsPerElement;
+    }
+
+    /**
+     * Sets whether the compiling transformers of the registry defer their compilation to the end of the run.
+     *
+     * By default, every transformation compiles its whole class, which dominates the runtime for many transformations
+     * per class. With deferred compilation, every modified class is compiled once at the end of "run".
+     * The transformed code is the same. Code that does not compile is reported for its class at the end,
+     * instead of failing the transformation that introduced it.
+     * See "BaseTransformer.setDeferringCompilation".
+     *
+     * @param val true to compile every class once per run, false to compile after every transformation
+     */
+    public void setDeferCompilation(boolean val) {
+        registry.getRegisteredTransformers().stream()
+                .filter(t -> t instanceof BaseTransformer)
+                .forEach(t -> ((BaseTransformer) t).setDeferringCompilation(val));
+    }
+
+    /**
+     * Sets the fraction of the modified classes that are verified by compiling them, between 0 and 1.
+     *
+     * Compiling is what makes a run with compiling transformers slow, but it is also the only check that the
+     * transformed code is still valid java. A rate below 1 trades the two: every modified class is compiled at most
+     * once at the end of "run" (see "setDeferCompilation", which is switched on for this), and only the classes picked
+     * by the seed are compiled at all. The classes that did not compile are reported in the EngineResult,
+     * together with the transformers that were applied to them.
+     * The default of 1 compiles every class, a rate of 0 none of them.
+     *
+     * @param rate the fraction of modified classes to compile
+     * @throws UnsupportedOperationException if the rate is not between 0 and 1
+     */
+    public void setCompileSampleRate(double rate) {
+        if (!(rate >= 0 && rate <= 1)) {
+            throw new UnsupportedOperationException("The compile sample rate has to be between 0 and 1");
+        }
+        this.compileSampleRate = rate;
+        if (rate < 1) {
+            setDeferCompilation(true);
+        }
+    }
+
+    public double getCompileSampleRate() {
+        return compileSampleRate;
+    }
+
+    /**
+     * Sets the cache of the compilations, which skips compiling a class in a state it compiled in before
+     * (e.g. over retries or variants). The cache is handed to the transformers of the registry,
+     * several engines may share one. By default, no cache is used and every class is compiled.
+     * See "CompilationCache" for what the cache covers.
+     *
+     * @param compilationCache the cache to look the compilations up in
+     */
+    public void setCompilationCache(CompilationCache compilationCache) {
+        this.compilationCache = compilationCache;
+        registry.getRegisteredTransformers().stream()
+                .filter(t -> t instanceof BaseTransformer)
+                .forEach(t -> ((BaseTransformer) t).setCompilationCache(compilationCache));
+    }
+
+    public CompilationCache getCompilationCache() {
+        return compilationCache;
+    }
+
     /**
      * This method sets whether all comments are removed or not.
      * The comments are still entities in the AST, but are not in the toString() or prettyprinting.
@@ -340,6 +935,7 @@ public class Engine {
      */
     public void setRandomSeed(long seed){
         this.random = new Random(seed);
+        this.randomSeed = seed;
     }
 
 }
@@ -7,7 +7,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Random;
+import java.util.Set;
 import spoon.reflect.CtModel;
+import spoon.reflect.declaration.CtType;
 
 /**
  * This is a support class for the run method in Engine.java.
@@ -20,6 +22,9 @@ public class EngineResult {
     protected String outputDirectory;
     protected Boolean writeJavaOutput;
     protected long transformationFailures;
+    protected Set<CtType<?>> modifiedTypes;
+    protected Map<String, List<String>> compileFailures;
+    protected Map<CtType<?>, List<String>> appliedTransformers;
 
     /**
      * Builder design pattern for the EngineResult.
@@ -35,6 +40,9 @@ public class EngineResult {
         private TransformerRegistry transformerRegistry;
         private Map<Transformer,Integer> distribution;
         private Boolean writeJavaOutput;
+        private Set<CtType<?>> modifiedTypes = Set.of();
+        private Map<String, List<String>> compileFailures = Map.of();
+        private Map<CtType<?>, List<String>> appliedTransformers = Map.of();
 
         public Builder(CtModel codeRoot, String codeDirectory, String outputDirectory, TransformerRegistry transformerRegistry) throws UnsupportedOperationException {
             if(codeRoot == null)
@@ -77,6 +85,21 @@ public class EngineResult {
             return this;
         }
 
+        public Builder modifiedTypes(Set<CtType<?>> val) {
+            modifiedTypes = val;
+            return this;
+        }
+
+        public Builder compileFailures(Map<String, List<String>> val) {
+            compileFailures = val;
+            return this;
+        }
+
+        public Builder appliedTransformers(Map<CtType<?>, List<String>> val) {
+            appliedTransformers = val;
+            return this;
+        }
+
         public EngineResult build() {
             return new EngineResult(this);
         }
@@ -88,12 +111,39 @@ public class EngineResult {
         this.transformationResults = builder.transformationResults;
         this.writeJavaOutput = builder.writeJavaOutput;
         this.transformationFailures = builder.transformationFailures;
+        this.modifiedTypes = builder.modifiedTypes;
+        this.compileFailures = builder.compileFailures;
+        this.appliedTransformers = builder.appliedTransformers;
     }
 
     public String getOutputDirectory() {
         return outputDirectory;
     }
 
+    /**
+     * @return the top-level types that were (possibly) altered by the run, compared by identity.
+     *         All other types of the model are exactly as they were parsed.
+     */
+    public Set<CtType<?>> getModifiedTypes() {
+        return modifiedTypes;
+    }
+
+    /**
+     * @return the qualified names of the classes that did not compile when the Engine compiled them at the end
+     *         (see "Engine.setDeferCompilation"), each with the names of the transformers that were applied to it
+     */
+    public Map<String, List<String>> getCompileFailures() {
+        return compileFailures;
+    }
+
+    /**
+     * @return the names of the transformers that were applied to the top-level types, compared by identity.
+     *         A type that none of the results points to (e.g. only altered by a failed transformation) has no entry.
+     */
+    public Map<CtType<?>, List<String>> getAppliedTransformers() {
+        return appliedTransformers;
+    }
+
     public CtModel getCodeRoot() {
         return codeRoot;
     }
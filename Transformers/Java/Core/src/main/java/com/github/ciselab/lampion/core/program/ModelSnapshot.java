@@ -0,0 +1,110 @@
+package com.github.ciselab.lampion.core.program;
+
+import spoon.reflect.CtModel;
+import spoon.reflect.declaration.CtCompilationUnit;
+import spoon.reflect.declaration.CtElement;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.factory.Factory;
+import spoon.reflect.visitor.CtScanner;
+import spoon.support.SerializationModelStreamer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * A serialized copy of a Spoon model, from which independent copies ("forks") of the model can be made.
+ *
+ * Transformations alter the model in place, so every run that should start from the untransformed code
+ * needs its own copy. Making a fork from the snapshot is a lot cheaper than parsing the code again,
+ * and every fork comes with its own factory and compilation units, so it can be transformed and printed
+ * without affecting the other forks.
+ *
+ * The reading and writing of models is also available for other serialized forms, e.g. caches on disk.
+ */
+public class ModelSnapshot {
+
+    private final byte[] serializedFactory;
+
+    private ModelSnapshot(byte[] serializedFactory) {
+        this.serializedFactory = serializedFactory;
+    }
+
+    /**
+     * Takes a snapshot of the current state of the model.
+     * Later changes to the model do not change the snapshot.
+     *
+     * @param codeRoot the model to snapshot
+     * @return the snapshot of the model
+     */
+    public static ModelSnapshot of(CtModel codeRoot) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            write(codeRoot.getRootPackage().getFactory(), out);
+        } catch (IOException e) {
+            // Writing to memory does not fail for IO reasons
+            throw new UncheckedIOException(e);
+        }
+        return new ModelSnapshot(out.toByteArray());
+    }
+
+    /**
+     * @return a new, independent copy of the model as it was when the snapshot was taken
+     */
+    public CtModel fork() {
+        try {
+            return read(new ByteArrayInputStream(serializedFactory)).getModel();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the size of the serialized model in bytes
+     */
+    public long size() {
+        return serializedFactory.length;
+    }
+
+    /**
+     * Writes the factory, including its model and compilation units, to the stream.
+     *
+     * @param factory the factory to write
+     * @param out the stream to write to, it is not closed
+     * @throws IOException if the stream cannot be written
+     */
+    public static void write(Factory factory, OutputStream out) throws IOException {
+        new SerializationModelStreamer().save(factory, out);
+    }
+
+    /**
+     * Reads a factory that was written with "write".
+     *
+     * The compilation units are not part of the model tree, so after reading, their elements do not know the factory
+     * and references in them (e.g. to the declared types) cannot be resolved, which breaks printing.
+     * The units are reachable via the positions of the types, hence they are fixed from there.
+     *
+     * @param in the stream to read from
+     * @return the factory, ready to be transformed and printed
+     * @throws IOException if the stream cannot be read
+     */
+    public static Factory read(InputStream in) throws IOException {
+        Factory factory = new SerializationModelStreamer().load(in);
+        CtScanner setFactory = new CtScanner() {
+            @Override
+            protected void enter(CtElement element) {
+                element.setFactory(factory);
+            }
+        };
+        for (CtType<?> type : factory.getModel().getAllTypes()) {
+            CtCompilationUnit unit = type.getPosition().getCompilationUnit();
+            if (unit != null) {
+                unit.accept(setFactory);
+            }
+        }
+        return factory;
+    }
+}
@@ -0,0 +1,108 @@
+package com.github.ciselab.lampion.core.program;
+
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class keeps track of how busy the workers of a parallel run are.
+ *
+ * Every task is wrapped with "track", which adds the time spent in the task to the thread that ran it.
+ * Compared to the wall time since the creation of this object, this gives the utilisation per worker.
+ * A worker that is far less utilised than the others points to a long tail, e.g. a big class that was scheduled last.
+ */
+public class WorkerUtilisation {
+
+    private final long start = System.nanoTime();
+    private long end = -1;
+
+    // Per worker: the number of tasks and the nanoseconds spent in them
+    private final Map<String, AtomicLong> tasks = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> busyNanos = new ConcurrentHashMap<>();
+
+    /**
+     * Wraps the task so that its runtime is added to the worker that runs it.
+     *
+     * @param task the task to track
+     * @param <T> the result of the task
+     * @return a task with the same behaviour and result
+     */
+    public <T> Callable<T> track(Callable<T> task) {
+        return () -> {
+            long taskStart = System.nanoTime();
+            try {
+                return task.call();
+            } finally {
+                record(Thread.currentThread().getName(), System.nanoTime() - taskStart);
+            }
+        };
+    }
+
+    /**
+     * Adds a finished task to the worker.
+     *
+     * @param worker the name of the worker, usually the thread
+     * @param nanos the time the task took
+     */
+    public void record(String worker, long nanos) {
+        tasks.computeIfAbsent(worker, w -> new AtomicLong()).incrementAndGet();
+        busyNanos.computeIfAbsent(worker, w -> new AtomicLong()).addAndGet(nanos);
+    }
+
+    /**
+     * Marks the end of the run, all utilisations refer to the time until here.
+     * If not called, the utilisation is computed until now.
+     */
+    public void finish() {
+        end = System.nanoTime();
+    }
+
+    /**
+     * @return the wall time of the run
+     */
+    public Duration getWallTime() {
+        return Duration.ofNanos((end < 0 ? System.nanoTime() : end) - start);
+    }
+
+    /**
+     * @return the share of the wall time every worker spent in tasks, between 0 and 1, sorted by worker
+     */
+    public Map<String, Double> getUtilisation() {
+        long wall = Math.max(1, getWallTime().toNanos());
+        Map<String, Double> utilisation = new TreeMap<>();
+        busyNanos.forEach((worker, busy) -> utilisation.put(worker, Math.min(1.0, busy.get() / (double) wall)));
+        return utilisation;
+    }
+
+    /**
+     * @return the number of tasks every worker ran, sorted by worker
+     */
+    public Map<String, Long> getTasks() {
+        Map<String, Long> result = new TreeMap<>();
+        tasks.forEach((worker, count) -> result.put(worker, count.get()));
+        return result;
+    }
+
+    /**
+     * Logs one line per worker with its tasks and utilisation, and the average over all workers.
+     *
+     * @param logger the logger to write to
+     */
+    public void log(Logger logger) {
+        Map<String, Double> utilisation = getUtilisation();
+        Map<String, Long> taskCounts = getTasks();
+        for (var worker : utilisation.entrySet()) {
+            logger.info(String.format("Worker %s ran %d tasks, utilisation %.1f%%",
+                    worker.getKey(), taskCounts.get(worker.getKey()), worker.getValue() * 100));
+        }
+        logger.info(String.format("%d workers with average utilisation %.1f%% over %s",
+                utilisation.size(),
+                utilisation.values().stream().mapToDouble(Double::doubleValue).average().orElse(0) * 100,
+                getWallTime()));
+    }
+}
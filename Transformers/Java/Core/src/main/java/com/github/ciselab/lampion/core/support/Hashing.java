@@ -0,0 +1,55 @@
+package com.github.ciselab.lampion.core.support;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * This class hashes contents and configurations for the keys and checksums of the caches, indices and manifests.
+ *
+ * All hashes are hex encoded SHA-256, so they are stable across JVMs and can be used as file names.
+ */
+public abstract class Hashing {
+
+    /**
+     * @param content the bytes to hash, e.g. the content of a file
+     * @return the hex encoded SHA-256 of the content
+     */
+    public static String sha256(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param content the text to hash, encoded as UTF-8
+     * @return the hex encoded SHA-256 of the text
+     */
+    public static String sha256(String content) {
+        return sha256(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Hashes the properties in sorted order, so that equal configurations give equal hashes
+     * regardless of the order of their entries.
+     *
+     * @param configuration the properties to hash
+     * @param excludedKeys the keys to leave out, e.g. the ones that differ between otherwise equal runs
+     * @return the hex encoded SHA-256 of the remaining properties
+     */
+    public static String configurationHash(Properties configuration, Set<String> excludedKeys) {
+        String included = new TreeMap<>(configuration).entrySet().stream()
+                .filter(e -> !excludedKeys.contains((String) e.getKey()))
+                .map(e -> e.getKey() + "=" + e.getValue())
+                .collect(Collectors.joining("\n"));
+        return sha256(included);
+    }
+}
@@ -0,0 +1,49 @@
+package com.github.ciselab.lampion.core.support;
+
+/**
+ * This class derives seeds for independent random streams from a global seed and a stable key.
+ *
+ * The key is usually the fully qualified name of a class together with its file path.
+ * As long as the key does not change, the derived seed does not change - regardless of which other
+ * files are part of the run, in which order they are processed or on which thread.
+ * This is what makes parallel and sharded runs reproducible.
+ *
+ * Only specified operations are used (String chars, long arithmetic), so the seeds are stable across JVMs.
+ */
+public abstract class SeedDerivation {
+
+    /**
+     * Derives a new seed from the given seed and key.
+     * Equal inputs always give equal seeds, different keys give (practically) unrelated seeds.
+     *
+     * @param seed the global seed, e.g. of the engine or the transformer
+     * @param key a stable identifier of the element, e.g. its qualified name and file
+     * @return the seed for the random stream of the element
+     */
+    public static long derive(long seed, String key) {
+        return mix(seed ^ mix(hash(key)));
+    }
+
+    /**
+     * 64bit FNV-1a over the chars of the key.
+     * String::hashCode is only 32bit, which is too collision-prone for datasets with several hundred thousand classes.
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * SplitMix64 finalizer, spreads the bits of similar inputs over the whole long.
+     */
+    private static long mix(long z) {
+        z += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
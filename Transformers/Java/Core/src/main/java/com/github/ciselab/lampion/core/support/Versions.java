@@ -0,0 +1,44 @@
+package com.github.ciselab.lampion.core.support;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spoon.Launcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * This class provides the versions of the tools the caches depend on, to be part of their keys.
+ * A cache entry made by another version of Spoon is not reused, as it may parse or compile differently.
+ */
+public abstract class Versions {
+
+    private static Logger logger = LoggerFactory.getLogger(Versions.class);
+
+    private static final String SPOON = readSpoonVersion();
+
+    /**
+     * @return the version of Spoon on the classpath, "unknown" if it cannot be read
+     */
+    public static String spoon() {
+        return SPOON;
+    }
+
+    /**
+     * Reads the version from the maven metadata packaged with Spoon.
+     */
+    private static String readSpoonVersion() {
+        try (InputStream in = Launcher.class.getResourceAsStream(
+                "/META-INF/maven/fr.inria.gforge.spoon/spoon-core/pom.properties")) {
+            if (in != null) {
+                Properties properties = new Properties();
+                properties.load(in);
+                return properties.getProperty("version", "unknown");
+            }
+        } catch (IOException e) {
+            logger.debug("Could not read the version of Spoon", e);
+        }
+        return "unknown";
+    }
+}
@@ -0,0 +1,284 @@
+package com.github.ciselab.lampion.core.transformations;
+
+import com.github.ciselab.lampion.core.support.Hashing;
+import com.github.ciselab.lampion.core.support.Versions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spoon.SpoonException;
+import spoon.reflect.declaration.CtClass;
+import spoon.reflect.declaration.CtCodeSnippet;
+import spoon.reflect.declaration.CtExecutable;
+import spoon.reflect.declaration.CtField;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.factory.Factory;
+import spoon.reflect.visitor.filter.TypeFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A content-addressed cache of successful compilations, to skip compiling a class that compiled in the same state before.
+ *
+ * Retries, variants and grid runs transform the same classes over and over, and many of the intermediate states
+ * (e.g. a class after a transformation that was undone, or untouched by the sampled transformers) are compiled again.
+ * The outcome of compiling a class depends on its printed source, on the rest of the model it is compiled against
+ * and on the environment (compliance level, classpath mode, versions), which together make up the key.
+ * The rest of the model is captured by the signatures of its types, which is all a class can see of them.
+ * They are read once per model and refreshed for every type that is compiled or reported as changed (see "refresh"),
+ * as the transformers alter the class they are applied to, e.g. by adding methods.
+ *
+ * The cache only stores that the class compiled, as the transformers do not leave snippets to be replaced any more
+ * and compiling a class without snippets leaves it as it was. Classes that still contain snippets are always compiled.
+ * Failures are not cached: Spoon replaces a class that does not compile by the part of it that it could build,
+ * which cannot be restored without compiling. Failing classes are rare and usually dropped or retried anyway.
+ *
+ * The keys are kept in memory, up to a number of entries, and optionally in a directory shared by several runs.
+ * A cache is given to an Engine (see "Engine.setCompilationCache"), which hands it to its transformers.
+ * Engines running the same input (e.g. variants) can share a cache, it is safe to be used by several threads.
+ */
+public class CompilationCache {
+
+    private static Logger logger = LoggerFactory.getLogger(CompilationCache.class);
+
+    public static final int DEFAULT_ENTRIES = 10000;
+
+    private static final String ENTRY_SUFFIX = ".compile";
+    private static final String PASSED = "PASS";
+
+    private final int maxEntries;
+    private final Map<String, Boolean> entries;     // the keys of classes that compiled, null if not in memory
+    private final Path directory;                   // null if not persisted
+    private final Map<Factory, ModelSignatures> models = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+
+    private CompilationCache(int maxEntries, Path directory) {
+        this.maxEntries = maxEntries;
+        this.entries = maxEntries > 0 ? Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maxEntries;
+            }
+        }) : null;
+        this.directory = directory;
+    }
+
+    /**
+     * @param maxEntries the number of compiled classes to remember, the least recently used are dropped first
+     * @return a cache keeping the compiled classes in memory
+     * @throws UnsupportedOperationException if the number of entries is negative
+     */
+    public static CompilationCache inMemory(int maxEntries) {
+        if (maxEntries < 0) {
+            throw new UnsupportedOperationException("The compilation cache cannot hold a negative number of entries");
+        }
+        return new CompilationCache(maxEntries, null);
+    }
+
+    /**
+     * @return a cache that always compiles and never stores anything
+     */
+    public static CompilationCache disabled() {
+        return new CompilationCache(0, null);
+    }
+
+    /**
+     * @param directory the directory holding the compiled classes, created if missing
+     * @return a cache with the same number of entries in memory, which also stores the compiled classes in the directory
+     * @throws IOException if the directory cannot be created
+     */
+    public CompilationCache withDirectory(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        return new CompilationCache(maxEntries, directory);
+    }
+
+    public boolean isEnabled() {
+        return entries != null || directory != null;
+    }
+
+    /**
+     * @return the number of compilations the cache was asked for, excluding classes with snippets
+     */
+    public long getLookups() {
+        return lookups.get();
+    }
+
+    /**
+     * @return the number of compilations that were answered from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Refreshes the signatures of the type and its nested types, after it was changed.
+     * Models that no compilation was asked for yet are read completely on the first one, nothing is done for them.
+     *
+     * @param type the changed type
+     */
+    public void refresh(CtType<?> type) {
+        if (!isEnabled()) {
+            return;
+        }
+        CtType<?> topLevelType = type.getTopLevelType();
+        synchronized (models) {
+            ModelSignatures model = models.get(topLevelType.getFactory());
+            if (model != null) {
+                model.update(topLevelType);
+            }
+        }
+    }
+
+    /**
+     * Compiles the class with the given compilation, unless it compiled in its current state before.
+     * The class has to be printed as the compilation prints it, i.e. the auto imports have to be set accordingly.
+     *
+     * @param containingClass the class to compile
+     * @param compilation the actual compilation of the class, e.g. "compileAndReplaceSnippets"
+     * @throws SpoonException if the class does not compile
+     */
+    public void compile(CtClass<?> containingClass, Runnable compilation) {
+        if (!isEnabled() || !containingClass.getElements(new TypeFilter<>(CtCodeSnippet.class)).isEmpty()) {
+            compilation.run();
+            return;
+        }
+        lookups.incrementAndGet();
+        // The class was just transformed, it is seen by the key of this and of every following compilation
+        refresh(containingClass);
+        String key = keyOf(containingClass);
+        if (contains(key)) {
+            hits.incrementAndGet();
+            logger.debug("Skipped compiling " + containingClass.getQualifiedName() + ", it compiled before");
+            return;
+        }
+        compilation.run();
+        store(key);
+    }
+
+    /**
+     * The key covers everything the compilation depends on: the versions of the compiler and of the JDK,
+     * the environment of the model, the types of the model and the printed class.
+     */
+    String keyOf(CtClass<?> containingClass) {
+        var environment = containingClass.getFactory().getEnvironment();
+        String content = "spoon=" + Versions.spoon() + '\n'
+                + "jdk=" + Runtime.version() + '\n'
+                + "compliance=" + environment.getComplianceLevel() + '\n'
+                + "preview=" + environment.isPreviewFeaturesEnabled() + '\n'
+                + "noclasspath=" + environment.getNoClasspath() + '\n'
+                + "classpath=" + Arrays.toString(environment.getSourceClasspath()) + '\n'
+                + "model=" + contextOf(containingClass.getFactory()) + '\n'
+                + "package=" + containingClass.getPackage().getQualifiedName() + '\n'
+                + containingClass;
+        return Hashing.sha256(content);
+    }
+
+    /**
+     * Hashes the signatures of all types in the model, reading them on the first compilation of the model.
+     */
+    private String contextOf(Factory factory) {
+        synchronized (models) {
+            return models.computeIfAbsent(factory, ModelSignatures::new).hash();
+        }
+    }
+
+    private boolean contains(String key) {
+        if (entries != null && entries.containsKey(key)) {
+            return true;
+        }
+        if (directory == null) {
+            return false;
+        }
+        Path entry = directory.resolve(key + ENTRY_SUFFIX);
+        try {
+            if (!Files.exists(entry) || !Files.readString(entry, StandardCharsets.UTF_8).equals(PASSED)) {
+                return false;
+            }
+        } catch (IOException e) {
+            logger.warn("Could not read cached compilation " + entry + " - compiling again", e);
+            return false;
+        }
+        if (entries != null) {
+            entries.put(key, true);
+        }
+        return true;
+    }
+
+    private void store(String key) {
+        if (entries != null) {
+            entries.put(key, true);
+        }
+        if (directory == null) {
+            return;
+        }
+        Path entry = directory.resolve(key + ENTRY_SUFFIX);
+        try {
+            Path temporary = Files.createTempFile(directory, key, ".tmp");
+            Files.writeString(temporary, PASSED, StandardCharsets.UTF_8);
+            Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // A failing cache must not fail the run, the class is just compiled again next time
+            logger.warn("Could not store compilation " + key + " in the cache", e);
+        }
+    }
+
+    /**
+     * The signatures of the types of a model, by the qualified name of their top-level type.
+     */
+    private static class ModelSignatures {
+        private final Map<String, String> types = new TreeMap<>();
+        private String hash = null;     // null if a type changed since it was hashed
+
+        ModelSignatures(Factory factory) {
+            for (CtType<?> type : factory.getModel().getAllTypes()) {
+                types.put(type.getQualifiedName(), signaturesOf(type));
+            }
+        }
+
+        void update(CtType<?> topLevelType) {
+            String signatures = signaturesOf(topLevelType);
+            if (!signatures.equals(types.put(topLevelType.getQualifiedName(), signatures))) {
+                hash = null;
+            }
+        }
+
+        String hash() {
+            if (hash == null) {
+                hash = Hashing.sha256(String.join("\n", types.values()));
+            }
+            return hash;
+        }
+
+        /**
+         * The names of the type and its nested types, with the signatures of their executables and their fields.
+         */
+        private static String signaturesOf(CtType<?> topLevelType) {
+            TreeSet<String> signatures = new TreeSet<>();
+            for (CtType<?> type : topLevelType.getElements(new TypeFilter<>(CtType.class))) {
+                String name = type.getQualifiedName();
+                signatures.add(name);
+                for (CtExecutable<?> executable : type.getElements(new TypeFilter<>(CtExecutable.class))) {
+                    if (executable.getParent() == type) {
+                        signatures.add(name + "#" + executable.getSignature());
+                    }
+                }
+                for (CtField<?> field : type.getFields()) {
+                    signatures.add(name + "." + field.getSimpleName());
+                }
+            }
+            return String.join("\n", signatures);
+        }
+    }
+}
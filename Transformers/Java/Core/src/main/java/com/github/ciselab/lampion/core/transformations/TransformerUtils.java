@@ -1,10 +1,13 @@
 package com.github.ciselab.lampion.core.transformations;
 
 import com.github.ciselab.lampion.core.support.RandomNameFactory;
+import spoon.reflect.code.CtExpression;
+import spoon.reflect.code.CtFieldRead;
 import spoon.reflect.code.CtLiteral;
 import spoon.reflect.declaration.CtElement;
 import spoon.reflect.declaration.CtTypedElement;
 import spoon.reflect.factory.Factory;
+import spoon.reflect.reference.CtFieldReference;
 import spoon.reflect.reference.CtTypeReference;
 
 import java.util.List;
@@ -91,10 +94,46 @@ public class TransformerUtils {
             case "char": return "Character.MIN_VALUE";
             case "float": return "0.0f";
             case "double": return "0.0d";
+            case "boolean": return "false";
             default: return "null";
         }
     }
 
+    /**
+     * This method builds the element described by "getNullElement" directly as an ast element,
+     * so it can be added to the ast without a snippet that would have to be compiled first.
+     *
+     * @param type the type for which to get the null element
+     * @return a new expression of the null element, not attached to the ast
+     */
+    public static CtExpression createNullElement(CtTypeReference type){
+        Factory factory = type.getFactory();
+        switch(type.getSimpleName()){
+            case "byte", "short", "int": return factory.createLiteral(0);
+            case "long": return factory.createLiteral(0L);
+            case "char": {
+                // Character.MIN_VALUE, with java.lang left implicit like in written code
+                CtTypeReference<Character> character = factory.Type().createReference(Character.class);
+                character.getPackage().setImplicit(true);
+                CtFieldReference<Character> minValue = factory.Field()
+                        .createReference(character, factory.Type().characterPrimitiveType(), "MIN_VALUE");
+                minValue.setStatic(true);
+                CtFieldRead<Character> read = factory.Core().createFieldRead();
+                read.setTarget(factory.Code().createTypeAccess(character));
+                read.setVariable(minValue);
+                return read;
+            }
+            case "float": return factory.createLiteral(0.0f);
+            case "double": return factory.createLiteral(0.0d);
+            case "boolean": return factory.createLiteral(false);
+            default: {
+                CtLiteral<Object> nullLiteral = factory.Core().createLiteral();
+                nullLiteral.setType((CtTypeReference) factory.Type().nullType());
+                return nullLiteral;
+            }
+        }
+    }
+
 
     /**
      * This method helps returns the neutral element for a set of supported types.
@@ -265,6 +265,11 @@ public class AddNeutralElementTransformer extends BaseTransformer {
         return categories;
     }
 
+    @Override
+    protected BaseTransformer createInstance(long seed) {
+        return new AddNeutralElementTransformer(seed);
+    }
+
     /*
     =========================================================
                        Hashcode & Equals
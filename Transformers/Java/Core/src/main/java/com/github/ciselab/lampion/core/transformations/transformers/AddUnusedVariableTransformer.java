@@ -260,6 +260,13 @@ public class AddUnusedVariableTransformer extends BaseTransformer {
         return fullRandomStrings;
     }
 
+    @Override
+    protected BaseTransformer createInstance(long seed) {
+        AddUnusedVariableTransformer copy = new AddUnusedVariableTransformer(seed);
+        copy.setFullRandomStrings(this.fullRandomStrings);
+        return copy;
+    }
+
     /*
     =========================================================
                        Hashcode & Equals
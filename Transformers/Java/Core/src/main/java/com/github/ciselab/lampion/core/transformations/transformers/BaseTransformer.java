@@ -1,6 +1,8 @@
 package com.github.ciselab.lampion.core.transformations.transformers;
 
 import com.github.ciselab.lampion.core.program.Engine;
+import com.github.ciselab.lampion.core.support.SeedDerivation;
+import com.github.ciselab.lampion.core.transformations.CompilationCache;
 import com.github.ciselab.lampion.core.transformations.Transformer;
 import spoon.reflect.declaration.CtClass;
 import spoon.reflect.declaration.CtElement;
@@ -19,6 +21,8 @@ public abstract class BaseTransformer implements Transformer {
 
     protected boolean triesToCompile = true;          // Whether after applying the change, the snippets try to be compiled
     protected boolean setsAutoImports = true;         // Whether foreign references will be resolved to their fully qualified name
+    protected boolean defersCompilation = false;      // Whether the compilation is left to the Engine, once per class
+    protected CompilationCache compilationCache = CompilationCache.disabled(); // The compilations that can be skipped
 
     protected long seedOnCreation;                    // The seed used to create this transformer, later used for equality and hashcode
 
@@ -80,6 +84,31 @@ public abstract class BaseTransformer implements Transformer {
      */
     public void setTryingToCompile(boolean value) {this.triesToCompile = value;}
 
+    public boolean isTryingToCompile() {return triesToCompile;}
+
+    /**
+     * This method decides whether a compiling transformer compiles its class right after every transformation,
+     * or leaves it to the Engine to compile every modified class once at the end of its run (see "Engine.setDeferCompilation").
+     * Compiling a class is by far the most expensive part of a transformation, and with many transformations per class
+     * deferring it saves all but one compilation per class. The default is false.
+     *
+     * The transformers build their changes as regular ast elements, so the later transformations see the same ast
+     * either way and the resulting code is the same as compiling after every transformation.
+     * Code that does not compile fails the compilation of its class later on, instead of the transformation
+     * that introduced it, so the later transformations of the class are kept.
+     * @param value whether to defer the compilation
+     */
+    public void setDeferringCompilation(boolean value) {this.defersCompilation = value;}
+
+    /**
+     * Sets the cache of the compilations, to skip compiling a class in a state it compiled in before.
+     * The Engine hands its cache to its transformers (see "Engine.setCompilationCache"), by default none is used.
+     * @param compilationCache the cache to look the compilations up in
+     */
+    public void setCompilationCache(CompilationCache compilationCache) {this.compilationCache = compilationCache;}
+
+    public boolean isDeferringCompilation() {return defersCompilation;}
+
     /**
      * This method decides whether the transformer will try to resolve the references to their fully qualified name.
      * This might can fail compilations, if the references are unknown or there are multiple possible alternatives.
@@ -90,6 +119,8 @@ public abstract class BaseTransformer implements Transformer {
      */
     public void setSetsAutoImports(boolean value) {this.setsAutoImports = value;}
 
+    public boolean isSettingAutoImports() {return setsAutoImports;}
+
     /**
      * This methods performs some housekeeping actions on the given ast element.
      * It is intended to be used after transformations.
@@ -106,17 +137,102 @@ public abstract class BaseTransformer implements Transformer {
      * @param containingClass the element that can be compiled after change, usually the class containing the changed method/element
      */
     protected void restoreAstAndImports(CtClass containingClass){
-        if(!setsAutoImports) {
+        var environment = containingClass.getFactory().getEnvironment();
+        // The Engine sets these once for its whole run, hence partitions running concurrently never write them here
+        if(!setsAutoImports && (environment.isAutoImports() || environment.getNoClasspath())) {
             // Sanity Check for compilation as well as restoring items
-            containingClass.getFactory().getEnvironment().setAutoImports(setsAutoImports);
+            environment.setAutoImports(setsAutoImports);
             // This enables missing entries in references to be "fine"
-            containingClass.getFactory().getEnvironment().setNoClasspath(setsAutoImports);
+            environment.setNoClasspath(setsAutoImports);
+        }
+        if(triesToCompile && !defersCompilation) {
+            compile(containingClass, compilationCache);
         }
-        if(triesToCompile) {
-            containingClass.compileAndReplaceSnippets();
+    }
+
+    /**
+     * Compiles the class, verifying that it is valid java and replacing any snippets with the elements they stand for.
+     *
+     * @param containingClass the class to compile
+     * @throws spoon.SpoonException if the class does not compile
+     */
+    public static void compile(CtClass containingClass) {
+        compile(containingClass, CompilationCache.disabled());
+    }
+
+    /**
+     * Compiles the class like "compile", unless it compiled in the same state before according to the cache.
+     *
+     * @param containingClass the class to compile
+     * @param compilationCache the cache to look the compilation up in and to store it in
+     * @throws spoon.SpoonException if the class does not compile
+     */
+    public static void compile(CtClass containingClass, CompilationCache compilationCache) {
+        // The snippet compiler builds the class into the shared factory of the model, hence compilations of the
+        // same model take turns here. This does not guard against concurrent changes of the model: the partitions
+        // of a parallel run defer their compilation until all of them finished (see "Engine.setParallelism").
+        synchronized (containingClass.getFactory()) {
+            // The class is compiled from its printed form, but without the imports of its compilation unit.
+            // Printed with auto imports, references that transformers created (e.g. the Supplier of a lambda)
+            // would come out as simple names that cannot be resolved.
+            // The Engine turns them off for its whole run, so only classes compiled outside of a run switch them here.
+            var environment = containingClass.getFactory().getEnvironment();
+            boolean autoImports = environment.isAutoImports();
+            if (autoImports) {
+                environment.setAutoImports(false);
+            }
+            try {
+                compilationCache.compile(containingClass, containingClass::compileAndReplaceSnippets);
+            } finally {
+                if (autoImports) {
+                    environment.setAutoImports(true);
+                }
+            }
         }
     }
 
+    /**
+     * Creates a fresh transformer of the same type and configuration, but with its own random number provider
+     * and without any of the state this transformer collected while running (e.g. already altered elements).
+     *
+     * This is used by the Engine to give every partition of a parallel run its own transformers,
+     * as the transformers are not safe to be shared across threads.
+     *
+     * @param seed the seed for the random number provider of the copy
+     * @return an independent transformer that is configured like this one
+     */
+    public BaseTransformer copyWithSeed(long seed) {
+        BaseTransformer copy = createInstance(seed);
+        copy.debug = this.debug;
+        copy.triesToCompile = this.triesToCompile;
+        copy.setsAutoImports = this.setsAutoImports;
+        copy.defersCompilation = this.defersCompilation;
+        copy.compilationCache = this.compilationCache;
+        return copy;
+    }
+
+    /**
+     * Creates a fresh transformer with a random stream of its own for the element identified by the key.
+     * The seed of the copy is derived from the seed of this transformer and the key,
+     * so the same element always receives the same stream, independent of any other element in the run.
+     *
+     * @param key a stable identifier of the element, such as its qualified name and file
+     * @return an independent transformer that is configured like this one
+     */
+    public BaseTransformer copyFor(String key) {
+        return copyWithSeed(SeedDerivation.derive(seedOnCreation, key));
+    }
+
+    /**
+     * Creates a new instance of the concrete transformer with the given seed.
+     * Transformer-specific settings (such as full random strings) have to be carried over by the implementation,
+     * the shared settings of the BaseTransformer are handled in "copyWithSeed".
+     *
+     * @param seed the seed for the random number provider of the new instance
+     * @return a new, unused instance of the concrete transformer
+     */
+    protected abstract BaseTransformer createInstance(long seed);
+
     /**
      * Gives the Seed used to create the transformer.
      *
@@ -6,6 +6,7 @@ import com.github.ciselab.lampion.core.transformations.TransformationCategory;
 import com.github.ciselab.lampion.core.transformations.TransformationResult;
 import com.github.ciselab.lampion.core.transformations.Transformer;
 import com.github.ciselab.lampion.core.support.RandomNameFactory;
+import spoon.reflect.code.CtInvocation;
 import spoon.reflect.declaration.CtClass;
 import spoon.reflect.declaration.CtElement;
 import spoon.reflect.declaration.CtMethod;
@@ -119,13 +120,13 @@ public class EmptyMethodTransformer extends BaseTransformer {
 
         containingClass.addMethod(emptyMethod);
 
-        if(triesToCompile) {
-            containingClass.compileAndReplaceSnippets();
-        }
         int statementsInInitialMethod = methodToAlter.getBody().getStatements().size();
         int invocationIndex = random.nextInt(statementsInInitialMethod);
-        methodToAlter.getBody().addStatement(invocationIndex,
-                containingClass.getFactory().createCodeSnippetStatement(methodName+"()"));
+        // The method is static, so it is invoked on its class - like the compiler resolves an unqualified call
+        CtInvocation invocation = containingClass.getFactory().createInvocation(
+                containingClass.getFactory().createTypeAccess(containingClass.getReference(), true),
+                emptyMethod.getReference());
+        methodToAlter.getBody().addStatement(invocationIndex, invocation);
 
         // Take the closest compilable unit (the class) and restore the ast according to transformers presettings
         restoreAstAndImports(containingClass);
@@ -221,6 +222,13 @@ public class EmptyMethodTransformer extends BaseTransformer {
         constraints.add(hasNonArtificalMethods);
     }
 
+    @Override
+    protected BaseTransformer createInstance(long seed) {
+        EmptyMethodTransformer copy = new EmptyMethodTransformer(seed);
+        copy.setFullRandomStrings(this.fullRandomStrings);
+        return copy;
+    }
+
     /*
     =========================================================
                        Hashcode & Equals
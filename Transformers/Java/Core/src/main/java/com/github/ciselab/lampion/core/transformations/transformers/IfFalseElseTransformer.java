@@ -112,7 +112,7 @@ public class IfFalseElseTransformer extends BaseTransformer {
         if(! toAlter.filterChildren(c -> c instanceof CtReturn).list().isEmpty()){
             ifWrapper.setThenStatement(
                     factory.createBlock().addStatement(
-                            factory.createCodeSnippetStatement("return "+ TransformerUtils.getNullElement(toAlter.getType()))
+                            factory.createReturn().setReturnedExpression(TransformerUtils.createNullElement(toAlter.getType()))
                     )
             );
         }
@@ -184,6 +184,11 @@ public class IfFalseElseTransformer extends BaseTransformer {
         return categories;
     }
 
+    @Override
+    protected BaseTransformer createInstance(long seed) {
+        return new IfFalseElseTransformer(seed);
+    }
+
     /*
     =========================================================
                        Hashcode & Equals
@@ -110,7 +110,7 @@ public class IfTrueTransformer extends BaseTransformer {
         if(! toAlter.filterChildren(c -> c instanceof CtReturn).list().isEmpty()){
             ifWrapper.setElseStatement(
                     factory.createBlock().addStatement(
-                            factory.createCodeSnippetStatement("return "+ TransformerUtils.getNullElement(toAlter.getType()))
+                            factory.createReturn().setReturnedExpression(TransformerUtils.createNullElement(toAlter.getType()))
                     )
             );
         }
@@ -182,6 +182,11 @@ public class IfTrueTransformer extends BaseTransformer {
         return categories;
     }
 
+    @Override
+    protected BaseTransformer createInstance(long seed) {
+        return new IfTrueTransformer(seed);
+    }
+
     /*
     =========================================================
                        Hashcode & Equals
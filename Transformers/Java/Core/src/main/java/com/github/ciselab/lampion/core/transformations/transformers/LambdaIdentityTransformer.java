@@ -9,6 +9,7 @@ import com.github.ciselab.lampion.core.transformations.TransformerUtils;
 import spoon.reflect.code.*;
 import spoon.reflect.declaration.*;
 import spoon.reflect.factory.Factory;
+import spoon.reflect.reference.CtTypeReference;
 
 import java.util.HashSet;
 import java.util.Optional;
@@ -101,15 +102,18 @@ public class LambdaIdentityTransformer extends BaseTransformer {
     private void applyWrapInIdentityLambdaTransformation(CtLiteral toAlter) {
         // Important: Make a clone ! Otherwise it's overwriting the initial items attributes
         Factory factory = toAlter.getFactory();
+        CtTypeReference supplierType = factory.Type().createReference("java.util.function.Supplier");
+        supplierType.addActualTypeArgument(factory.createWildcardReference());
         CtLambda lambda = factory.createLambda();
         lambda.setExpression(toAlter.clone());
-        // This is a bit noisy, but required to make it compile and restore types
-        CtExpression wrapped = factory.createCodeSnippetExpression(
-            "(("+toAlter.getType().getSimpleName()+")((java.util.function.Supplier<?>)("+lambda.toString()+")).get())"
-        );
-        wrapped.setType(toAlter.getType());
-        wrapped.setPosition(toAlter.getPosition());
-        wrapped.setParent(toAlter.getParent());
+        lambda.setType(supplierType.clone());
+        // A lambda needs a target type to compile, hence the cast to Supplier<?>
+        lambda.addTypeCast(supplierType.clone());
+        CtInvocation wrapped = factory.createInvocation(lambda,
+                factory.Method().createReference(supplierType, factory.Type().objectType(), "get"));
+        wrapped.setType(toAlter.getType().clone());
+        // get() of a Supplier<?> returns an Object, the cast restores the type of the literal
+        wrapped.addTypeCast(toAlter.getType().clone());
 
         toAlter.replace(wrapped);
 
@@ -163,6 +167,11 @@ public class LambdaIdentityTransformer extends BaseTransformer {
         constraints.add(hasLiterals);
     }
 
+    @Override
+    protected BaseTransformer createInstance(long seed) {
+        return new LambdaIdentityTransformer(seed);
+    }
+
     /*
     =========================================================
                        Hashcode & Equals
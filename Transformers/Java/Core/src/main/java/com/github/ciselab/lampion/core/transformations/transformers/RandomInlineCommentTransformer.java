@@ -181,6 +181,13 @@ public class RandomInlineCommentTransformer extends BaseTransformer {
         constraints.add(hasMethods);
     }
 
+    @Override
+    protected BaseTransformer createInstance(long seed) {
+        RandomInlineCommentTransformer copy = new RandomInlineCommentTransformer(seed);
+        copy.setFullRandomStrings(this.fullRandomStrings);
+        return copy;
+    }
+
     /*
     =========================================================
                        Hashcode & Equals
@@ -267,6 +267,13 @@ public class RandomParameterNameTransformer extends BaseTransformer {
         constraints.add(methodsHaveFreeParameters);
     }
 
+    @Override
+    protected BaseTransformer createInstance(long seed) {
+        RandomParameterNameTransformer copy = new RandomParameterNameTransformer(seed);
+        copy.setFullRandomStrings(this.fullRandomStrings);
+        return copy;
+    }
+
     /*
     =========================================================
                        Hashcode & Equals
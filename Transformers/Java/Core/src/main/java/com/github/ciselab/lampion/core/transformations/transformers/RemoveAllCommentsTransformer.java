@@ -126,6 +126,11 @@ public class RemoveAllCommentsTransformer extends BaseTransformer {
         return categories;
     }
 
+    @Override
+    protected BaseTransformer createInstance(long seed) {
+        return new RemoveAllCommentsTransformer(seed);
+    }
+
     /*
     =========================================================
                        Hashcode & Equals
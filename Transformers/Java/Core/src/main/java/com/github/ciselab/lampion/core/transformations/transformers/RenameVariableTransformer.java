@@ -245,6 +245,13 @@ public class RenameVariableTransformer extends BaseTransformer {
         constraints.add(methodsHaveFreeVariables);
     }
 
+    @Override
+    protected BaseTransformer createInstance(long seed) {
+        RenameVariableTransformer copy = new RenameVariableTransformer(seed);
+        copy.setFullRandomStrings(this.fullRandomStrings);
+        return copy;
+    }
+
     /*
     =========================================================
                        Hashcode & Equals
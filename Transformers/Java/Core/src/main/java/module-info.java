@@ -5,6 +5,8 @@ open module com.github.ciselab.lampion.core {
     // Export the transformations so one has the interfaces to build new transformers
     exports com.github.ciselab.lampion.core.transformations;
     exports com.github.ciselab.lampion.core.transformations.transformers;
+    // Export the hashing and seeding helpers shared with the CLI
+    exports com.github.ciselab.lampion.core.support;
 
     requires spoon.core;
 
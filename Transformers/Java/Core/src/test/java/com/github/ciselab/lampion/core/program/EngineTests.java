@@ -9,6 +9,7 @@ import org.junit.jupiter.api.*;
 import spoon.Launcher;
 import spoon.reflect.CtModel;
 import spoon.reflect.declaration.CtClass;
+import spoon.reflect.declaration.CtElement;
 import spoon.reflect.declaration.CtMethod;
 
 import java.io.File;
@@ -16,8 +17,11 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -583,4 +587,400 @@ public class EngineTests {
         assertThrows(UnsupportedOperationException.class, () ->  new Engine(pathToTestFileFolder,outputTestFolder,null));
     }
 
+
+    @Test
+    void testSetParallelism_zero_shouldThrowException(){
+        TransformerRegistry registry = new TransformerRegistry("Test");
+
+        Engine testObject = new Engine(pathToTestFileFolder,outputTestFolder,registry);
+
+        assertThrows(UnsupportedOperationException.class, () -> testObject.setParallelism(0));
+    }
+
+    @Tag("System")
+    @Tag("File")
+    @Test
+    void testEngineRun_parallel_ShouldApplyAllTransformations(){
+        String pathToTestFileFolder = "./src/test/resources/javafiles/javafiles_perMethodEach";
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfFalseElseTransformer());
+
+        Engine testObject = new Engine(pathToTestFileFolder,outputTestFolder,registry);
+        testObject.setWriteJavaOutput(false);
+        testObject.setNumberOfTransformationsPerScope(5, Engine.TransformationScope.perClassEach);
+        testObject.setParallelism(2);
+
+        Launcher launcher = new spoon.Launcher();
+        launcher.addInputResource(testObject.getCodeDirectory());
+        CtModel codeRoot = launcher.buildModel();
+        launcher.getFactory().getEnvironment().setAutoImports(false);
+        EngineResult result = testObject.run(codeRoot);
+
+        assertEquals(10,result.getTransformationResults().size());
+    }
+
+    @Tag("System")
+    @Tag("File")
+    @Test
+    void testEngineRun_parallel_withAutoImports_ShouldRestoreAutoImports(){
+        String pathToTestFileFolder = "./src/test/resources/javafiles/javafiles_perMethodEach";
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfFalseElseTransformer());
+
+        Engine testObject = new Engine(pathToTestFileFolder,outputTestFolder,registry);
+        testObject.setWriteJavaOutput(false);
+        testObject.setNumberOfTransformationsPerScope(5, Engine.TransformationScope.perClassEach);
+        testObject.setParallelism(2);
+
+        Launcher launcher = new spoon.Launcher();
+        launcher.addInputResource(testObject.getCodeDirectory());
+        CtModel codeRoot = launcher.buildModel();
+        launcher.getFactory().getEnvironment().setAutoImports(true);
+        EngineResult result = testObject.run(codeRoot);
+
+        assertEquals(10,result.getTransformationResults().size());
+        assertTrue(launcher.getFactory().getEnvironment().isAutoImports());
+    }
+
+    @Test
+    void testSetParallelism_aboveOne_ShouldDeriveSeedsPerElement(){
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        Engine testObject = new Engine(pathToTestFileFolder,outputTestFolder,registry);
+
+        testObject.setParallelism(2);
+
+        assertTrue(testObject.getDeriveSeedsPerElement());
+    }
+
+    @Tag("System")
+    @Tag("File")
+    @Test
+    void testEngineRun_parallel_ShouldDeferCompilationOfPartitions(){
+        List<Boolean> deferred = Collections.synchronizedList(new ArrayList<>());
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new RecordingIfTrueTransformer(5, deferred));
+
+        Engine testObject = new Engine("./src/test/resources/javafiles/javafiles_perMethodEach",outputTestFolder,registry);
+        testObject.setWriteJavaOutput(false);
+        testObject.setNumberOfTransformationsPerScope(5, Engine.TransformationScope.perClassEach);
+        testObject.setParallelism(2);
+
+        Launcher launcher = new spoon.Launcher();
+        launcher.addInputResource(testObject.getCodeDirectory());
+        CtModel codeRoot = launcher.buildModel();
+        launcher.getFactory().getEnvironment().setAutoImports(false);
+        EngineResult result = testObject.run(codeRoot);
+
+        // No partition compiled while the others were transforming, the classes compiled at the end of the run
+        assertEquals(10,deferred.size());
+        assertTrue(deferred.stream().allMatch(d -> d));
+        assertEquals(10,result.getTransformationResults().size());
+        assertFalse(registry.getRegisteredTransformers().stream()
+                .anyMatch(t -> ((BaseTransformer) t).isDeferringCompilation()));
+    }
+
+    @Tag("System")
+    @Tag("File")
+    @Test
+    void testEngineRun_parallel_differentNumberOfThreads_ShouldProduceSameCode(){
+        String first = runAndPrintClasses(2,false);
+        String second = runAndPrintClasses(4,false);
+
+        assertEquals(first,second);
+    }
+
+    @Tag("System")
+    @Tag("File")
+    @Test
+    void testEngineRun_parallel_ShouldProduceSameCodeAsSequentialWithDerivedSeeds(){
+        String parallel = runAndPrintClasses(3,false);
+        String sequential = runAndPrintClasses(1,true);
+
+        assertEquals(parallel,sequential);
+    }
+
+    @Tag("System")
+    @Tag("File")
+    @Test
+    void testEngineRun_derivedSeeds_perClassEach_ShouldNotDependOnOtherFiles(){
+        String together = runAndPrintClasses("./src/test/resources/javafiles/javafiles_perMethodEach",
+                Engine.TransformationScope.perClassEach,1,true);
+        String alone = runAndPrintClasses("./src/test/resources/javafiles/javafiles_perMethodEach/example.java",
+                Engine.TransformationScope.perClassEach,1,true);
+
+        assertTrue(together.contains(alone));
+    }
+
+    @Tag("System")
+    @Tag("File")
+    @Test
+    void testEngineRun_deferCompilation_ShouldProduceSameCodeAsCompilingEveryTransformation(){
+        String deferred = runMixedTransformersAndPrintClasses(true);
+        String compiledEveryTime = runMixedTransformersAndPrintClasses(false);
+
+        assertEquals(compiledEveryTime, deferred);
+        assertNotEquals(printClasses(buildPerMethodEachModel()), deferred);
+    }
+
+    @Test
+    void testSetCompileSampleRate_aboveOne_shouldThrowException(){
+        TransformerRegistry registry = new TransformerRegistry("Test");
+
+        Engine testObject = new Engine(pathToTestFileFolder,outputTestFolder,registry);
+
+        assertThrows(UnsupportedOperationException.class, () -> testObject.setCompileSampleRate(1.5));
+    }
+
+    @Test
+    void testSetCompileSampleRate_belowOne_shouldDeferCompilation(){
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        IfTrueTransformer transformer = new IfTrueTransformer();
+        registry.registerTransformer(transformer);
+
+        Engine testObject = new Engine(pathToTestFileFolder,outputTestFolder,registry);
+        testObject.setCompileSampleRate(0.5);
+
+        assertTrue(transformer.isDeferringCompilation());
+    }
+
+    @Test
+    void testIsSampledForCompilation_sameSeed_ShouldPickSameClasses(){
+        List<CtClass> classes = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            classes.add(Launcher.parseClass("class A" + i + " { }"));
+        }
+        Engine first = new Engine(pathToTestFileFolder,outputTestFolder,new TransformerRegistry("Test"));
+        Engine second = new Engine(pathToTestFileFolder,outputTestFolder,new TransformerRegistry("Test"));
+        first.setCompileSampleRate(0.3);
+        second.setCompileSampleRate(0.3);
+
+        List<CtClass> sampled = classes.stream().filter(first::isSampledForCompilation).toList();
+
+        assertEquals(sampled, classes.stream().filter(second::isSampledForCompilation).toList());
+        assertTrue(sampled.size() > 10 && sampled.size() < 50);
+    }
+
+    @Tag("File")
+    @Test
+    void testEngineRun_classNotCompiling_ShouldReportClassWithTransformers(){
+        EngineResult result = runOnClassWithMissingReference(1);
+
+        assertEquals(Map.of("lampion.tests.examples.Misser", List.of("IfTrue")), result.getCompileFailures());
+    }
+
+    @Tag("File")
+    @Test
+    void testEngineRun_classNotCompiling_notSampled_ShouldReportNothing(){
+        EngineResult result = runOnClassWithMissingReference(0);
+
+        assertTrue(result.getCompileFailures().isEmpty());
+    }
+
+    @Test
+    void testEstimateCost_biggerClass_ShouldCostMore(){
+        CtClass small = Launcher.parseClass("class Small { int a(){ return 1; } }");
+        CtClass big = Launcher.parseClass("class Big { int a(){ int b = 1; b++; b++; return b; } int c(){ return 2; } }");
+
+        assertTrue(Engine.estimateCost(big,1) > Engine.estimateCost(small,1));
+    }
+
+    @Test
+    void testEstimateCost_moreTransformations_ShouldCostMore(){
+        CtClass small = Launcher.parseClass("class Small { int a(){ return 1; } }");
+
+        assertEquals(3 * Engine.estimateCost(small,1), Engine.estimateCost(small,3));
+    }
+
+    @Test
+    void testRunVariants_ShouldNotAlterOriginalModel(){
+        CtModel codeRoot = buildPerMethodEachModel();
+        String before = printClasses(codeRoot);
+
+        Engine.runVariants(codeRoot, List.of(buildVariant(5),buildVariant(6)));
+
+        assertEquals(before, printClasses(codeRoot));
+    }
+
+    @Test
+    void testRunVariants_ShouldProduceSameCodeAsSingleRuns(){
+        List<EngineResult> results = Engine.runVariants(buildPerMethodEachModel(), List.of(buildVariant(5),buildVariant(6)));
+
+        assertEquals(2, results.size());
+        assertEquals(runAndPrintClasses(1,false), printClasses(results.get(0).getCodeRoot()));
+        assertNotEquals(printClasses(results.get(0).getCodeRoot()), printClasses(results.get(1).getCodeRoot()));
+    }
+
+    @Test
+    void testEngineRun_oneTransformation_ShouldMarkOneTypeModified(){
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfTrueTransformer());
+        Engine testObject = new Engine("./src/test/resources/javafiles/javafiles_perMethodEach",outputTestFolder,registry);
+        testObject.setWriteJavaOutput(false);
+        testObject.setNumberOfTransformationsPerScope(1, Engine.TransformationScope.global);
+
+        CtModel codeRoot = buildPerMethodEachModel();
+        EngineResult result = testObject.run(codeRoot);
+
+        assertEquals(1, result.getModifiedTypes().size());
+        assertTrue(codeRoot.getAllTypes().stream().anyMatch(t -> result.getModifiedTypes().contains(t)));
+    }
+
+    @Test
+    void testEngineRun_noTransformations_ShouldMarkNoTypeModified(){
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfTrueTransformer());
+        Engine testObject = new Engine("./src/test/resources/javafiles/javafiles_perMethodEach",outputTestFolder,registry);
+        testObject.setWriteJavaOutput(false);
+        testObject.setNumberOfTransformationsPerScope(0, Engine.TransformationScope.global);
+
+        EngineResult result = testObject.run(buildPerMethodEachModel());
+
+        assertTrue(result.getModifiedTypes().isEmpty());
+    }
+
+    @Test
+    void testEngineRun_removeAllComments_ShouldMarkAllTypesModified(){
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfTrueTransformer());
+        Engine testObject = new Engine("./src/test/resources/javafiles/javafiles_perMethodEach",outputTestFolder,registry);
+        testObject.setWriteJavaOutput(false);
+        testObject.setNumberOfTransformationsPerScope(0, Engine.TransformationScope.global);
+        testObject.setRemoveAllComments(true);
+
+        EngineResult result = testObject.run(buildPerMethodEachModel());
+
+        assertEquals(2, result.getModifiedTypes().size());
+    }
+
+    @Test
+    void testEngineRun_derivedSeeds_oneTransformation_ShouldMarkOneTypeModified(){
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfTrueTransformer());
+        Engine testObject = new Engine("./src/test/resources/javafiles/javafiles_perMethodEach",outputTestFolder,registry);
+        testObject.setWriteJavaOutput(false);
+        testObject.setDeriveSeedsPerElement(true);
+        testObject.setNumberOfTransformationsPerScope(1, Engine.TransformationScope.global);
+
+        EngineResult result = testObject.run(buildPerMethodEachModel());
+
+        assertEquals(1, result.getModifiedTypes().size());
+    }
+
+    private static Engine buildVariant(long seed){
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfTrueTransformer(5));
+        registry.registerTransformer(new RenameVariableTransformer(5));
+        registry.registerTransformer(new AddNeutralElementTransformer(5));
+
+        Engine variant = new Engine("./src/test/resources/javafiles/javafiles_perMethodEach",outputTestFolder,registry);
+        variant.setWriteJavaOutput(false);
+        variant.setRandomSeed(seed);
+        variant.setNumberOfTransformationsPerScope(10, Engine.TransformationScope.global);
+        return variant;
+    }
+
+    private static CtModel buildPerMethodEachModel(){
+        Launcher launcher = new spoon.Launcher();
+        launcher.addInputResource("./src/test/resources/javafiles/javafiles_perMethodEach");
+        CtModel codeRoot = launcher.buildModel();
+        launcher.getFactory().getEnvironment().setAutoImports(false);
+        return codeRoot;
+    }
+
+    private static String runAndPrintClasses(int parallelism, boolean deriveSeeds){
+        return runAndPrintClasses("./src/test/resources/javafiles/javafiles_perMethodEach",
+                Engine.TransformationScope.global,parallelism,deriveSeeds);
+    }
+
+    private static String runAndPrintClasses(String pathToTestFileFolder, Engine.TransformationScope scope,
+                                             int parallelism, boolean deriveSeeds){
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfTrueTransformer(5));
+        registry.registerTransformer(new RenameVariableTransformer(5));
+        registry.registerTransformer(new AddNeutralElementTransformer(5));
+
+        Engine testObject = new Engine(pathToTestFileFolder,outputTestFolder,registry);
+        testObject.setWriteJavaOutput(false);
+        testObject.setRandomSeed(5);
+        testObject.setNumberOfTransformationsPerScope(10, scope);
+        testObject.setParallelism(parallelism);
+        testObject.setDeriveSeedsPerElement(deriveSeeds);
+
+        Launcher launcher = new spoon.Launcher();
+        launcher.addInputResource(testObject.getCodeDirectory());
+        CtModel codeRoot = launcher.buildModel();
+        launcher.getFactory().getEnvironment().setAutoImports(false);
+        testObject.run(codeRoot);
+
+        return printClasses(codeRoot);
+    }
+
+    private static String runMixedTransformersAndPrintClasses(boolean deferCompilation){
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfTrueTransformer(5));
+        registry.registerTransformer(new IfFalseElseTransformer(5));
+        registry.registerTransformer(new EmptyMethodTransformer(5));
+        registry.registerTransformer(new LambdaIdentityTransformer(5));
+        registry.registerTransformer(new RenameVariableTransformer(5));
+        registry.registerTransformer(new AddNeutralElementTransformer(5));
+
+        Engine testObject = new Engine("./src/test/resources/javafiles/javafiles_perMethodEach",outputTestFolder,registry);
+        testObject.setWriteJavaOutput(false);
+        testObject.setRandomSeed(5);
+        testObject.setNumberOfTransformationsPerScope(10, Engine.TransformationScope.perClassEach);
+        testObject.setDeferCompilation(deferCompilation);
+
+        CtModel codeRoot = buildPerMethodEachModel();
+        testObject.run(codeRoot);
+
+        return printClasses(codeRoot);
+    }
+
+    private static EngineResult runOnClassWithMissingReference(double compileSampleRate){
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfTrueTransformer(5));
+
+        Engine testObject = new Engine("./src/test/resources/javafiles/bad_javafiles",outputTestFolder,registry);
+        testObject.setWriteJavaOutput(false);
+        testObject.setDeferCompilation(true);
+        testObject.setCompileSampleRate(compileSampleRate);
+        testObject.setNumberOfTransformationsPerScope(1, Engine.TransformationScope.global);
+
+        Launcher launcher = new spoon.Launcher();
+        launcher.addInputResource(testObject.getCodeDirectory());
+        CtModel codeRoot = launcher.buildModel();
+        launcher.getFactory().getEnvironment().setAutoImports(false);
+        return testObject.run(codeRoot);
+    }
+
+    private static String printClasses(CtModel codeRoot){
+        return codeRoot.getElements((CtClass c) -> true).stream()
+                .sorted(Comparator.comparing(CtClass::getQualifiedName))
+                .map(CtClass::toString)
+                .collect(Collectors.joining("\n"));
+    }
+
+
+    /**
+     * Records whether its copies defer their compilation when they are applied.
+     */
+    private static class RecordingIfTrueTransformer extends IfTrueTransformer {
+        private final List<Boolean> deferred;
+
+        RecordingIfTrueTransformer(long seed, List<Boolean> deferred) {
+            super(seed);
+            this.deferred = deferred;
+        }
+
+        @Override
+        public TransformationResult applyAtRandom(CtElement ast) {
+            deferred.add(isDeferringCompilation());
+            return super.applyAtRandom(ast);
+        }
+
+        @Override
+        protected BaseTransformer createInstance(long seed) {
+            return new RecordingIfTrueTransformer(seed, deferred);
+        }
+    }
 }
@@ -0,0 +1,65 @@
+package com.github.ciselab.lampion.core.program;
+
+import org.junit.jupiter.api.Test;
+import spoon.Launcher;
+import spoon.reflect.CtModel;
+import spoon.reflect.declaration.CtClass;
+import spoon.reflect.declaration.CtMethod;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ModelSnapshotTests {
+
+    private static String pathToTestFileFolder = "./src/test/resources/javafiles/javafiles_simple";
+
+    @Test
+    void testFork_shouldContainSameTypes(){
+        CtModel codeRoot = buildModel();
+
+        CtModel fork = ModelSnapshot.of(codeRoot).fork();
+
+        assertEquals(codeRoot.getAllTypes().size(), fork.getAllTypes().size());
+        assertEquals(codeRoot.getAllTypes().iterator().next().toString(), fork.getAllTypes().iterator().next().toString());
+    }
+
+    @Test
+    void testFork_alteringFork_shouldNotAlterOriginal(){
+        CtModel codeRoot = buildModel();
+        String before = codeRoot.getAllTypes().iterator().next().toString();
+
+        CtModel fork = ModelSnapshot.of(codeRoot).fork();
+        fork.getElements((CtMethod m) -> true).forEach(m -> m.setSimpleName("altered" + m.getSimpleName()));
+
+        assertEquals(before, codeRoot.getAllTypes().iterator().next().toString());
+        assertTrue(fork.getAllTypes().iterator().next().toString().contains("altered"));
+    }
+
+    @Test
+    void testFork_twice_shouldGiveIndependentModels(){
+        ModelSnapshot snapshot = ModelSnapshot.of(buildModel());
+
+        CtModel first = snapshot.fork();
+        CtModel second = snapshot.fork();
+
+        assertNotSame(first.getRootPackage().getFactory(), second.getRootPackage().getFactory());
+        assertNotSame(first.getElements((CtClass c) -> true).get(0), second.getElements((CtClass c) -> true).get(0));
+    }
+
+    @Test
+    void testFork_shouldPrintCompilationUnits(){
+        CtModel fork = ModelSnapshot.of(buildModel()).fork();
+        CtClass type = fork.getElements((CtClass c) -> true).get(0);
+
+        String printed = type.getFactory().getEnvironment().createPrettyPrinter().printTypes(type);
+
+        assertTrue(printed.contains("class " + type.getSimpleName()));
+    }
+
+    private static CtModel buildModel(){
+        Launcher launcher = new spoon.Launcher();
+        launcher.addInputResource(pathToTestFileFolder);
+        CtModel codeRoot = launcher.buildModel();
+        launcher.getFactory().getEnvironment().setAutoImports(false);
+        return codeRoot;
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.ciselab.lampion.core.program;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WorkerUtilisationTests {
+
+    @Test
+    void testRecord_shouldCountTasksPerWorker(){
+        WorkerUtilisation utilisation = new WorkerUtilisation();
+
+        utilisation.record("a",10);
+        utilisation.record("a",10);
+        utilisation.record("b",10);
+
+        assertEquals(Map.of("a",2L,"b",1L), utilisation.getTasks());
+    }
+
+    @Test
+    void testGetUtilisation_shouldBeBetweenZeroAndOne(){
+        WorkerUtilisation utilisation = new WorkerUtilisation();
+
+        utilisation.record("a",1);
+        utilisation.record("b",Long.MAX_VALUE / 2);
+        utilisation.finish();
+
+        for (double value : utilisation.getUtilisation().values()) {
+            assertTrue(value >= 0 && value <= 1);
+        }
+        assertEquals(1.0, utilisation.getUtilisation().get("b"));
+    }
+
+    @Test
+    void testTrack_shouldKeepResultAndRecordTask() throws Exception {
+        WorkerUtilisation utilisation = new WorkerUtilisation();
+
+        int result = utilisation.track(() -> 42).call();
+
+        assertEquals(42, result);
+        assertEquals(1L, utilisation.getTasks().get(Thread.currentThread().getName()));
+    }
+
+    @Test
+    void testTrack_failingTask_shouldStillRecordTask(){
+        WorkerUtilisation utilisation = new WorkerUtilisation();
+
+        assertThrows(IllegalStateException.class, () -> utilisation.track(() -> {
+            throw new IllegalStateException();
+        }).call());
+        assertEquals(1L, utilisation.getTasks().get(Thread.currentThread().getName()));
+    }
+}
@@ -0,0 +1,47 @@
+package com.github.ciselab.lampion.core.support;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HashingTests {
+
+    @Test
+    void sha256_emptyContent_shouldBeKnownHash(){
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", Hashing.sha256(""));
+    }
+
+    @Test
+    void sha256_bytesAndText_shouldBeEqual(){
+        assertEquals(Hashing.sha256("lampion".getBytes()), Hashing.sha256("lampion"));
+    }
+
+    @Test
+    void configurationHash_differentOrder_shouldBeEqual(){
+        Properties first = new Properties();
+        first.setProperty("seed", "2020");
+        first.setProperty("transformations", "5");
+        Properties second = new Properties();
+        second.setProperty("transformations", "5");
+        second.setProperty("seed", "2020");
+
+        assertEquals(Hashing.configurationHash(first, Set.of()), Hashing.configurationHash(second, Set.of()));
+    }
+
+    @Test
+    void configurationHash_onlyExcludedKeysDiffer_shouldBeEqual(){
+        Properties first = new Properties();
+        first.setProperty("seed", "2020");
+        first.setProperty("outputDirectory", "./a");
+        Properties second = new Properties();
+        second.setProperty("seed", "2020");
+        second.setProperty("outputDirectory", "./b");
+
+        assertEquals(Hashing.configurationHash(first, Set.of("outputDirectory")),
+                Hashing.configurationHash(second, Set.of("outputDirectory")));
+        assertNotEquals(Hashing.configurationHash(first, Set.of()), Hashing.configurationHash(second, Set.of()));
+    }
+}
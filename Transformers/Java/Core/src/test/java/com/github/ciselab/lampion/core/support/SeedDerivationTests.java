@@ -0,0 +1,37 @@
+package com.github.ciselab.lampion.core.support;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SeedDerivationTests {
+
+    @Test
+    void derive_sameSeedAndKey_shouldBeEqual(){
+        long first = SeedDerivation.derive(2020,"lampion.test.examples.Example@example.java");
+        long second = SeedDerivation.derive(2020,"lampion.test.examples.Example@example.java");
+
+        assertEquals(first,second);
+    }
+
+    @Test
+    void derive_differentKeys_shouldBeDifferent(){
+        long first = SeedDerivation.derive(2020,"lampion.test.examples.Example@example.java");
+        long second = SeedDerivation.derive(2020,"lampion.test.examples.Example2@example2.java");
+
+        assertNotEquals(first,second);
+    }
+
+    @Test
+    void derive_differentSeeds_shouldBeDifferent(){
+        long first = SeedDerivation.derive(2020,"lampion.test.examples.Example@example.java");
+        long second = SeedDerivation.derive(2021,"lampion.test.examples.Example@example.java");
+
+        assertNotEquals(first,second);
+    }
+
+    @Test
+    void derive_emptyKey_shouldNotBreak(){
+        SeedDerivation.derive(2020,"");
+    }
+}
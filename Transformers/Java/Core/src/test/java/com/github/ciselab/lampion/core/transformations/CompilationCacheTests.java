@@ -0,0 +1,197 @@
+package com.github.ciselab.lampion.core.transformations;
+
+import com.github.ciselab.lampion.core.program.Engine;
+import com.github.ciselab.lampion.core.transformations.transformers.BaseTransformer;
+import com.github.ciselab.lampion.core.transformations.transformers.IfTrueTransformer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import spoon.Launcher;
+import spoon.SpoonException;
+import spoon.reflect.code.CtBlock;
+import spoon.reflect.declaration.CtClass;
+import spoon.reflect.declaration.CtMethod;
+import spoon.support.compiler.VirtualFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompilationCacheTests {
+
+    private static final String COMPILING = "package a; public class A { int twice(int x) { return x + x; } }";
+    private static final String NOT_COMPILING = "package a; public class A { int addTwo(int x) { return x + getTwo(); } }";
+
+    private static String cacheTestFolder = "./src/test/resources/compilation_cache/";
+
+    @AfterEach
+    public void cleanup() throws IOException {
+        if (Files.exists(Paths.get(cacheTestFolder))) {
+            Files.walk(Paths.get(cacheTestFolder))
+                    .sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void testInMemory_negativeEntries_shouldThrowException() {
+        assertThrows(UnsupportedOperationException.class, () -> CompilationCache.inMemory(-1));
+    }
+
+    @Test
+    public void testCompile_sameClassTwice_shouldOnlyCompileOnce() {
+        CompilationCache cache = CompilationCache.inMemory(10);
+        CtClass<?> first = buildClass(COMPILING);
+        CtClass<?> second = buildClass(COMPILING);
+
+        BaseTransformer.compile(first, cache);
+        BaseTransformer.compile(second, cache);
+
+        assertEquals(2, cache.getLookups());
+        assertEquals(1, cache.getHits());
+        assertSame(second, second.getFactory().Class().get("a.A"));
+    }
+
+    @Test
+    public void testCompile_changedClass_shouldCompileAgain() {
+        CompilationCache cache = CompilationCache.inMemory(10);
+        CtClass<?> ast = buildClass(COMPILING);
+        BaseTransformer.compile(ast, cache);
+
+        CtMethod<?> method = ast.getMethodsByName("twice").get(0);
+        CtBlock<?> body = method.getBody();
+        body.insertBegin(ast.getFactory().createLocalVariable(
+                ast.getFactory().Type().integerPrimitiveType(), "y", ast.getFactory().createLiteral(1)));
+        BaseTransformer.compile(ast, cache);
+
+        assertEquals(2, cache.getLookups());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void testCompile_failingClassTwice_shouldFailTwice() {
+        CompilationCache cache = CompilationCache.inMemory(10);
+        CtClass<?> first = buildClass(NOT_COMPILING);
+        CtClass<?> second = buildClass(NOT_COMPILING);
+
+        assertThrows(SpoonException.class, () -> BaseTransformer.compile(first, cache));
+        assertThrows(SpoonException.class, () -> BaseTransformer.compile(second, cache));
+
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void testCompile_sameClassInOtherModel_shouldCompileAgain() {
+        CompilationCache cache = CompilationCache.inMemory(10);
+        CtClass<?> alone = buildClass(COMPILING);
+        CtClass<?> withNeighbour = buildClass(COMPILING, "package a; public class B { }");
+
+        BaseTransformer.compile(alone, cache);
+        BaseTransformer.compile(withNeighbour, cache);
+
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void testCompile_neighbourGainedMethod_shouldCompileAgain() {
+        CompilationCache cache = CompilationCache.inMemory(10);
+        CtClass<?> ast = buildClass(COMPILING, "package a; public class B { }");
+        BaseTransformer.compile(ast, cache);
+
+        CtClass<?> neighbour = ast.getFactory().Class().get("a.B");
+        CtMethod<Integer> added = ast.getFactory().createMethod();
+        added.setSimpleName("one");
+        added.setType(ast.getFactory().Type().integerPrimitiveType());
+        added.setBody(ast.getFactory().createBlock());
+        neighbour.addMethod(added);
+        cache.refresh(neighbour);
+        BaseTransformer.compile(ast, cache);
+
+        assertEquals(2, cache.getLookups());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void testCompile_unchangedNeighbourRefreshed_shouldHit() {
+        CompilationCache cache = CompilationCache.inMemory(10);
+        CtClass<?> ast = buildClass(COMPILING, "package a; public class B { }");
+        BaseTransformer.compile(ast, cache);
+
+        cache.refresh(ast.getFactory().Class().get("a.B"));
+        BaseTransformer.compile(ast, cache);
+
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testCompile_classWithSnippet_shouldNotBeCached() {
+        CompilationCache cache = CompilationCache.inMemory(10);
+        CtClass<?> ast = buildClass(COMPILING);
+        ast.getMethodsByName("twice").get(0).getBody()
+                .insertBegin(ast.getFactory().createCodeSnippetStatement("int y = 1"));
+
+        BaseTransformer.compile(ast, cache);
+
+        assertEquals(0, cache.getLookups());
+    }
+
+    @Test
+    public void testCompile_disabled_shouldNeverHit() {
+        CompilationCache cache = CompilationCache.disabled();
+
+        BaseTransformer.compile(buildClass(COMPILING), cache);
+        BaseTransformer.compile(buildClass(COMPILING), cache);
+
+        assertFalse(cache.isEnabled());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Tag("File")
+    @Test
+    public void testCompile_withDirectory_shouldBeSharedByNewCaches() throws IOException {
+        CompilationCache first = CompilationCache.inMemory(10).withDirectory(Path.of(cacheTestFolder));
+        BaseTransformer.compile(buildClass(COMPILING), first);
+
+        CompilationCache second = CompilationCache.disabled().withDirectory(Path.of(cacheTestFolder));
+        BaseTransformer.compile(buildClass(COMPILING), second);
+
+        assertEquals(1, second.getHits());
+    }
+
+    @Test
+    public void testEngine_byDefault_shouldNotCache() {
+        Engine engine = new Engine("./src/test/resources/javafiles", "./src/test/resources/compilation_cache/output", new TransformerRegistry("Test"));
+
+        assertFalse(engine.getCompilationCache().isEnabled());
+    }
+
+    @Test
+    public void testEngine_withCache_transformersShouldUseIt() {
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfTrueTransformer());
+        Engine engine = new Engine("./src/test/resources/javafiles", "./src/test/resources/compilation_cache/output", registry);
+        engine.setNumberOfTransformationsPerScope(1, Engine.TransformationScope.global);
+        engine.setWriteJavaOutput(false);
+        CompilationCache cache = CompilationCache.inMemory(10);
+        engine.setCompilationCache(cache);
+
+        engine.run(buildClass(COMPILING).getFactory().getModel());
+
+        assertEquals(1, cache.getLookups());
+    }
+
+    private static CtClass<?> buildClass(String... sources) {
+        Launcher launcher = new Launcher();
+        for (int i = 0; i < sources.length; i++) {
+            launcher.addInputResource(new VirtualFile(sources[i], "Source" + i + ".java"));
+        }
+        launcher.buildModel();
+        return launcher.getFactory().Class().get("a.A");
+    }
+}
@@ -42,6 +42,19 @@ public class IfTrueTransformerTests {
         assertFalse(ast.toString().contains("return null;"));
     }
 
+    @Test
+    void applyToMethodWithReturn_withoutCompiling_ShouldHaveNoSnippets(){
+        CtClass ast = (CtClass) sumExample();
+
+        IfTrueTransformer transformer = new IfTrueTransformer();
+        transformer.setTryingToCompile(false);
+
+        transformer.applyAtRandom(ast);
+
+        assertTrue(ast.getElements(e -> e instanceof CtCodeSnippet).isEmpty());
+        assertTrue(ast.toString().contains("return 0;"));
+    }
+
     @Tag("Regression")
     @Test
     void applyInMethod_ShouldHaveClassParent(){
@@ -8,6 +8,7 @@ import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import spoon.Launcher;
 import spoon.reflect.declaration.CtClass;
+import spoon.reflect.declaration.CtCodeSnippet;
 import spoon.reflect.declaration.CtElement;
 import spoon.reflect.declaration.CtMethod;
 import spoon.reflect.visitor.DefaultJavaPrettyPrinter;
@@ -122,7 +123,8 @@ public class LambdaIdentityTransformerTests {
     @Tag("Regression")
     @Tag("File")
     @Test
-    void testApplyToClassWithLiterals_applyTwice_noAutoImports_NoCompile_shouldBeAppliedOnce(){
+    void testApplyToClassWithLiterals_applyTwice_noAutoImports_NoCompile_shouldBeAppliedTwice(){
+        // The lambda used to be a snippet, hiding the literal from the second application until compiled
         LambdaIdentityTransformer transformer = new LambdaIdentityTransformer();
         transformer.setSetsAutoImports(false);
         transformer.setTryingToCompile(false);
@@ -132,7 +134,8 @@ public class LambdaIdentityTransformerTests {
         transformer.applyAtRandom(ast);
         var result = transformer.applyAtRandom(ast);
 
-        assertEquals(new EmptyTransformationResult(), result);
+        assertNotEquals(new EmptyTransformationResult(), result);
+        assertTrue(ast.getElements(e -> e instanceof CtCodeSnippet).isEmpty());
     }
 
     @Test
@@ -117,4 +117,36 @@ public class TransformerEqualityTests {
             assertEquals(1,equals);
         }
     }
+
+    @Test
+    public void testCopyWithSeed_VariousTransformers_shouldBeEqualToNewTransformerWithSeed(){
+        List<BaseTransformer> transformers = new ArrayList<>();
+        transformers.add(new IfTrueTransformer(1));
+        transformers.add(new IfFalseElseTransformer(1));
+        transformers.add(new EmptyMethodTransformer(1));
+        transformers.add(new AddUnusedVariableTransformer(1));
+        transformers.add(new AddNeutralElementTransformer(1));
+        transformers.add(new RandomInlineCommentTransformer(1));
+        transformers.add(new RandomParameterNameTransformer(1));
+        transformers.add(new RenameVariableTransformer(1));
+        transformers.add(new LambdaIdentityTransformer(1));
+
+        for (BaseTransformer t : transformers){
+            BaseTransformer copy = t.copyWithSeed(5);
+            t.setSeed(5);
+
+            assertEquals(t,copy);
+        }
+    }
+
+    @Test
+    public void testCopyWithSeed_NonCompilingTransformer_shouldKeepSetting(){
+        IfTrueTransformer t = new IfTrueTransformer(1);
+        t.setTryingToCompile(false);
+
+        BaseTransformer copy = t.copyWithSeed(1);
+
+        assertEquals(t,copy);
+    }
+
 }
@@ -2,11 +2,13 @@ package com.github.ciselab.lampion.core.transformations;
 
 import org.junit.jupiter.api.Test;
 import spoon.Launcher;
+import spoon.reflect.code.CtExpression;
 import spoon.reflect.code.CtLiteral;
 import spoon.reflect.declaration.CtClass;
 import spoon.reflect.declaration.CtVariable;
 import spoon.reflect.reference.CtTypeReference;
 
+import java.util.List;
 import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -54,6 +56,46 @@ public class TransformerUtilsTests {
         assertEquals("null",result);
     }
 
+    @Test
+    public void testCreateNullElement_forNonPrimitiveType_shouldGiveNullLiteral(){
+        CtClass ast = Launcher.parseClass("package lampion.test; \n " +
+                "class A {\n " +
+                "public A some() { \n" +
+                "A a = new A(); \n" +
+                "return a; \n" +
+                "}\n" +
+                "}");
+
+        CtVariable nonPrimitiveElement =
+                (CtVariable) ast
+                        .filterChildren(c -> c instanceof CtVariable)
+                        .list()
+                        .get(0);
+
+        CtExpression result = TransformerUtils.createNullElement(nonPrimitiveElement.getType());
+        assertEquals("null",result.toString());
+    }
+
+    @Test
+    public void testCreateNullElement_forPrimitiveTypes_shouldPrintLikeGetNullElement(){
+        CtClass ast = Launcher.parseClass("package lampion.test; \n " +
+                "class A {\n " +
+                "public void some() { \n" +
+                "int a = 1; \n" +
+                "long b = 1L; \n" +
+                "boolean c = true; \n" +
+                "char d = 'd'; \n" +
+                "}\n" +
+                "}");
+
+        List<CtVariable> variables = ast.filterChildren(c -> c instanceof CtVariable).list();
+
+        assertEquals("0", TransformerUtils.createNullElement(variables.get(0).getType()).toString());
+        assertEquals("0L", TransformerUtils.createNullElement(variables.get(1).getType()).toString());
+        assertEquals("false", TransformerUtils.createNullElement(variables.get(2).getType()).toString());
+        assertEquals("Character.MIN_VALUE", TransformerUtils.createNullElement(variables.get(3).getType()).toString());
+    }
+
     @Test
     public void testPickRandomElementForType_forNonPrimitiveType_shouldThrowError(){
         CtClass ast = Launcher.parseClass("package lampion.test; \n " +